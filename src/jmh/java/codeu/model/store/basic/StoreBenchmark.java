@@ -0,0 +1,173 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.store.persistence.InMemoryDataStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the read paths of the model stores that pages hit on every request. Each trial loads a
+ * WorkloadGenerator data set of messageCount Messages into stores backed by an InMemoryDataStore,
+ * with one User per 100 Messages and one Conversation per 1000. Lookups cycle through keys taken
+ * from randomly chosen Messages, so busy Users and Conversations are looked up more often, as they
+ * are in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+
+  /** Seed of the generated data set, fixed so every run measures the same data. */
+  private static final long SEED = 2018;
+
+  /** Number of lookup keys sampled from the data set; a power of two. */
+  private static final int SAMPLE_SIZE = 1024;
+
+  /** Number of Users returned by the leaderboard calls. */
+  private static final int LEADERBOARD_SIZE = 10;
+
+  @Param({"10000", "100000"})
+  public int messageCount;
+
+  private UserStore userStore;
+  private ConversationStore conversationStore;
+  private MessageStore messageStore;
+  private UserStatsStore userStatsStore;
+
+  private String[] usernames;
+  private UUID[] userIds;
+  private UUID[] conversationIds;
+  private String[] titles;
+  private Message[] messages;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    WorkloadGenerator generator =
+        new WorkloadGenerator(
+            SEED, Math.max(10, messageCount / 100), Math.max(5, messageCount / 1000), messageCount);
+    List<Message> allMessages = new ArrayList<>(messageCount);
+    Iterator<List<Message>> batches = generator.messageBatches(10000);
+    while (batches.hasNext()) {
+      allMessages.addAll(batches.next());
+    }
+
+    PersistentStorageAgent persistentStorageAgent = InMemoryDataStore.newAgent();
+    userStore = UserStore.getTestInstance(persistentStorageAgent);
+    conversationStore = ConversationStore.getTestInstance(persistentStorageAgent);
+    userStatsStore = UserStatsStore.getTestInstance();
+    messageStore = MessageStore.getTestInstance(persistentStorageAgent, userStatsStore);
+    userStore.setUsers(generator.getUsers());
+    conversationStore.setConversations(generator.getConversations());
+    messageStore.setMessages(allMessages);
+
+    Random random = new Random(SEED);
+    usernames = new String[SAMPLE_SIZE];
+    userIds = new UUID[SAMPLE_SIZE];
+    conversationIds = new UUID[SAMPLE_SIZE];
+    titles = new String[SAMPLE_SIZE];
+    messages = new Message[SAMPLE_SIZE];
+    for (int i = 0; i < SAMPLE_SIZE; i++) {
+      Message message = allMessages.get(random.nextInt(allMessages.size()));
+      User author = userStore.getUser(message.getAuthorId());
+      Conversation conversation =
+          conversationStore.getConversationById(message.getConversationId());
+      usernames[i] = author.getName();
+      userIds[i] = author.getId();
+      conversationIds[i] = conversation.getId();
+      titles[i] = conversation.getTitle();
+      messages[i] = message;
+    }
+  }
+
+  /** Position in the sampled keys, kept per thread so threads don't contend on it. */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int position;
+
+    int next() {
+      position = (position + 1) & (SAMPLE_SIZE - 1);
+      return position;
+    }
+  }
+
+  @Benchmark
+  public User getUserByName(Cursor cursor) {
+    return userStore.getUser(usernames[cursor.next()]);
+  }
+
+  @Benchmark
+  public User getUserById(Cursor cursor) {
+    return userStore.getUser(userIds[cursor.next()]);
+  }
+
+  @Benchmark
+  public List<Message> getMessagesInConversation(Cursor cursor) {
+    return messageStore.getMessagesInConversation(conversationIds[cursor.next()]);
+  }
+
+  @Benchmark
+  public List<Message> getMessagesByAuthor(Cursor cursor) {
+    return messageStore.getMessagesByAuthor(userIds[cursor.next()]);
+  }
+
+  @Benchmark
+  public boolean isTitleTaken(Cursor cursor) {
+    return conversationStore.isTitleTaken(titles[cursor.next()]);
+  }
+
+  @Benchmark
+  public boolean isTitleTaken_miss(Cursor cursor) {
+    return conversationStore.isTitleTaken(titles[cursor.next()] + "_new");
+  }
+
+  @Benchmark
+  public int messageGetWords(Cursor cursor) {
+    return messages[cursor.next()].getWords();
+  }
+
+  @Benchmark
+  public List<UUID> mostActiveUsers() {
+    return userStatsStore.getMostActiveUserIds(LEADERBOARD_SIZE);
+  }
+
+  @Benchmark
+  public List<UUID> wordiestUsers() {
+    return userStatsStore.getWordiestUserIds(LEADERBOARD_SIZE);
+  }
+}
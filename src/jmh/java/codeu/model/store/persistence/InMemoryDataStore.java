@@ -0,0 +1,122 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.store.basic.MetricsStore;
+import com.google.appengine.api.datastore.Key;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Stand-in for PersistentDataStore that keeps Users, Conversations and Messages in maps, so store
+ * benchmarks measure the stores rather than Datastore. Only the calls the stores make on their
+ * hot paths are kept in memory; profile pictures and picture jobs still go to Datastore and must
+ * not be used from a benchmark.
+ */
+public class InMemoryDataStore extends PersistentDataStore {
+
+  /** Returns a PersistentStorageAgent backed by a new, empty InMemoryDataStore. */
+  public static PersistentStorageAgent newAgent() {
+    return PersistentStorageAgent.getTestInstance(
+        new InMemoryDataStore(), MetricsStore.getTestInstance());
+  }
+
+  private final Map<UUID, User> users = new ConcurrentHashMap<>();
+  private final Map<UUID, Conversation> conversations = new ConcurrentHashMap<>();
+  private final Map<UUID, Message> messages = new ConcurrentHashMap<>();
+
+  @Override
+  public List<User> loadUsers() {
+    return new ArrayList<>(users.values());
+  }
+
+  @Override
+  public List<Conversation> loadConversations() {
+    return new ArrayList<>(conversations.values());
+  }
+
+  @Override
+  public List<Message> loadMessages() {
+    return new ArrayList<>(messages.values());
+  }
+
+  @Override
+  public Future<Key> writeThrough(User user) {
+    users.put(user.getId(), user);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public void update(User user) {
+    users.put(user.getId(), user);
+  }
+
+  @Override
+  public void update(Collection<User> updatedUsers) {
+    writeUsers(updatedUsers);
+  }
+
+  @Override
+  public void writeUsers(Collection<User> newUsers) {
+    for (User user : newUsers) {
+      users.put(user.getId(), user);
+    }
+  }
+
+  @Override
+  public void delete(User user) {
+    users.remove(user.getId());
+  }
+
+  @Override
+  public Future<Key> writeThrough(Conversation conversation) {
+    conversations.put(conversation.getId(), conversation);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public void writeConversations(Collection<Conversation> newConversations) {
+    for (Conversation conversation : newConversations) {
+      conversations.put(conversation.getId(), conversation);
+    }
+  }
+
+  @Override
+  public Future<Key> writeThrough(Message message) {
+    messages.put(message.getId(), message);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public void writeMessages(Collection<Message> newMessages) {
+    for (Message message : newMessages) {
+      messages.put(message.getId(), message);
+    }
+  }
+
+  @Override
+  public void delete(Message message) {
+    messages.remove(message.getId());
+  }
+}
@@ -6,8 +6,9 @@ import codeu.model.store.basic.UserStore;
 import codeu.model.data.Message;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStatsStore;
+import codeu.model.store.basic.AuthorViewStore;
 import codeu.controller.ServletUrlStrings;
-import codeu.model.store.persistence.PersistentDataStoreException;
 
 import java.io.IOException;
 import java.time.Instant;
@@ -20,9 +21,8 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Collections;
+import java.util.Objects;
 import java.util.stream.*;
-import java.util.function.*;
 
 
 /** Servlet class responsible for the login page. */
@@ -33,6 +33,12 @@ public class AdminServlet extends HttpServlet {
 
   private ConversationStore conversationStore;
   private MessageStore messageStore;
+
+  /** Store class that gives access to per-User message and word counts. */
+  private UserStatsStore userStatsStore;
+
+  /** Store class that caches what chat pages show about Users. */
+  private AuthorViewStore authorViewStore;
   public static final String ADMIN_URL = "/adminView/";
 
 
@@ -44,7 +50,10 @@ public class AdminServlet extends HttpServlet {
   public void init() throws ServletException {
     super.init();
     setUserStore(UserStore.getInstance());
+    setConversationStore(ConversationStore.getInstance());
     setMessageStore(MessageStore.getInstance());
+    setUserStatsStore(UserStatsStore.getInstance());
+    setAuthorViewStore(AuthorViewStore.getInstance());
   }
 
   /**
@@ -55,10 +64,22 @@ public class AdminServlet extends HttpServlet {
     this.userStore = userStore;
   }
 
+  void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+  }
+
   void setMessageStore(MessageStore messageStore) {
     this.messageStore = messageStore;
   }
 
+  void setUserStatsStore(UserStatsStore userStatsStore) {
+    this.userStatsStore = userStatsStore;
+  }
+
+  void setAuthorViewStore(AuthorViewStore authorViewStore) {
+    this.authorViewStore = authorViewStore;
+  }
+
   /**
    * This function fires when a user requests the /adminview URL. It checks whether the user is an admin
    * If they are, they will be forwarded to adminview.jsp, if not
@@ -81,16 +102,9 @@ public class AdminServlet extends HttpServlet {
     int numUsers = userStore.getNumUsers();
     int numConversations = conversationStore.getNumConversations();
     int numMessages = messageStore.getNumMessages();
-    String mostActiveUser = "";
-    String newestUser = "";
-    String wordiestUser = "";
-    try{
-      mostActiveUser = getMostActiveUsers(1).get(0).getName();
-      newestUser = getNewestUsers(1).get(0).getName();
-      wordiestUser = getWordiestUsers(1).get(0).getName();
-    } catch(PersistentDataStoreException p){
-
-    }
+    String mostActiveUser = firstName(getMostActiveUsers(1));
+    String newestUser = firstName(getNewestUsers(1));
+    String wordiestUser = firstName(getWordiestUsers(1));
 
     request.setAttribute("numUsers", numUsers);
     request.setAttribute("numConversations", numConversations);
@@ -110,43 +124,35 @@ public class AdminServlet extends HttpServlet {
     if (userStore.isUserRegistered(username)) {
       User user = userStore.getUser(username);
       userStore.deleteUser(user);
+      authorViewStore.profileUpdated(user.getId());
     }
   }
 
-  public List<User> getMostActiveUsers(int x) throws PersistentDataStoreException {
-    List<UUID> userIds = userStore.getUsers().stream().map(User::getId).collect(Collectors.toList());
-    Map<UUID, Integer> numberOfMessagesByUserId = userIds.stream()
-      .collect(Collectors.toMap(Function.identity(), userId -> (messageStore.getMessagesByUserId(userId)).size()));
-    return numberOfMessagesByUserId.entrySet().stream()
-      .sorted(Map.Entry.comparingByValue())
-      .sorted(Collections.reverseOrder())
-      .map(Map.Entry::getKey)
+  public List<User> getMostActiveUsers(int x) {
+    return userStatsStore.getMostActiveUserIds(x, this::isKnownUser).stream()
       .map(userId -> userStore.getUser(userId))
-      .limit(x)
+      .filter(Objects::nonNull)
       .collect(Collectors.toList());
   }
 
-  public List<User> getNewestUsers(int x) throws PersistentDataStoreException {
-    return userStore.getUsers().stream()
-      .sorted(Collections.reverseOrder())
-      .limit(x)
-      .collect(Collectors.toList());
+  public List<User> getNewestUsers(int x) {
+    return userStore.getNewestUsers(x);
   }
 
-  public List<User> getWordiestUsers(int x) throws PersistentDataStoreException {
-    List<UUID> userIds = userStore.getUsers().stream().map(User::getId).collect(Collectors.toList());
-    Map<UUID, Integer> numberOfWordsByUserId = userIds.stream()
-      .collect(Collectors.toMap(Function.identity(), userId ->
-      messageStore.getMessagesByUserId(userId).stream()
-        .mapToInt(Message::getWords)
-        .sum()));
-    return numberOfWordsByUserId.entrySet().stream()
-      .sorted(Map.Entry.comparingByValue())
-      .sorted(Collections.reverseOrder())
-      .map(Map.Entry::getKey)
+  public List<User> getWordiestUsers(int x) {
+    return userStatsStore.getWordiestUserIds(x, this::isKnownUser).stream()
       .map(userId -> userStore.getUser(userId))
-      .limit(x)
+      .filter(Objects::nonNull)
       .collect(Collectors.toList());
   }
 
+  /** Returns the name of the first User in the list, or an empty String if there is none. */
+  private String firstName(List<User> users) {
+    return users.isEmpty() ? "" : users.get(0).getName();
+  }
+
+  /** Returns whether the UserStore still knows the User, who may have been deleted. */
+  private boolean isKnownUser(UUID userId) {
+    return userStore.getUser(userId) != null;
+  }
 }
@@ -0,0 +1,143 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.PictureSize;
+import codeu.model.store.basic.ProfilePictureStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that serves User profile pictures at /avatar/{userId}?size={pixels}, where pixels
+ * is one of the PictureSize widths and defaults to the full size. Pages link to this URL instead
+ * of inlining the image, so browsers download each picture once and revalidate it with
+ * If-None-Match afterwards.
+ */
+public class AvatarServlet extends HttpServlet {
+
+  /** Picture shown for Users who haven't uploaded one. */
+  static final String BLANK_PICTURE_URL =
+      "https://www.idyllwildarts.org/wp-content/uploads/2016/09/blank-profile-picture.jpg";
+
+  /**
+   * How long browsers may reuse a picture without revalidating it. Kept short because the URL stays
+   * the same when a User uploads a new picture.
+   */
+  static final String CACHE_CONTROL = "public, max-age=300";
+
+  /** Store class that gives access to profile pictures. */
+  private ProfilePictureStore profilePictureStore;
+
+  /**
+   * Set up state for handling avatar requests. This method is only called when running in a
+   * server, not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setProfilePictureStore(ProfilePictureStore.getInstance());
+  }
+
+  /**
+   * Sets the ProfilePictureStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setProfilePictureStore(ProfilePictureStore profilePictureStore) {
+    this.profilePictureStore = profilePictureStore;
+  }
+
+  /**
+   * This function fires when a page loads a profile picture. It answers 304 Not Modified if the
+   * browser already has the current picture, redirects to the blank picture if the User hasn't
+   * uploaded one, and otherwise writes the picture bytes.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    UUID userId;
+    try {
+      userId = UUID.fromString(request.getRequestURI().substring("/avatar/".length()));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    PictureSize size = parseSize(request.getParameter("size"));
+    if (size == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    byte[] imageData;
+    String eTag;
+    try {
+      imageData = profilePictureStore.getProfilePicture(userId, size);
+      eTag = "\"" + profilePictureStore.getProfilePictureTag(userId, size) + "\"";
+    } catch (PersistentDataStoreException e) {
+      throw new ServletException("Unable to load profile picture", e);
+    }
+
+    response.setHeader("Cache-Control", CACHE_CONTROL);
+    if (imageData.length == 0) {
+      response.sendRedirect(BLANK_PICTURE_URL);
+      return;
+    }
+
+    response.setHeader("ETag", eTag);
+    if (matches(request.getHeader("If-None-Match"), eTag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setContentType("image/png");
+    response.setContentLength(imageData.length);
+    response.getOutputStream().write(imageData);
+  }
+
+  /**
+   * Reads the size parameter.
+   *
+   * @return the full size if the parameter is missing, or null if it isn't a PictureSize width
+   */
+  private static PictureSize parseSize(String sizeParameter) {
+    if (sizeParameter == null) {
+      return PictureSize.FULL;
+    }
+    try {
+      return PictureSize.fromPixels(Integer.parseInt(sizeParameter));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** Returns true if an If-None-Match header names the given entity tag. */
+  private static boolean matches(String ifNoneMatch, String eTag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String trimmed = candidate.trim();
+      if (trimmed.equals("*") || trimmed.equals(eTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
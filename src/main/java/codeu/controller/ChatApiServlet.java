@@ -0,0 +1,178 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that lets the chat page poll for new Messages at
+ * /api/chat/{title}/messages?since={cursor}. The cursor is the id of the newest Message the page
+ * has, or an ISO-8601 instant. The response is JSON of the form
+ * {"messages": [...], "cursor": "...", "hasMore": false}, holding the Messages sent after the
+ * cursor, oldest first, and the cursor to send with the next poll. Without a since parameter, no
+ * Messages are returned, only the cursor of the newest Message.
+ */
+public class ChatApiServlet extends HttpServlet {
+
+  /** Largest number of Messages returned by one poll. */
+  static final int MAX_MESSAGES_PER_POLL = ChatServlet.MAX_PAGE_SIZE;
+
+  /** Store class that gives access to Conversations. */
+  private ConversationStore conversationStore;
+
+  /** Store class that gives access to Messages. */
+  private MessageStore messageStore;
+
+  /** Store class that gives access to Users. */
+  private UserStore userStore;
+
+  /**
+   * Set up state for handling message polls. This method is only called when running in a server,
+   * not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setConversationStore(ConversationStore.getInstance());
+    setMessageStore(MessageStore.getInstance());
+    setUserStore(UserStore.getInstance());
+  }
+
+  /**
+   * Sets the ConversationStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+  }
+
+  /**
+   * Sets the MessageStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMessageStore(MessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the UserStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+  }
+
+  /**
+   * This function fires when the chat page polls for new Messages. It answers 404 for an unknown
+   * Conversation, 400 for a cursor it can't parse, and 410 for a Message id it no longer has, in
+   * which case the page should reload.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    String path = request.getRequestURI().substring("/api/chat/".length());
+    if (!path.endsWith("/messages")) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    String conversationTitle = path.substring(0, path.length() - "/messages".length());
+    Conversation conversation = conversationStore.getConversationWithTitle(conversationTitle);
+    if (conversation == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    UUID conversationId = conversation.getId();
+
+    String since = request.getParameter("since");
+    if (since == null || since.isEmpty()) {
+      Message newest = messageStore.getNewestMessageInConversation(conversationId);
+      writeMessages(response, null, newest == null ? null : newest.getId().toString(), false);
+      return;
+    }
+
+    List<Message> newMessages;
+    try {
+      newMessages =
+          readAfterCursor(messageStore, conversationId, since, MAX_MESSAGES_PER_POLL + 1);
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    if (newMessages == null) {
+      response.sendError(HttpServletResponse.SC_GONE);
+      return;
+    }
+
+    boolean hasMore = newMessages.size() > MAX_MESSAGES_PER_POLL;
+    if (hasMore) {
+      newMessages = newMessages.subList(0, MAX_MESSAGES_PER_POLL);
+    }
+    String cursor =
+        newMessages.isEmpty() ? since : newMessages.get(newMessages.size() - 1).getId().toString();
+    writeMessages(response, newMessages, cursor, hasMore);
+  }
+
+  /**
+   * Reads the Messages of a Conversation that were sent after a cursor, oldest first.
+   *
+   * @param cursor a Message id or an ISO-8601 instant
+   * @return null if the cursor is a Message id that is no longer in memory
+   * @throws IllegalArgumentException if the cursor is not a Message id
+   * @throws DateTimeParseException if the cursor looks like, but is not, an instant
+   */
+  static List<Message> readAfterCursor(
+      MessageStore messageStore, UUID conversationId, String cursor, int limit) {
+    if (cursor.indexOf('T') >= 0) {
+      return messageStore.getMessagesSince(conversationId, Instant.parse(cursor), limit);
+    }
+    return messageStore.getMessagesAfter(conversationId, UUID.fromString(cursor), limit);
+  }
+
+  private void writeMessages(
+      HttpServletResponse response, List<Message> messages, String cursor, boolean hasMore)
+      throws IOException {
+    StringBuilder json = new StringBuilder("{\"messages\": [");
+    if (messages != null) {
+      for (int i = 0; i < messages.size(); i++) {
+        if (i > 0) {
+          json.append(", ");
+        }
+        Message message = messages.get(i);
+        MessageJson.appendMessage(json, message, userStore.getUser(message.getAuthorId()));
+      }
+    }
+    json.append("], \"cursor\": ");
+    MessageJson.appendString(json, cursor);
+    json.append(", \"hasMore\": ").append(hasMore).append('}');
+
+    response.setHeader("Cache-Control", "no-store");
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.getWriter().write(json.toString());
+  }
+}
@@ -0,0 +1,413 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.MetricsStore;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that pushes new Messages to the chat page as Server-Sent Events, at
+ * /api/chat-events/{title}. Each connection subscribes to its Conversation in MessageStore and is
+ * held open with an AsyncContext, so an idle page costs no thread. Events are written with
+ * non-blocking IO from the thread that adds the Message.
+ *
+ * <p>Every event carries the Message id, so a page that reconnects sends it back as Last-Event-ID
+ * and is sent the Messages it missed. That makes dropping a connection cheap, and it is used for
+ * backpressure: a connection that falls MAX_QUEUED_EVENTS behind, or makes no progress for
+ * STALL_MILLIS, is closed. Connections are also closed after CONNECTION_MILLIS so they stay within
+ * the request deadline. There are no background threads, so heartbeats to idle connections are
+ * sent by a sweep that runs, at most once a second, when a Message is pushed or a page connects.
+ *
+ * <p>The stream only works on a runtime that sends the response as it is written. The App Engine
+ * standard environment buffers the whole response until the request finishes, so there the
+ * chatEventStreaming context parameter is left false; this servlet then answers 404 and chat pages
+ * poll ChatApiServlet instead.
+ */
+public class ChatEventsServlet extends HttpServlet {
+
+  /** Time after which an idle connection is sent a heartbeat comment. */
+  static final long HEARTBEAT_MILLIS = 15000;
+
+  /** Time after which a connection whose events can't be written is closed. */
+  static final long STALL_MILLIS = 20000;
+
+  /** Largest number of events waiting to be written before a connection is closed. */
+  static final int MAX_QUEUED_EVENTS = 256;
+
+  /** Time after which a connection is closed and the page reconnects. */
+  static final long CONNECTION_MILLIS = 50000;
+
+  /** Time the page waits before reconnecting, sent to it as the retry field. */
+  static final long RETRY_MILLIS = 1000;
+
+  /** Shortest time between two sweeps. */
+  private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+
+  /** Event telling the page that it can't be caught up and should reload. */
+  private static final byte[] RESET = "event: reset\ndata:\n\n".getBytes(StandardCharsets.UTF_8);
+
+  /** Store class that gives access to Conversations. */
+  private ConversationStore conversationStore;
+
+  /** Store class that gives access to Messages. */
+  private MessageStore messageStore;
+
+  /** Store class that gives access to Users. */
+  private UserStore userStore;
+
+  /** Store class that keeps connection metrics. */
+  private MetricsStore metricsStore;
+
+  /** Whether event streams are served. */
+  private boolean enabled = true;
+
+  /** The open connections. */
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  /** The System.nanoTime() of the last sweep. */
+  private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+
+  /**
+   * Set up state for handling event streams. This method is only called when running in a
+   * server, not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setConversationStore(ConversationStore.getInstance());
+    setMessageStore(MessageStore.getInstance());
+    setUserStore(UserStore.getInstance());
+    setMetricsStore(MetricsStore.getInstance());
+    setEnabled(Boolean.parseBoolean(getServletContext().getInitParameter("chatEventStreaming")));
+  }
+
+  /**
+   * Sets the ConversationStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+  }
+
+  /**
+   * Sets the MessageStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMessageStore(MessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the UserStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+  }
+
+  /**
+   * Sets the MetricsStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMetricsStore(MetricsStore metricsStore) {
+    this.metricsStore = metricsStore;
+  }
+
+  /**
+   * Sets whether this servlet serves event streams. When false, every request is answered with
+   * 404.
+   */
+  void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * This function fires when the chat page opens an event stream. The Messages after the
+   * Last-Event-ID header, or else the since parameter, are sent first; the stream then follows the
+   * Conversation until it is closed.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    if (!enabled) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String conversationTitle = request.getRequestURI().substring("/api/chat-events/".length());
+    Conversation conversation = conversationStore.getConversationWithTitle(conversationTitle);
+    if (conversation == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String cursor = request.getHeader("Last-Event-ID");
+    if (cursor == null || cursor.isEmpty()) {
+      cursor = request.getParameter("since");
+    }
+
+    response.setHeader("Cache-Control", "no-store");
+    response.setContentType("text/event-stream");
+    response.setCharacterEncoding("UTF-8");
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(CONNECTION_MILLIS);
+    Subscriber subscriber =
+        new Subscriber(
+            conversation.getId(), asyncContext, response.getOutputStream(), System.nanoTime());
+    asyncContext.addListener(subscriber);
+    subscribers.add(subscriber);
+    metricsStore.increment("chat-events.connected");
+
+    // Subscribe before reading the missed Messages, so none are lost in between.
+    messageStore.addMessageListener(conversation.getId(), subscriber);
+    subscriber.start(cursor);
+    maybeSweep(System.nanoTime());
+  }
+
+  /** Sweeps the open connections if the last sweep was long enough ago. */
+  private void maybeSweep(long nowNanos) {
+    long lastSweep = lastSweepNanos.get();
+    if (nowNanos - lastSweep >= SWEEP_INTERVAL_NANOS
+        && lastSweepNanos.compareAndSet(lastSweep, nowNanos)) {
+      sweep(nowNanos);
+    }
+  }
+
+  /** Sends heartbeats to idle connections and closes the ones that have stalled. */
+  void sweep(long nowNanos) {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.check(nowNanos);
+    }
+  }
+
+  /** Returns the number of open connections. */
+  int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /** One open event stream. */
+  private class Subscriber implements Consumer<Message>, WriteListener, AsyncListener {
+    private final UUID conversationId;
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+
+    // The fields below are guarded by this Subscriber.
+    private final Queue<byte[]> events = new ArrayDeque<>();
+    private List<Message> messagesDuringStart = new ArrayList<>();
+    private boolean unflushed;
+    private boolean closeWhenDrained;
+    private boolean closed;
+    private long lastWriteNanos;
+    private long lastCaughtUpNanos;
+
+    private Subscriber(
+        UUID conversationId, AsyncContext asyncContext, ServletOutputStream out, long nowNanos) {
+      this.conversationId = conversationId;
+      this.asyncContext = asyncContext;
+      this.out = out;
+      lastWriteNanos = nowNanos;
+      lastCaughtUpNanos = nowNanos;
+    }
+
+    /** Queues the Messages missed since the cursor, then starts writing. */
+    private synchronized void start(String cursor) {
+      events.add(("retry: " + RETRY_MILLIS + "\n\n").getBytes(StandardCharsets.UTF_8));
+      Set<UUID> replayed = new HashSet<>();
+      if (cursor != null && !cursor.isEmpty()) {
+        List<Message> missed;
+        try {
+          missed =
+              ChatApiServlet.readAfterCursor(
+                  messageStore, conversationId, cursor, MAX_QUEUED_EVENTS);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+          missed = null;
+        }
+        if (missed == null || missed.size() >= MAX_QUEUED_EVENTS) {
+          events.add(RESET);
+          closeWhenDrained = true;
+          messagesDuringStart = null;
+          out.setWriteListener(this);
+          return;
+        }
+        for (Message message : missed) {
+          events.add(event(message));
+          replayed.add(message.getId());
+        }
+      }
+      for (Message message : messagesDuringStart) {
+        if (!replayed.contains(message.getId())) {
+          events.add(event(message));
+        }
+      }
+      messagesDuringStart = null;
+      out.setWriteListener(this);
+    }
+
+    /** Called by MessageStore, on the thread that adds the Message. */
+    @Override
+    public void accept(Message message) {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        if (messagesDuringStart != null) {
+          messagesDuringStart.add(message);
+          return;
+        }
+        if (events.size() >= MAX_QUEUED_EVENTS) {
+          evict();
+          return;
+        }
+        events.add(event(message));
+        drain();
+      }
+      maybeSweep(System.nanoTime());
+    }
+
+    /** Sends a heartbeat if the connection is idle, and closes it if it has stalled. */
+    private synchronized void check(long nowNanos) {
+      if (closed || messagesDuringStart != null) {
+        return;
+      }
+      if (!events.isEmpty() && nowNanos - lastCaughtUpNanos > millisToNanos(STALL_MILLIS)) {
+        evict();
+      } else if (events.isEmpty()
+          && nowNanos - lastWriteNanos > millisToNanos(HEARTBEAT_MILLIS)) {
+        events.add(HEARTBEAT);
+        drain();
+      }
+    }
+
+    /** Called by the container when the stream can be written without blocking. */
+    @Override
+    public void onWritePossible() {
+      drain();
+    }
+
+    /**
+     * Writes queued events for as long as the stream accepts them without blocking. When it
+     * doesn't, the container calls onWritePossible() once it does.
+     */
+    private synchronized void drain() {
+      try {
+        while (!closed && out.isReady()) {
+          byte[] event = events.poll();
+          if (event == null) {
+            lastCaughtUpNanos = System.nanoTime();
+            if (unflushed) {
+              unflushed = false;
+              out.flush();
+              continue;
+            }
+            if (closeWhenDrained) {
+              close();
+            }
+            return;
+          }
+          out.write(event);
+          unflushed = true;
+          lastWriteNanos = System.nanoTime();
+        }
+      } catch (IOException e) {
+        close();
+      }
+    }
+
+    /** Closes a connection that can't keep up. The page reconnects and is caught up from then. */
+    private void evict() {
+      metricsStore.increment("chat-events.evicted");
+      close();
+    }
+
+    private synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      events.clear();
+      messageStore.removeMessageListener(conversationId, this);
+      subscribers.remove(this);
+      try {
+        asyncContext.complete();
+      } catch (IllegalStateException e) {
+        // The container already finished the request.
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      close();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+
+  /** Formats a Message as an event whose id is the Message id. */
+  private byte[] event(Message message) {
+    StringBuilder event = new StringBuilder("id: ").append(message.getId()).append("\ndata: ");
+    MessageJson.appendMessage(event, message, userStore.getUser(message.getAuthorId()));
+    return event.append("\n\n").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static long millisToNanos(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
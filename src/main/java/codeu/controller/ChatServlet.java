@@ -14,15 +14,22 @@
 
 package codeu.controller;
 
+import codeu.model.data.AuthorView;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
+import codeu.model.data.MessagePage;
 import codeu.model.data.User;
+import codeu.model.store.basic.AuthorViewStore;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.MetricsStore;
 import codeu.model.store.basic.UserStore;
 import java.io.IOException;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -43,9 +50,27 @@ public class ChatServlet extends HttpServlet {
   /** Store class that gives access to Users. */
   private UserStore userStore;
 
+  /** Store class that gives access to what chat pages show about Message authors. */
+  private AuthorViewStore authorViewStore;
+
+  /** The rendered HTML of recently shown Messages. */
+  private MessageFragmentCache messageFragmentCache;
+
   /** Max amount of messages a User is allwoed to send */
   private static int MAX_MESSAGES = 10000; 
 
+  /** Whether chat pages follow new Messages over the event stream instead of polling */
+  private boolean chatEventStreaming;
+
+  /** Number of Messages shown on a chat page when the request doesn't ask for a limit */
+  static final int DEFAULT_PAGE_SIZE = 50;
+
+  /** Largest number of Messages a single chat page will show */
+  static final int MAX_PAGE_SIZE = 500;
+
+  /** Number of rendered Messages kept in memory */
+  static final int MAX_CACHED_FRAGMENTS = 20000;
+
   /** Set up state for handling chat requests. */
   @Override
   public void init() throws ServletException {
@@ -53,6 +78,11 @@ public class ChatServlet extends HttpServlet {
     setConversationStore(ConversationStore.getInstance());
     setMessageStore(MessageStore.getInstance());
     setUserStore(UserStore.getInstance());
+    setAuthorViewStore(AuthorViewStore.getInstance());
+    setMessageFragmentCache(
+        new MessageFragmentCache(MAX_CACHED_FRAGMENTS, MetricsStore.getInstance()));
+    setChatEventStreaming(
+        Boolean.parseBoolean(getServletContext().getInitParameter("chatEventStreaming")));
   }
 
   /**
@@ -79,10 +109,38 @@ public class ChatServlet extends HttpServlet {
     this.userStore = userStore;
   }
 
+  /**
+   * Sets the AuthorViewStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setAuthorViewStore(AuthorViewStore authorViewStore) {
+    this.authorViewStore = authorViewStore;
+  }
+
+  /**
+   * Sets the MessageFragmentCache used by this servlet. This function provides a common setup
+   * method for use by the test framework or the servlet's init() function.
+   */
+  void setMessageFragmentCache(MessageFragmentCache messageFragmentCache) {
+    this.messageFragmentCache = messageFragmentCache;
+  }
+
+  /**
+   * Sets whether chat pages follow new Messages over the event stream at /api/chat-events. When
+   * false, the default, they poll /api/chat instead.
+   */
+  void setChatEventStreaming(boolean chatEventStreaming) {
+    this.chatEventStreaming = chatEventStreaming;
+  }
+
   /**
    * This function fires when a user navigates to the chat page. It gets the conversation title from
-   * the URL, finds the corresponding Conversation, and fetches the messages in that Conversation.
-   * It then forwards to chat.jsp for rendering.
+   * the URL, finds the corresponding Conversation, and fetches the newest page of messages in that
+   * Conversation. The optional before and limit parameters select an older page of history. The
+   * authors of the page are looked up once each and each Message's HTML is taken from the
+   * fragment cache; it then forwards to chat.jsp, which writes the fragments out. If the browser
+   * already has the page and neither the Conversation nor any profile changed since, it answers
+   * 304 instead.
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -100,13 +158,60 @@ public class ChatServlet extends HttpServlet {
 
     UUID conversationId = conversation.getId();
 
-    List<Message> messages = messageStore.getMessagesInConversation(conversationId);
+    // Read the versions before the page, so no page is sent with an ETag newer than its data.
+    String username = (String) request.getSession().getAttribute("user");
+    long conversationVersion = messageStore.getConversationVersion(conversationId);
+    long profileVersion = authorViewStore.getProfileVersion();
+    String eTag = ConditionalGet.eTag(username, conversationVersion, profileVersion);
+    long lastModified = Math.max(conversationVersion, profileVersion);
+    if (ConditionalGet.isNotModified(request, response, eTag, lastModified)) {
+      return;
+    }
+
+    Instant before = parseBefore(request.getParameter("before"));
+    int limit = parseLimit(request.getParameter("limit"));
+
+    MessagePage page = messageStore.getMessagesInConversation(conversationId, before, limit);
 
     request.setAttribute("conversation", conversation);
-    request.setAttribute("messages", messages);
+    request.setAttribute("messages", page.getMessages());
+    Map<UUID, AuthorView> authors = authorViewStore.getAuthorViews(page.getMessages());
+    List<String> messageFragments = new ArrayList<>(page.getMessages().size());
+    for (Message message : page.getMessages()) {
+      messageFragments.add(
+          messageFragmentCache.getFragment(message, authors.get(message.getAuthorId())));
+    }
+    request.setAttribute("messageFragments", messageFragments);
+    request.setAttribute("olderMessagesCursor", page.getOlderMessagesCursor());
+    request.setAttribute("pageSize", limit);
+    request.setAttribute("chatEventStreaming", chatEventStreaming);
     request.getRequestDispatcher("/WEB-INF/view/chat.jsp").forward(request, response);
   }
 
+  /** Parses the before parameter, returning null (the newest page) if it is missing or invalid. */
+  private Instant parseBefore(String before) {
+    if (before == null || before.isEmpty()) {
+      return null;
+    }
+    try {
+      return Instant.parse(before);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  /** Parses the limit parameter, falling back to the default page size if it is invalid. */
+  private int parseLimit(String limit) {
+    if (limit == null || limit.isEmpty()) {
+      return DEFAULT_PAGE_SIZE;
+    }
+    try {
+      return Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limit)));
+    } catch (NumberFormatException e) {
+      return DEFAULT_PAGE_SIZE;
+    }
+  }
+
   /**
    * This function fires when a user submits the form on the chat page. It gets the logged-in
    * username from the session, the conversation title from the URL, and the chat message from the
@@ -137,7 +242,7 @@ public class ChatServlet extends HttpServlet {
     } 
     else {
       user.incMessagesSent();
-      userStore.updateUser(user);
+      userStore.updateUserLater(user);
     }
 
     String requestUrl = request.getRequestURI();
@@ -164,6 +269,10 @@ public class ChatServlet extends HttpServlet {
       //removes the removed_user to the participants of the group chat if they exist
       conversation.removeParticipant(removedUser.getId());
     }
+    if (addedUser != null || removedUser != null) {
+      messageStore.conversationChanged(conversation.getId());
+      conversationStore.participantsChanged();
+    }
 
     String messageContent = request.getParameter("message");
 
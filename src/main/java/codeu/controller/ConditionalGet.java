@@ -0,0 +1,99 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers conditional GET requests for pages rendered from versioned store data, so that a
+ * browser that already has the current page gets a 304 instead of the page being built again.
+ */
+final class ConditionalGet {
+
+  private ConditionalGet() {}
+
+  /**
+   * Returns the ETag of a page built from data with the given versions. Pages greet the
+   * logged-in User and show them different forms, so the User is part of the ETag too.
+   *
+   * @param username the logged-in User, or null if nobody is logged in
+   */
+  static String eTag(String username, long... versions) {
+    StringBuilder eTag = new StringBuilder("W/\"");
+    for (long version : versions) {
+      eTag.append(Long.toString(version, 36)).append('-');
+    }
+    eTag.append(username == null ? "anon" : Integer.toHexString(username.hashCode()));
+    return eTag.append('"').toString();
+  }
+
+  /**
+   * Sets the ETag and Last-Modified headers of a page and checks them against the request's
+   * conditional headers. As in RFC 7232, If-Modified-Since is only used when the request has no
+   * If-None-Match.
+   *
+   * @param lastModified the time of the last change to the page's data, in milliseconds
+   * @return true if the response was answered with 304 Not Modified, in which case the page must
+   *     not be built
+   */
+  static boolean isNotModified(
+      HttpServletRequest request, HttpServletResponse response, String eTag, long lastModified) {
+    response.setHeader("ETag", eTag);
+    response.setDateHeader("Last-Modified", lastModified);
+    // Pages differ for each User, so only the browser may keep them, and only after checking back.
+    response.setHeader("Cache-Control", "private, no-cache");
+
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    boolean notModified =
+        ifNoneMatch != null
+            ? matches(ifNoneMatch, eTag)
+            : notModifiedSince(request, lastModified);
+    if (notModified) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+    return notModified;
+  }
+
+  /** Checks whether an If-None-Match header lists the ETag, ignoring weak prefixes. */
+  private static boolean matches(String ifNoneMatch, String eTag) {
+    String opaqueTag = withoutWeakPrefix(eTag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      String trimmed = candidate.trim();
+      if (trimmed.equals("*") || withoutWeakPrefix(trimmed).equals(opaqueTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String withoutWeakPrefix(String eTag) {
+    return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+  }
+
+  /** Checks an If-Modified-Since header, which only has whole seconds, against a change time. */
+  private static boolean notModifiedSince(HttpServletRequest request, long lastModified) {
+    if (request.getHeader("If-Modified-Since") == null) {
+      return false;
+    }
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+}
@@ -65,11 +65,19 @@ public class ConversationServlet extends HttpServlet {
 
   /**
    * This function fires when a user navigates to the conversations page. It gets all of the
-   * conversations from the model and forwards to conversations.jsp for rendering the list.
+   * conversations from the model and forwards to conversations.jsp for rendering the list. If the
+   * browser already has the page and the list didn't change since, it answers 304 instead.
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response)
       throws IOException, ServletException {
+    String username = (String) request.getSession().getAttribute("user");
+    long version = conversationStore.getVersion();
+    if (ConditionalGet.isNotModified(
+        request, response, ConditionalGet.eTag(username, version), version)) {
+      return;
+    }
+
     List<Conversation> conversations = conversationStore.getAllNonGroupConversations();
     request.setAttribute("conversations", conversations);
     List<Conversation> groups = conversationStore.getAllGroupConversations();
@@ -132,6 +140,7 @@ public class ConversationServlet extends HttpServlet {
       conversation = new Conversation(UUID.randomUUID(), user.getId(), title, Instant.now());
     }
 
+    // If another request took the title since it was checked, go into that conversation instead.
     conversationStore.addConversation(conversation);
     response.sendRedirect("/chat/" + title);
   }
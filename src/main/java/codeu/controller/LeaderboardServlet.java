@@ -20,7 +20,7 @@ import codeu.model.store.basic.UserStore;
 import codeu.model.data.Message;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
-import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.basic.UserStatsStore;
 import codeu.controller.ServletUrlStrings;
 import java.io.IOException;
 import java.time.Instant;
@@ -33,9 +33,8 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Collections;
+import java.util.Objects;
 import java.util.stream.*;
-import java.util.function.*;
 
 /** Servlet class responsible for the login page. */
 public class LeaderboardServlet extends HttpServlet {
@@ -44,6 +43,9 @@ public class LeaderboardServlet extends HttpServlet {
   private UserStore userStore;
   private MessageStore messageStore;
 
+  /** Store class that gives access to per-User message and word counts. */
+  private UserStatsStore userStatsStore;
+
   /**
    * Set up state for handling login-related requests. This method is only called when running in a
    * server, not when running in a test.
@@ -53,6 +55,7 @@ public class LeaderboardServlet extends HttpServlet {
     super.init();
     setUserStore(UserStore.getInstance());
     setMessageStore(MessageStore.getInstance());
+    setUserStatsStore(UserStatsStore.getInstance());
   }
 
   /**
@@ -67,6 +70,10 @@ public class LeaderboardServlet extends HttpServlet {
     this.messageStore = messageStore;
   }
 
+  void setUserStatsStore(UserStatsStore userStatsStore) {
+    this.userStatsStore = userStatsStore;
+  }
+
   /**
    * This function fires when a user navigates to the leaderboard page, calls the
    */
@@ -75,14 +82,10 @@ public class LeaderboardServlet extends HttpServlet {
       throws IOException, ServletException {
 
     int numUsers = userStore.getNumUsers();
-    String newestUser = "";
-    String wordiestUser = "";
-    try{
-      newestUser = getNewestUsers(1).get(0).getName();
-      wordiestUser = getWordiestUsers(1).get(0).getName();
-    } catch(PersistentDataStoreException p){
-
-    }
+    List<User> newestUsers = getNewestUsers(1);
+    List<User> wordiestUsers = getWordiestUsers(1);
+    String newestUser = newestUsers.isEmpty() ? "" : newestUsers.get(0).getName();
+    String wordiestUser = wordiestUsers.isEmpty() ? "" : wordiestUsers.get(0).getName();
 
     request.setAttribute("numUsers", numUsers);
     request.setAttribute("newestUser", newestUser);
@@ -90,27 +93,19 @@ public class LeaderboardServlet extends HttpServlet {
     request.getRequestDispatcher(ServletUrlStrings.leadershipJsp).forward(request, response);
   }
 
-  public List<User> getNewestUsers(int x) throws PersistentDataStoreException {
-    return userStore.getUsers().stream()
-      .sorted(Collections.reverseOrder())
-      .limit(x)
-      .collect(Collectors.toList());
+  public List<User> getNewestUsers(int x) {
+    return userStore.getNewestUsers(x);
   }
 
-  public List<User> getWordiestUsers(int x) throws PersistentDataStoreException {
-    List<UUID> userIds = userStore.getUsers().stream().map(User::getId).collect(Collectors.toList());
-    Map<UUID, Integer> numberOfWordsByUserId = userIds.stream()
-      .collect(Collectors.toMap(Function.identity(), userId ->
-      messageStore.getMessagesByUserId(userId).stream()
-        .mapToInt(Message::getWords)
-        .sum()));
-    return numberOfWordsByUserId.entrySet().stream()
-      .sorted(Map.Entry.comparingByValue())
-      .sorted(Collections.reverseOrder())
-      .map(Map.Entry::getKey)
+  public List<User> getWordiestUsers(int x) {
+    return userStatsStore.getWordiestUserIds(x, this::isKnownUser).stream()
       .map(userId -> userStore.getUser(userId))
-      .limit(x)
+      .filter(Objects::nonNull)
       .collect(Collectors.toList());
   }
 
+  /** Returns whether the UserStore still knows the User, who may have been deleted. */
+  private boolean isKnownUser(UUID userId) {
+    return userStore.getUser(userId) != null;
+  }
 }
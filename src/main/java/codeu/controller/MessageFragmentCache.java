@@ -0,0 +1,133 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.AuthorView;
+import codeu.model.data.Message;
+import codeu.model.store.basic.MetricsStore;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Cache of the HTML that chat.jsp shows for each Message. Messages never change once sent, so a
+ * Message's HTML only changes when its author's AuthorView does; each entry remembers the
+ * AuthorView version it was rendered with and is rendered again when that version changes. The
+ * cache holds the most recently used fragments and drops the least recently used once it is full.
+ * Hits and misses are counted in MetricsStore.
+ */
+class MessageFragmentCache {
+
+  /** Counter of fragments served from the cache. */
+  static final String HITS = "message-fragments.hit";
+
+  /** Counter of fragments that had to be rendered. */
+  static final String MISSES = "message-fragments.miss";
+
+  /** Store class that records hits and misses. */
+  private final MetricsStore metricsStore;
+
+  /** Recently used fragments by Message id, least recently used first. */
+  private final Map<UUID, Fragment> fragments;
+
+  /**
+   * Constructs a new, empty MessageFragmentCache.
+   *
+   * @param maxFragments the number of fragments kept in memory
+   */
+  MessageFragmentCache(int maxFragments, MetricsStore metricsStore) {
+    this.metricsStore = metricsStore;
+    fragments =
+        Collections.synchronizedMap(
+            new LinkedHashMap<UUID, Fragment>(16, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<UUID, Fragment> eldest) {
+                return size() > maxFragments;
+              }
+            });
+  }
+
+  /** Returns the HTML of a Message sent by the given author, rendering it if it isn't cached. */
+  String getFragment(Message message, AuthorView author) {
+    Fragment fragment = fragments.get(message.getId());
+    if (fragment != null && fragment.authorVersion == author.getVersion()) {
+      metricsStore.increment(HITS);
+      return fragment.html;
+    }
+    metricsStore.increment(MISSES);
+    fragment = new Fragment(author.getVersion(), render(message, author));
+    fragments.put(message.getId(), fragment);
+    return fragment.html;
+  }
+
+  /**
+   * Renders one Message. The content was stripped of HTML when the Message was sent, so it is
+   * written as it is; the author's name and URLs are escaped.
+   */
+  static String render(Message message, AuthorView author) {
+    StringBuilder html = new StringBuilder("<img src=\"");
+    appendEscaped(html, author.getAvatarUrl());
+    html.append("\" height=\"40\" width=\"40\" />\n");
+    if (author.getProfileUrl() != null) {
+      html.append("<a href=\"");
+      appendEscaped(html, author.getProfileUrl());
+      html.append("\">");
+      appendEscaped(html, author.getName());
+      html.append(":</a>");
+    } else {
+      appendEscaped(html, author.getName());
+      html.append(':');
+    }
+    return html.append(' ').append(message.getContent()).append("\n<br/>\n").toString();
+  }
+
+  /** Appends text escaped for use in HTML content or a quoted attribute. */
+  static void appendEscaped(StringBuilder html, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '<':
+          html.append("&lt;");
+          break;
+        case '>':
+          html.append("&gt;");
+          break;
+        case '&':
+          html.append("&amp;");
+          break;
+        case '"':
+          html.append("&quot;");
+          break;
+        case '\'':
+          html.append("&#39;");
+          break;
+        default:
+          html.append(c);
+      }
+    }
+  }
+
+  /** The HTML of one Message and the version of its AuthorView it was rendered with. */
+  private static class Fragment {
+    private final long authorVersion;
+    private final String html;
+
+    private Fragment(long authorVersion, String html) {
+      this.authorVersion = authorVersion;
+      this.html = html;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Message;
+import codeu.model.data.User;
+
+/** Writes Messages as the JSON objects the chat page reads from the message APIs. */
+final class MessageJson {
+
+  private MessageJson() {}
+
+  /**
+   * Appends a Message as a JSON object. The content is the HTML-safe text stored with the
+   * Message, the same text chat.jsp renders.
+   *
+   * @param author the User who sent the Message, or null if they are unknown
+   */
+  static void appendMessage(StringBuilder json, Message message, User author) {
+    json.append("{\"id\": ");
+    appendString(json, message.getId().toString());
+    json.append(", \"authorId\": ");
+    appendString(json, message.getAuthorId().toString());
+    json.append(", \"author\": ");
+    appendString(json, author == null ? null : author.getName());
+    json.append(", \"content\": ");
+    appendString(json, message.getContent());
+    json.append(", \"creationTime\": ");
+    appendString(json, message.getCreationTime().toString());
+    json.append('}');
+  }
+
+  /** Appends a string as a quoted JSON string, or null. */
+  static void appendString(StringBuilder json, String value) {
+    if (value == null) {
+      json.append("null");
+      return;
+    }
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    json.append('"');
+  }
+}
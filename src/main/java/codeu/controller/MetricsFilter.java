@@ -0,0 +1,261 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.store.basic.MetricsStore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filter class that records how long each request takes, how large its response is and how it
+ * ended, labeled with the servlet and URL pattern that handled it. The numbers go to MetricsStore,
+ * and MetricsServlet reports them. The routes that are measured are chosen by the filter's
+ * mappings in web.xml.
+ */
+public class MetricsFilter implements Filter {
+
+  /** Histogram of request latencies, in microseconds. */
+  static final String DURATION = "http.request.duration.microseconds";
+
+  /** Histogram of response body sizes, in bytes. */
+  static final String RESPONSE_SIZE = "http.response.size.bytes";
+
+  /** Counter of finished requests, also labeled with the class of their status code. */
+  static final String REQUESTS = "http.requests";
+
+  /** Counter of requests that ended with a 5xx status or an exception. */
+  static final String ERRORS = "http.errors";
+
+  /** Store class that keeps the recorded metrics. */
+  private MetricsStore metricsStore;
+
+  /** Name of the servlet mapped to each URL pattern. */
+  private Map<String, String> servletNames = new HashMap<>();
+
+  @Override
+  public void init(FilterConfig filterConfig) {
+    setMetricsStore(MetricsStore.getInstance());
+    ServletContext context = filterConfig.getServletContext();
+    if (context != null) {
+      for (ServletRegistration registration : context.getServletRegistrations().values()) {
+        for (String mapping : registration.getMappings()) {
+          servletNames.put(mapping, registration.getName());
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the MetricsStore used by this filter. This function provides a common setup method for
+   * use by the test framework or the filter's init() function.
+   */
+  void setMetricsStore(MetricsStore metricsStore) {
+    this.metricsStore = metricsStore;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    long startTime = System.nanoTime();
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    CountingResponse countingResponse = new CountingResponse((HttpServletResponse) response);
+    String route = route(httpRequest);
+    String servlet = servletNames.getOrDefault(route, "unknown");
+
+    boolean failed = true;
+    try {
+      chain.doFilter(request, countingResponse);
+      failed = false;
+    } finally {
+      if (!failed && request.isAsyncStarted()) {
+        // The response is finished later, on another thread; record it then.
+        request.getAsyncContext().addListener(new AsyncListener() {
+          @Override
+          public void onComplete(AsyncEvent event) {
+            record(servlet, route, countingResponse, startTime, false);
+          }
+
+          @Override
+          public void onTimeout(AsyncEvent event) {}
+
+          @Override
+          public void onError(AsyncEvent event) {
+            record(servlet, route, countingResponse, startTime, true);
+          }
+
+          @Override
+          public void onStartAsync(AsyncEvent event) {}
+        });
+      } else {
+        record(servlet, route, countingResponse, startTime, failed);
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  private void record(
+      String servlet, String route, CountingResponse response, long startTime, boolean failed) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime);
+    int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+    metricsStore.recordValue(
+        MetricsStore.withLabels(DURATION, "servlet", servlet, "route", route), micros);
+    metricsStore.recordValue(
+        MetricsStore.withLabels(RESPONSE_SIZE, "servlet", servlet, "route", route),
+        response.getByteCount());
+    metricsStore.increment(
+        MetricsStore.withLabels(
+            REQUESTS, "servlet", servlet, "route", route, "status", status / 100 + "xx"));
+    if (status >= 500) {
+      metricsStore.increment(MetricsStore.withLabels(ERRORS, "servlet", servlet, "route", route));
+    }
+  }
+
+  /**
+   * Returns the URL pattern a request was mapped by: a path mapping such as /chat/* when the
+   * request has extra path info, the exact servlet path otherwise.
+   */
+  static String route(HttpServletRequest request) {
+    String servletPath = request.getServletPath();
+    return request.getPathInfo() == null ? servletPath : servletPath + "/*";
+  }
+
+  /** Returns the number of bytes a string takes in UTF-8. */
+  static long utf8Length(CharSequence chars, int offset, int length) {
+    long bytes = 0;
+    for (int i = offset; i < offset + length; i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        bytes += 1;
+      } else if (c < 0x800) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        bytes += 4;
+        i++;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+
+  /** Response wrapper that counts the bytes written to the body. */
+  private static class CountingResponse extends HttpServletResponseWrapper {
+    private volatile long byteCount;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    private CountingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    private long getByteCount() {
+      return byteCount;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (outputStream == null) {
+        ServletOutputStream delegate = super.getOutputStream();
+        outputStream = new ServletOutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            delegate.write(b);
+            byteCount++;
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            byteCount += len;
+          }
+
+          @Override
+          public void flush() throws IOException {
+            delegate.flush();
+          }
+
+          @Override
+          public void close() throws IOException {
+            delegate.close();
+          }
+
+          @Override
+          public boolean isReady() {
+            return delegate.isReady();
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+          }
+        };
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        Writer delegate = super.getWriter();
+        writer = new PrintWriter(new Writer() {
+          @Override
+          public void write(char[] chars, int off, int len) throws IOException {
+            delegate.write(chars, off, len);
+            byteCount += utf8Length(CharBuffer.wrap(chars), off, len);
+          }
+
+          @Override
+          public void write(String string, int off, int len) throws IOException {
+            delegate.write(string, off, len);
+            byteCount += utf8Length(string, off, len);
+          }
+
+          @Override
+          public void flush() throws IOException {
+            delegate.flush();
+          }
+
+          @Override
+          public void close() throws IOException {
+            delegate.close();
+          }
+        });
+      }
+      return writer;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.User;
+import codeu.model.store.basic.MetricsStore;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that reports this instance's MetricsStore at /metrics, in the Prometheus text
+ * exposition format. Counters are reported as counters; timers and histograms are reported as
+ * summaries with their p50, p95 and p99. Only admins may read it.
+ */
+public class MetricsServlet extends HttpServlet {
+
+  /** Prefix of every reported metric name. */
+  static final String PREFIX = "chatapp_";
+
+  /** Percentiles reported for each timer and histogram. */
+  private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+  /** Store class that gives access to Users. */
+  private UserStore userStore;
+
+  /** Store class that keeps the reported metrics. */
+  private MetricsStore metricsStore;
+
+  /**
+   * Set up state for handling metrics requests. This method is only called when running in a
+   * server, not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setUserStore(UserStore.getInstance());
+    setMetricsStore(MetricsStore.getInstance());
+  }
+
+  /**
+   * Sets the UserStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+  }
+
+  /**
+   * Sets the MetricsStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMetricsStore(MetricsStore metricsStore) {
+    this.metricsStore = metricsStore;
+  }
+
+  /**
+   * This function fires when a user requests the /metrics URL. Admins get the metrics; everyone
+   * else gets a 403.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    String username = (String) request.getSession().getAttribute("user");
+    User user = userStore.getUser(username);
+    if (user == null || !user.getIsAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    response.setHeader("Cache-Control", "no-store");
+    response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+    response.getWriter().write(render(metricsStore));
+  }
+
+  /** Formats every metric in a MetricsStore as Prometheus text. */
+  static String render(MetricsStore metricsStore) {
+    Map<String, List<String>> families = new TreeMap<>();
+
+    for (Map.Entry<String, Long> counter : metricsStore.getCounts().entrySet()) {
+      String name = metricName(counter.getKey()) + "_total";
+      family(families, name, "counter")
+          .add(name + labels(counter.getKey(), null) + " " + counter.getValue());
+    }
+    for (Map.Entry<String, MetricsStore.Timer> timer : metricsStore.getTimers().entrySet()) {
+      addSummary(
+          families, metricName(timer.getKey()) + "_milliseconds", timer.getKey(), timer.getValue());
+    }
+    for (Map.Entry<String, MetricsStore.Histogram> histogram :
+        metricsStore.getHistograms().entrySet()) {
+      addSummary(
+          families, metricName(histogram.getKey()), histogram.getKey(), histogram.getValue());
+    }
+
+    StringBuilder text = new StringBuilder();
+    for (List<String> lines : families.values()) {
+      for (String line : lines) {
+        text.append(line).append('\n');
+      }
+    }
+    return text.toString();
+  }
+
+  private static void addSummary(
+      Map<String, List<String>> families,
+      String name,
+      String key,
+      MetricsStore.Histogram histogram) {
+    List<String> lines = family(families, name, "summary");
+    for (double quantile : QUANTILES) {
+      lines.add(
+          name + labels(key, "quantile=\"" + quantile + "\"") + " "
+              + histogram.getPercentile(quantile * 100));
+    }
+    lines.add(name + "_sum" + labels(key, null) + " " + histogram.getTotal());
+    lines.add(name + "_count" + labels(key, null) + " " + histogram.getCount());
+  }
+
+  /** Returns the lines of a metric family, starting it with its TYPE line if it's new. */
+  private static List<String> family(
+      Map<String, List<String>> families, String name, String type) {
+    return families.computeIfAbsent(name, key -> {
+      List<String> lines = new ArrayList<>();
+      lines.add("# TYPE " + name + " " + type);
+      return lines;
+    });
+  }
+
+  /** Turns a MetricsStore name such as "picture-upload.read" into "chatapp_picture_upload_read". */
+  private static String metricName(String key) {
+    int labelStart = key.indexOf('{');
+    String base = labelStart < 0 ? key : key.substring(0, labelStart);
+    return PREFIX + base.replaceAll("[^A-Za-z0-9_]", "_");
+  }
+
+  /** Returns the label set of a MetricsStore name, with an extra label appended if given. */
+  private static String labels(String key, String extraLabel) {
+    int labelStart = key.indexOf('{');
+    String labels = labelStart < 0 ? "" : key.substring(labelStart + 1, key.length() - 1);
+    if (extraLabel != null) {
+      labels = labels.isEmpty() ? extraLabel : labels + "," + extraLabel;
+    }
+    return labels.isEmpty() ? "" : "{" + labels + "}";
+  }
+}
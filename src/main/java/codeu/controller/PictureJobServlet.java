@@ -0,0 +1,77 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.PictureJob;
+import codeu.model.store.basic.PictureJobStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that reports the status of an uploaded profile picture at /picture-jobs/{jobId},
+ * as JSON of the form {"status": "PENDING"}. The profile page polls it after an upload.
+ */
+public class PictureJobServlet extends HttpServlet {
+
+  /** Store class that gives access to uploaded pictures. */
+  private PictureJobStore pictureJobStore;
+
+  /**
+   * Set up state for handling job status requests. This method is only called when running in a
+   * server, not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setPictureJobStore(PictureJobStore.getInstance());
+  }
+
+  /**
+   * Sets the PictureJobStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setPictureJobStore(PictureJobStore pictureJobStore) {
+    this.pictureJobStore = pictureJobStore;
+  }
+
+  /** This function fires when a page polls a job. It writes the job's status. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    PictureJob job;
+    try {
+      UUID jobId = UUID.fromString(request.getRequestURI().substring("/picture-jobs/".length()));
+      job = pictureJobStore.getJob(jobId);
+    } catch (IllegalArgumentException e) {
+      job = null;
+    } catch (PersistentDataStoreException e) {
+      throw new ServletException("Unable to load picture job", e);
+    }
+
+    if (job == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setHeader("Cache-Control", "no-store");
+    response.setContentType("application/json");
+    response.getWriter().write("{\"status\": \"" + job.getStatus().name() + "\"}");
+  }
+}
@@ -0,0 +1,160 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.PictureJob;
+import codeu.model.data.PictureSize;
+import codeu.model.store.basic.AuthorViewStore;
+import codeu.model.store.basic.PictureJobStore;
+import codeu.model.store.basic.ProfilePictureStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.google.appengine.api.images.ImagesServiceFailureException;
+import com.google.appengine.api.images.Transform;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that the picture-processing push queue sends uploaded profile pictures to. It
+ * resizes a picture to every PictureSize, makes it the User's profile picture and records the
+ * job's result. Only the queue can call it; web.xml restricts its URL to admins.
+ */
+public class PictureTaskServlet extends HttpServlet {
+
+  /** Store class that gives access to uploaded pictures. */
+  private PictureJobStore pictureJobStore;
+
+  /** Store class that gives access to profile pictures. */
+  private ProfilePictureStore profilePictureStore;
+
+  /** Store class that caches what chat pages show about Users, including their picture. */
+  private AuthorViewStore authorViewStore;
+
+  /** Image service to call transforms on images */
+  private ImagesService imageService;
+
+  /**
+   * Set up state for handling picture tasks. This method is only called when running in a server,
+   * not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setPictureJobStore(PictureJobStore.getInstance());
+    setProfilePictureStore(ProfilePictureStore.getInstance());
+    setAuthorViewStore(AuthorViewStore.getInstance());
+    setImagesService(ImagesServiceFactory.getImagesService());
+  }
+
+  /**
+   * Sets the PictureJobStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setPictureJobStore(PictureJobStore pictureJobStore) {
+    this.pictureJobStore = pictureJobStore;
+  }
+
+  /**
+   * Sets the ProfilePictureStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setProfilePictureStore(ProfilePictureStore profilePictureStore) {
+    this.profilePictureStore = profilePictureStore;
+  }
+
+  /**
+   * Sets the AuthorViewStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setAuthorViewStore(AuthorViewStore authorViewStore) {
+    this.authorViewStore = authorViewStore;
+  }
+
+  /**
+   * Sets the ImagesService used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setImagesService(ImagesService imageService) {
+    this.imageService = imageService;
+  }
+
+  /**
+   * This function fires when the queue hands over a job. Jobs that are missing or already finished
+   * are skipped, so a retried task does no harm. If the upload isn't an image the job fails; if
+   * Datastore fails the request errors and the queue retries the task.
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    UUID jobId;
+    try {
+      jobId = UUID.fromString(request.getParameter(PictureJobStore.JOB_PARAMETER));
+    } catch (IllegalArgumentException | NullPointerException e) {
+      System.err.println("Picture task without a valid job id");
+      return;
+    }
+
+    try {
+      PictureJob job = pictureJobStore.getJob(jobId);
+      if (job == null || job.getStatus() != PictureJob.Status.PENDING) {
+        return;
+      }
+
+      Map<PictureSize, byte[]> resizedImageData;
+      try {
+        resizedImageData = resizeImage(pictureJobStore.getUpload(jobId));
+      } catch (IllegalArgumentException | ImagesServiceFailureException e) {
+        System.err.println("Unable to resize picture of job " + jobId + ": " + e);
+        pictureJobStore.finish(job, PictureJob.Status.FAILED);
+        return;
+      }
+
+      profilePictureStore.setProfilePictures(job.getUserId(), resizedImageData);
+      authorViewStore.profileUpdated(job.getUserId());
+      pictureJobStore.finish(job, PictureJob.Status.DONE);
+    } catch (PersistentDataStoreException e) {
+      throw new ServletException("Unable to process picture job " + jobId, e);
+    }
+  }
+
+  //  Helper function to resize an image to every PictureSize. The smaller sizes are made from the
+  //  full size rather than the upload, which can be much larger.
+  private Map<PictureSize, byte[]> resizeImage(byte[] inputImageData) {
+    Map<PictureSize, byte[]> resizedImageData = new EnumMap<>(PictureSize.class);
+    Image fullImage = resize(ImagesServiceFactory.makeImage(inputImageData), PictureSize.FULL);
+    resizedImageData.put(PictureSize.FULL, fullImage.getImageData());
+    for (PictureSize size : PictureSize.values()) {
+      if (size != PictureSize.FULL) {
+        Image sizedImage = resize(ImagesServiceFactory.makeImage(fullImage.getImageData()), size);
+        resizedImageData.put(size, sizedImage.getImageData());
+      }
+    }
+    return resizedImageData;
+  }
+
+  //  Helper function to fit an image into the square of a PictureSize
+  private Image resize(Image image, PictureSize size) {
+    Transform imageResize = ImagesServiceFactory.makeResize(size.getPixels(), size.getPixels());
+    return imageService.applyTransform(imageResize, image);
+  }
+}
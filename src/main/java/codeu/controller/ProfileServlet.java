@@ -18,38 +18,53 @@ import java.util.Base64;
 import java.util.Vector;
 import java.util.Set;
 import java.lang.IllegalArgumentException;
+import codeu.model.data.PictureJob;
 import codeu.model.data.User;
+import codeu.model.store.basic.MetricsStore;
+import codeu.model.store.basic.PictureJobStore;
 import codeu.model.store.basic.UserStore;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
-import com.google.appengine.api.images.Image;
-import com.google.appengine.api.images.ImagesService;
-import com.google.appengine.api.images.ImagesServiceFactory;
-import com.google.appengine.api.images.Transform;
 
 /**
-  * Servlet class responsible for user profile pages
+  * Servlet class responsible for user profile pages. The container stops parsing an upload once it
+  * passes the largest picture PictureJobStore can hold, instead of buffering all of it first.
   */
-@MultipartConfig
+@MultipartConfig(
+    maxFileSize = PictureJobStore.MAX_UPLOAD_BYTES,
+    maxRequestSize = ProfileServlet.MAX_UPLOAD_REQUEST_BYTES)
 public class ProfileServlet extends HttpServlet {
+
+  /** Largest picture upload request, leaving room for the multipart headers around the file */
+  static final long MAX_UPLOAD_REQUEST_BYTES = PictureJobStore.MAX_UPLOAD_BYTES + 16 * 1024;
   
   /** Store class that gives access to users */
   private UserStore userStore;
 
-  /** Image Factory to create images and help with image resizing*/
-  private ImagesServiceFactory imageFactory;
+  /** Store class that queues uploaded profile pictures for processing */
+  private PictureJobStore pictureJobStore;
+
+  /** Store class that records upload sizes and times */
+  private MetricsStore metricsStore;
 
-  /** Image service to call transforms on images */
-  private ImagesService imageService = imageFactory.getImagesService();
+  /** Number of upload buffers kept between uploads */
+  static final int UPLOAD_BUFFER_POOL_SIZE = 4;
 
-  /** Transform to be used when resizing an image */
-  private final Transform imageResize = imageFactory.makeResize(300, 300);
+  /** Reads uploaded pictures, rejecting any larger than the configured maximum */
+  private UploadReader uploadReader =
+      new UploadReader(PictureJobStore.MAX_UPLOAD_BYTES, UPLOAD_BUFFER_POOL_SIZE);
 
   /** Set up state for handling profile requests. */
   @Override
   public void init() throws ServletException {
     super.init();
     setUserStore(UserStore.getInstance());
+    setPictureJobStore(PictureJobStore.getInstance());
+    setMetricsStore(MetricsStore.getInstance());
+    setUploadReader(
+        new UploadReader(
+            maxUploadBytes(getServletContext().getInitParameter("maxPictureUploadBytes")),
+            UPLOAD_BUFFER_POOL_SIZE));
   }
 
   /**
@@ -59,6 +74,30 @@ public class ProfileServlet extends HttpServlet {
   void setUserStore(UserStore userStore) {
     this.userStore = userStore;
   }
+
+  /**
+   * Sets the PictureJobStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setPictureJobStore(PictureJobStore pictureJobStore) {
+    this.pictureJobStore = pictureJobStore;
+  }
+
+  /**
+   * Sets the MetricsStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMetricsStore(MetricsStore metricsStore) {
+    this.metricsStore = metricsStore;
+  }
+
+  /**
+   * Sets the UploadReader used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setUploadReader(UploadReader uploadReader) {
+    this.uploadReader = uploadReader;
+  }
   
   /**
    * This function fires when a user navigates to the profile page. It gets the profile title from
@@ -118,21 +157,51 @@ public class ProfileServlet extends HttpServlet {
       if (request.getContentType() != null && 
           request.getContentType().toLowerCase().startsWith("multipart/form-data")) {
 
-        Part filePart = request.getPart("picture");
-        InputStream fileContent = filePart.getInputStream();
-        byte[] imageData = readImage(fileContent, filePart);
+        Part filePart;
+        try {
+          filePart = request.getPart("picture");
+        } catch (IllegalStateException e) {
+          //  The container gave up on an upload larger than the @MultipartConfig limits
+          metricsStore.increment("picture-upload.rejected");
+          response.sendRedirect("/profile/" + ownerName + "?pictureError=tooLarge");
+          return;
+        }
+
+        //  The declared size can't be trusted to be small, but an upload that declares itself too
+        //  large can be turned away without reading it.
+        if (filePart.getSize() > uploadReader.getMaxBytes()) {
+          metricsStore.increment("picture-upload.rejected");
+          response.sendRedirect("/profile/" + ownerName + "?pictureError=tooLarge");
+          return;
+        }
+
+        long readStartTime = System.currentTimeMillis();
+        byte[] imageData;
+        try (InputStream fileContent = filePart.getInputStream()) {
+          imageData = uploadReader.read(fileContent);
+        }
+        metricsStore.recordTime("picture-upload.read", System.currentTimeMillis() - readStartTime);
+
+        if (imageData == null) {
+          metricsStore.increment("picture-upload.rejected");
+          response.sendRedirect("/profile/" + ownerName + "?pictureError=tooLarge");
+          return;
+        }
+        metricsStore.increment("picture-upload.count");
+        metricsStore.add("picture-upload.bytes", imageData.length);
+
+        //  Pictures are resized by the picture-processing queue. The page polls the job and shows
+        //  the new picture once it's ready.
 
         //  Checking if the imageData is empty
         if (imageData.length != 0) {
-          byte[] resizedImageData = resizeImage(imageData);
-          owner.setImageData(resizedImageData);
-
-          //  Updating the user right away and later returning, as nothing else needs to be updated
-          userStore.updateUser(owner);
+          PictureJob job = pictureJobStore.submit(owner.getId(), imageData);
           //  Redirect to a GET request
-          response.sendRedirect("/profile/" + ownerName); 
+          response.sendRedirect("/profile/" + ownerName + "?pictureJob=" + job.getId());
+          return;
         }
 
+        response.sendRedirect("/profile/" + ownerName);
         return;
       }
 
@@ -205,26 +274,20 @@ public class ProfileServlet extends HttpServlet {
       response.sendRedirect("/profile/" + ownerName);
     }
 
-  //  Helper function which uses an inputstream to read the image bytes and returns an image
-  private byte[] readImage(InputStream fileContent, Part filePart) {
-
+  //  Helper function to read the configured upload limit. Pending uploads are stored in Datastore,
+  //  so the limit can be lowered but not raised past PictureJobStore.MAX_UPLOAD_BYTES.
+  static int maxUploadBytes(String maxPictureUploadBytes) {
+    if (maxPictureUploadBytes == null) {
+      return PictureJobStore.MAX_UPLOAD_BYTES;
+    }
     try {
-      //  Reading the bytes from the File
-      byte[] inputBytes = new byte[(int)filePart.getSize()];
-      fileContent.read(inputBytes);
-
-      return inputBytes;
-
-    } catch (IOException | IllegalArgumentException ex) {
-      throw new RuntimeException("Unable to read image", ex);
+      int maxBytes = Integer.parseInt(maxPictureUploadBytes.trim());
+      return maxBytes > 0 ? Math.min(maxBytes, PictureJobStore.MAX_UPLOAD_BYTES)
+                          : PictureJobStore.MAX_UPLOAD_BYTES;
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid maxPictureUploadBytes: " + maxPictureUploadBytes);
+      return PictureJobStore.MAX_UPLOAD_BYTES;
     }
   }
 
-  //  Helper function to resize an image
-  private byte[] resizeImage(byte[] inputImageData) {
-    Image currentImage = imageFactory.makeImage(inputImageData);
-    Image newImage = imageService.applyTransform(imageResize, currentImage);
-    return newImage.getImageData();
-  }
-
 }
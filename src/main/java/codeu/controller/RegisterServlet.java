@@ -54,7 +54,12 @@ public class RegisterServlet extends HttpServlet {
     }
 
     User user = new User(UUID.randomUUID(), username, passwordHash, Instant.now(), isAdmin);
-    userStore.addUser(user);
+    if (!userStore.addUser(user)) {
+      // someone else registered the name since it was checked
+      request.setAttribute("error", "That username is already taken.");
+      request.getRequestDispatcher("/WEB-INF/view/register.jsp").forward(request, response);
+      return;
+    }
 
     response.sendRedirect("/login");
   }
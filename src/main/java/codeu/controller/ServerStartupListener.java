@@ -8,7 +8,19 @@ import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import com.google.appengine.api.ThreadManager;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
@@ -18,27 +30,132 @@ import javax.servlet.ServletContextListener;
  */
 public class ServerStartupListener implements ServletContextListener {
 
-  /** Loads data from Datastore. */
+  /** Number of Messages loaded per Conversation at startup when lazy loading is enabled. */
+  private static final int DEFAULT_RECENT_MESSAGES_PER_CONVERSATION = 100;
+
+  /**
+   * Loads data from Datastore. Users, Conversations and Messages are loaded at the same time, and
+   * the time spent on each is logged once everything has been handed to the stores.
+   *
+   * <p>If the lazyMessageLoading context parameter is true, only the newest
+   * recentMessagesPerConversation Messages of each Conversation are loaded; older history is read
+   * from Datastore when someone pages back to it.
+   *
+   * <p>If the asyncDatastoreWrites context parameter is false, new objects are written to
+   * Datastore before the request that created them returns.
+   */
   @Override
   public void contextInitialized(ServletContextEvent sce) {
+    long startTime = System.nanoTime();
+    boolean lazyMessageLoading =
+        Boolean.parseBoolean(sce.getServletContext().getInitParameter("lazyMessageLoading"));
+    int recentMessagesPerConversation =
+        parseInt(
+            sce.getServletContext().getInitParameter("recentMessagesPerConversation"),
+            DEFAULT_RECENT_MESSAGES_PER_CONVERSATION);
+    PersistentStorageAgent persistentStorageAgent = PersistentStorageAgent.getInstance();
+    String asyncDatastoreWrites = sce.getServletContext().getInitParameter("asyncDatastoreWrites");
+    if (asyncDatastoreWrites != null) {
+      persistentStorageAgent.setAsyncWrites(Boolean.parseBoolean(asyncDatastoreWrites.trim()));
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(3, ThreadManager.currentRequestThreadFactory());
     try {
-      List<User> users = PersistentStorageAgent.getInstance().loadUsers();
-      UserStore.getInstance().setUsers(users);
+      Future<Timed<List<User>>> userLoad =
+          executor.submit(timed(persistentStorageAgent::loadUsers));
+      Future<Timed<List<Conversation>>> conversationLoad =
+          executor.submit(timed(persistentStorageAgent::loadConversations));
+      Future<Timed<List<Message>>> messageLoad =
+          lazyMessageLoading
+              ? executor.submit(timed(() -> persistentStorageAgent.loadRecentMessages(
+                  conversationLoad.get().result, recentMessagesPerConversation)))
+              : executor.submit(timed(persistentStorageAgent::loadMessages));
+
+      Timed<List<User>> users = userLoad.get();
+      Timed<List<Conversation>> conversations = conversationLoad.get();
+      Timed<List<Message>> messages = messageLoad.get();
 
-      List<Conversation> conversations = PersistentStorageAgent.getInstance().loadConversations();
-      ConversationStore.getInstance().setConversations(conversations);
+      long storeStartTime = System.nanoTime();
+      UserStore.getInstance().setUsers(users.result);
+      ConversationStore.getInstance().setConversations(conversations.result);
+      if (lazyMessageLoading) {
+        MessageStore.getInstance().setRecentMessages(
+            messages.result,
+            conversationsAtLimit(messages.result, recentMessagesPerConversation));
+      } else {
+        MessageStore.getInstance().setMessages(messages.result);
+      }
+      long endTime = System.nanoTime();
 
-      List<Message> messages = PersistentStorageAgent.getInstance().loadMessages();
-      MessageStore.getInstance().setMessages(messages);
+      System.out.println(
+          "Startup load took " + millis(startTime, endTime) + " ms: "
+              + users.result.size() + " users in " + users.millis + " ms, "
+              + conversations.result.size() + " conversations in " + conversations.millis + " ms, "
+              + messages.result.size() + " messages in " + messages.millis + " ms, "
+              + "stores built in " + millis(storeStartTime, endTime) + " ms");
 
-    } catch (PersistentDataStoreException e) {
+    } catch (InterruptedException | ExecutionException e) {
       System.err.println("Server didn't start correctly. An error occurred during Datastore load!");
       System.err.println("This is usually caused by loading data that's in an invalid format.");
       System.err.println("Check the stack trace to see exactly what went wrong.");
-      throw new RuntimeException(e);
+      throw new RuntimeException(e.getCause() instanceof PersistentDataStoreException
+          ? e.getCause() : e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Returns the Conversations that had as many recent Messages as were asked for. */
+  private static Set<UUID> conversationsAtLimit(List<Message> messages, int limit) {
+    Map<UUID, Integer> counts = new HashMap<>();
+    for (Message message : messages) {
+      counts.merge(message.getConversationId(), 1, Integer::sum);
+    }
+    Set<UUID> conversationIds = new HashSet<>();
+    for (Map.Entry<UUID, Integer> count : counts.entrySet()) {
+      if (count.getValue() >= limit) {
+        conversationIds.add(count.getKey());
+      }
+    }
+    return conversationIds;
+  }
+
+  private static int parseInt(String value, int defaultValue) {
+    try {
+      return value == null ? defaultValue : Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /** Wraps a load so that it also reports how long it took. */
+  private static <T> Callable<Timed<T>> timed(Callable<T> load) {
+    return () -> {
+      long startTime = System.nanoTime();
+      T result = load.call();
+      return new Timed<>(result, millis(startTime, System.nanoTime()));
+    };
+  }
+
+  private static long millis(long startNanos, long endNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+  }
+
+  /** The result of a load along with the time it took. */
+  private static class Timed<T> {
+    private final T result;
+    private final long millis;
+
+    private Timed(T result, long millis) {
+      this.result = result;
+      this.millis = millis;
     }
   }
 
+  /** Writes any queued User updates and finishes outstanding writes before the server shuts down. */
   @Override
-  public void contextDestroyed(ServletContextEvent sce) {}
+  public void contextDestroyed(ServletContextEvent sce) {
+    PersistentStorageAgent.getInstance().flushUpdates();
+    PersistentStorageAgent.getInstance().awaitWrites();
+  }
 }
@@ -15,9 +15,17 @@
 package codeu.controller;
 
 import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.DefaultDataStore;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
+import codeu.model.store.basic.WorkloadGenerator;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -26,6 +34,9 @@ import javax.servlet.http.HttpServletResponse;
 /** Servlet class responsible for loading test data. */
 public class TestDataServlet extends HttpServlet {
 
+  /** Most tasks the task queue accepts in one call. */
+  static final int MAX_TASKS_PER_ADD = 100;
+
   /** Store class that gives access to Conversations. */
   private ConversationStore conversationStore;
 
@@ -35,6 +46,9 @@ public class TestDataServlet extends HttpServlet {
   /** Store class that gives access to Users. */
   private UserStore userStore;
 
+  /** Push queue that generated Messages are loaded through. */
+  private Queue workloadQueue;
+
   /** Set up state for handling the load test data request. */
   @Override
   public void init() throws ServletException {
@@ -42,6 +56,7 @@ public class TestDataServlet extends HttpServlet {
     setConversationStore(ConversationStore.getInstance());
     setMessageStore(MessageStore.getInstance());
     setUserStore(UserStore.getInstance());
+    setWorkloadQueue(QueueFactory.getQueue(WorkloadTaskServlet.QUEUE_NAME));
   }
 
   /**
@@ -68,6 +83,14 @@ public class TestDataServlet extends HttpServlet {
     this.userStore = userStore;
   }
 
+  /**
+   * Sets the Queue used by this servlet to load generated Messages. This function provides a
+   * common setup method for use by the test framework or the servlet's init() function.
+   */
+  void setWorkloadQueue(Queue workloadQueue) {
+    this.workloadQueue = workloadQueue;
+  }
+
   /**
    * This function fires when a user requests the /testdata URL. It simply forwards the request to
    * testdata.jsp.
@@ -80,7 +103,11 @@ public class TestDataServlet extends HttpServlet {
 
   /**
    * This function fires when a user submits the testdata form. It loads test data if the user
-   * clicked the confirm button.
+   * clicked the confirm button. If the form gave user, conversation and message counts, a new data
+   * set of that size is generated first. If it also gave a seed, the data set comes from a
+   * WorkloadGenerator with that seed instead of DefaultDataStore, so the same seed and counts
+   * always load the same data. Its Messages are loaded in the background by the workload-loading
+   * queue, since millions of them can't be written before the request deadline.
    */
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response)
@@ -88,6 +115,26 @@ public class TestDataServlet extends HttpServlet {
     String confirmButton = request.getParameter("confirm");
 
     if (confirmButton != null) {
+      String users = request.getParameter("users");
+      String conversations = request.getParameter("conversations");
+      String messages = request.getParameter("messages");
+      String seed = request.getParameter("seed");
+      if (users != null && conversations != null && messages != null) {
+        try {
+          int userCount = Integer.parseInt(users.trim());
+          int conversationCount = Integer.parseInt(conversations.trim());
+          int messageCount = Integer.parseInt(messages.trim());
+          if (seed != null && !seed.trim().isEmpty()) {
+            loadWorkload(Long.parseLong(seed.trim()), userCount, conversationCount, messageCount);
+            response.sendRedirect("/");
+            return;
+          }
+          DefaultDataStore.setCounts(userCount, conversationCount, messageCount);
+        } catch (IllegalArgumentException e) {
+          response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+          return;
+        }
+      }
       userStore.loadTestData();
       conversationStore.loadTestData();
       messageStore.loadTestData();
@@ -95,4 +142,38 @@ public class TestDataServlet extends HttpServlet {
 
     response.sendRedirect("/");
   }
+
+  /**
+   * Adds the Users and Conversations of a generated data set to the stores, and queues tasks that
+   * each add BATCHES_PER_TASK batches of its Messages. Tasks rebuild the data set from the seed, so
+   * only the seed and counts are sent to them.
+   */
+  private void loadWorkload(long seed, int userCount, int conversationCount, int messageCount)
+      throws ServletException {
+    WorkloadGenerator generator =
+        new WorkloadGenerator(seed, userCount, conversationCount, messageCount);
+    try {
+      userStore.addUsers(generator.getUsers());
+      conversationStore.addConversations(generator.getConversations());
+    } catch (PersistentDataStoreException e) {
+      throw new ServletException("Unable to write generated data to Datastore.", e);
+    }
+
+    int batchCount =
+        (int) ((messageCount + (long) WorkloadTaskServlet.BATCH_SIZE - 1)
+            / WorkloadTaskServlet.BATCH_SIZE);
+    List<TaskOptions> tasks = new ArrayList<>();
+    for (int first = 0; first < batchCount; first += WorkloadTaskServlet.BATCHES_PER_TASK) {
+      int last = Math.min(first + WorkloadTaskServlet.BATCHES_PER_TASK, batchCount);
+      tasks.add(
+          WorkloadTaskServlet.task(seed, userCount, conversationCount, messageCount, first, last));
+      if (tasks.size() == MAX_TASKS_PER_ADD) {
+        workloadQueue.add(tasks);
+        tasks = new ArrayList<>();
+      }
+    }
+    if (!tasks.isEmpty()) {
+      workloadQueue.add(tasks);
+    }
+  }
 }
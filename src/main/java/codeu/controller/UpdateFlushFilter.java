@@ -0,0 +1,62 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Filter class that writes queued User updates once they are overdue, after each request. Without
+ * it, queued updates are only checked when the next update is queued, so an instance that goes
+ * quiet could hold them indefinitely; App Engine doesn't reliably call contextDestroyed() when it
+ * shuts an instance down, so that flush is not enough on its own.
+ */
+public class UpdateFlushFilter implements Filter {
+
+  /** Agent whose queued User updates are flushed. */
+  private PersistentStorageAgent persistentStorageAgent;
+
+  @Override
+  public void init(FilterConfig filterConfig) {
+    setPersistentStorageAgent(PersistentStorageAgent.getInstance());
+  }
+
+  /**
+   * Sets the PersistentStorageAgent used by this filter. This function provides a common setup
+   * method for use by the test framework or the filter's init() function.
+   */
+  void setPersistentStorageAgent(PersistentStorageAgent persistentStorageAgent) {
+    this.persistentStorageAgent = persistentStorageAgent;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      persistentStorageAgent.flushUpdatesIfOverdue();
+    }
+  }
+
+  @Override
+  public void destroy() {}
+}
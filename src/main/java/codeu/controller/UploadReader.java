@@ -0,0 +1,80 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads uploaded files without trusting the size the client declared. Each upload is copied in
+ * fixed-size chunks into a buffer of the maximum upload size, and reading stops as soon as the
+ * upload turns out to be larger. Buffers are pooled, so concurrent uploads reuse the same few
+ * arrays instead of allocating one per request; only the exact-length copy handed back is new.
+ */
+class UploadReader {
+
+  /** Number of bytes copied from the upload per read. */
+  static final int CHUNK_SIZE = 8 * 1024;
+
+  private final int maxBytes;
+
+  /** Buffers that aren't in use. When it's empty a new buffer is allocated. */
+  private final BlockingQueue<byte[]> bufferPool;
+
+  /**
+   * Constructs a new UploadReader.
+   *
+   * @param maxBytes the largest upload that will be read
+   * @param poolSize the number of buffers kept between uploads
+   */
+  UploadReader(int maxBytes, int poolSize) {
+    this.maxBytes = maxBytes;
+    this.bufferPool = new ArrayBlockingQueue<>(poolSize);
+  }
+
+  /** Returns the largest upload that will be read. */
+  int getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Reads an upload to its end.
+   *
+   * @return the upload, or null if it is larger than the maximum upload size
+   */
+  byte[] read(InputStream upload) throws IOException {
+    byte[] buffer = bufferPool.poll();
+    if (buffer == null) {
+      buffer = new byte[maxBytes];
+    }
+    try {
+      int length = 0;
+      while (length < maxBytes) {
+        int bytesRead = upload.read(buffer, length, Math.min(CHUNK_SIZE, maxBytes - length));
+        if (bytesRead == -1) {
+          return Arrays.copyOf(buffer, length);
+        }
+        length += bytesRead;
+      }
+      // The buffer is full; the upload fits only if nothing is left to read.
+      return upload.read() == -1 ? Arrays.copyOf(buffer, length) : null;
+    } finally {
+      bufferPool.offer(buffer);
+    }
+  }
+}
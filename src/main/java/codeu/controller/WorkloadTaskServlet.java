@@ -0,0 +1,158 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Message;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.basic.WorkloadGenerator;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that the workload-loading push queue sends chunks of a generated data set to. Each
+ * task names a seed, the data set's counts and a range of Message batches; the worker rebuilds the
+ * same WorkloadGenerator and stores only those batches, so a data set of millions of Messages is
+ * loaded by many short requests instead of one that would pass the request deadline. Only the
+ * queue can call it; web.xml restricts its URL to admins.
+ */
+public class WorkloadTaskServlet extends HttpServlet {
+
+  /** Name of the push queue in queue.xml that workload tasks are added to. */
+  static final String QUEUE_NAME = "workload-loading";
+
+  /** URL the push queue sends each workload task to. */
+  static final String TASK_URL = "/tasks/load-workload";
+
+  /** Number of generated Messages added to the stores at a time. */
+  static final int BATCH_SIZE = 5000;
+
+  /** Number of batches each task stores. */
+  static final int BATCHES_PER_TASK = 10;
+
+  /** Store class that gives access to Conversations. */
+  private ConversationStore conversationStore;
+
+  /** Store class that gives access to Messages. */
+  private MessageStore messageStore;
+
+  /** Store class that gives access to Users. */
+  private UserStore userStore;
+
+  /**
+   * Set up state for handling workload tasks. This method is only called when running in a server,
+   * not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setConversationStore(ConversationStore.getInstance());
+    setMessageStore(MessageStore.getInstance());
+    setUserStore(UserStore.getInstance());
+  }
+
+  /**
+   * Sets the ConversationStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+  }
+
+  /**
+   * Sets the MessageStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMessageStore(MessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the UserStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+  }
+
+  /**
+   * Builds the task that stores batches firstBatch up to but not including lastBatch of a data set.
+   */
+  static TaskOptions task(
+      long seed,
+      int userCount,
+      int conversationCount,
+      int messageCount,
+      int firstBatch,
+      int lastBatch) {
+    return TaskOptions.Builder.withUrl(TASK_URL)
+        .param("seed", String.valueOf(seed))
+        .param("users", String.valueOf(userCount))
+        .param("conversations", String.valueOf(conversationCount))
+        .param("messages", String.valueOf(messageCount))
+        .param("firstBatch", String.valueOf(firstBatch))
+        .param("lastBatch", String.valueOf(lastBatch));
+  }
+
+  /**
+   * This function fires when the queue hands over a chunk of a data set. The data set's Users and
+   * Conversations are added first, so this instance knows them too; that and rewriting Messages
+   * are no-ops when they're already stored, so a retried task does no harm. If Datastore fails the
+   * request errors and the queue retries the task.
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    WorkloadGenerator generator;
+    Iterator<List<Message>> batches;
+    try {
+      int messageCount = Integer.parseInt(request.getParameter("messages"));
+      generator =
+          new WorkloadGenerator(
+              Long.parseLong(request.getParameter("seed")),
+              Integer.parseInt(request.getParameter("users")),
+              Integer.parseInt(request.getParameter("conversations")),
+              messageCount);
+      long firstBatch = Integer.parseInt(request.getParameter("firstBatch"));
+      long lastBatch = Integer.parseInt(request.getParameter("lastBatch"));
+      batches =
+          generator.messageBatches(
+              BATCH_SIZE,
+              (int) Math.min(firstBatch * BATCH_SIZE, messageCount),
+              (int) Math.min(lastBatch * BATCH_SIZE, messageCount));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Workload task with invalid parameters: " + e);
+      return;
+    }
+
+    try {
+      userStore.addUsers(generator.getUsers());
+      conversationStore.addConversations(generator.getConversations());
+      while (batches.hasNext()) {
+        messageStore.addMessages(batches.next());
+      }
+    } catch (PersistentDataStoreException e) {
+      throw new ServletException("Unable to write generated data to Datastore.", e);
+    }
+  }
+}
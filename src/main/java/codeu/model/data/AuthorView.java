@@ -0,0 +1,73 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+import java.util.UUID;
+
+/**
+ * Class representing what a chat page shows about the author of a Message. AuthorViews are
+ * immutable; when a User's profile changes, a new AuthorView with a higher version replaces the
+ * old one.
+ */
+public class AuthorView {
+
+  private final UUID id;
+  private final String name;
+  private final String avatarUrl;
+  private final String profileUrl;
+  private final long version;
+
+  /**
+   * Constructs a new AuthorView.
+   *
+   * @param id the ID of the User
+   * @param name the username shown next to the User's Messages
+   * @param avatarUrl the URL of the User's chat-sized profile picture
+   * @param profileUrl the URL of the User's profile page, or null if the User no longer exists
+   * @param version a number that changes whenever the User's profile changes
+   */
+  public AuthorView(UUID id, String name, String avatarUrl, String profileUrl, long version) {
+    this.id = id;
+    this.name = name;
+    this.avatarUrl = avatarUrl;
+    this.profileUrl = profileUrl;
+    this.version = version;
+  }
+
+  /** Returns the ID of the User. */
+  public UUID getId() {
+    return id;
+  }
+
+  /** Returns the username shown next to the User's Messages. */
+  public String getName() {
+    return name;
+  }
+
+  /** Returns the URL of the User's chat-sized profile picture. */
+  public String getAvatarUrl() {
+    return avatarUrl;
+  }
+
+  /** Returns the URL of the User's profile page, or null if the User no longer exists. */
+  public String getProfileUrl() {
+    return profileUrl;
+  }
+
+  /** Returns a number that changes whenever the User's profile changes. */
+  public long getVersion() {
+    return version;
+  }
+}
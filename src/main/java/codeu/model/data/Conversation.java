@@ -18,6 +18,7 @@ import java.time.Instant;
 import java.util.UUID;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 import codeu.model.store.basic.UserStore;
 
 /**
@@ -46,7 +47,7 @@ public class Conversation {
     this.creation = creation;
     this.title = title;
     isGroup = false;
-    this.participants = new HashSet<UUID>();
+    this.participants = ConcurrentHashMap.newKeySet();
   }
 
   public Conversation(UUID id, UUID owner, String title, Instant creation, boolean isGroup) {
@@ -55,7 +56,7 @@ public class Conversation {
     this.creation = creation;
     this.title = title;
     this.isGroup = isGroup;
-    this.participants = new HashSet<UUID>();
+    this.participants = ConcurrentHashMap.newKeySet();
     participants.add(owner);
   }
 
@@ -0,0 +1,55 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Class representing one page of a Conversation's history. The Messages are ordered oldest first,
+ * and the cursor can be passed back to fetch the page of Messages sent before this one.
+ */
+public class MessagePage {
+
+  private final List<Message> messages;
+  private final Instant olderMessagesCursor;
+
+  /**
+   * Constructs a new MessagePage.
+   *
+   * @param messages the Messages on this page, oldest first
+   * @param olderMessagesCursor the cursor for the previous page, or null if there are no older
+   *     Messages
+   */
+  public MessagePage(List<Message> messages, Instant olderMessagesCursor) {
+    this.messages = messages;
+    this.olderMessagesCursor = olderMessagesCursor;
+  }
+
+  /** Returns the Messages on this page, oldest first. */
+  public List<Message> getMessages() {
+    return messages;
+  }
+
+  /** Returns the cursor for the page of older Messages, or null if this is the oldest page. */
+  public Instant getOlderMessagesCursor() {
+    return olderMessagesCursor;
+  }
+
+  /** Returns whether there are Messages older than the ones on this page. */
+  public boolean hasOlderMessages() {
+    return olderMessagesCursor != null;
+  }
+}
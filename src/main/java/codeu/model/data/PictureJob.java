@@ -0,0 +1,80 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Class representing an uploaded profile picture that is waiting to be, or has been, resized and
+ * stored as the User's new picture.
+ */
+public class PictureJob {
+
+  /** Where a PictureJob is in processing. */
+  public enum Status {
+    /** The upload is waiting for a worker. */
+    PENDING,
+    /** The upload was resized and is now the User's profile picture. */
+    DONE,
+    /** The upload could not be read as an image. */
+    FAILED
+  }
+
+  private final UUID id;
+  private final UUID userId;
+  private final Instant creation;
+  private volatile Status status;
+
+  /**
+   * Constructs a new PictureJob.
+   *
+   * @param id the ID of this PictureJob
+   * @param userId the ID of the User who uploaded the picture
+   * @param creation the time the picture was uploaded
+   * @param status where this PictureJob is in processing
+   */
+  public PictureJob(UUID id, UUID userId, Instant creation, Status status) {
+    this.id = id;
+    this.userId = userId;
+    this.creation = creation;
+    this.status = status;
+  }
+
+  /** Returns the ID of this PictureJob. */
+  public UUID getId() {
+    return id;
+  }
+
+  /** Returns the ID of the User who uploaded the picture. */
+  public UUID getUserId() {
+    return userId;
+  }
+
+  /** Returns the time the picture was uploaded. */
+  public Instant getCreationTime() {
+    return creation;
+  }
+
+  /** Returns where this PictureJob is in processing. */
+  public Status getStatus() {
+    return status;
+  }
+
+  /** Records that this PictureJob has moved on in processing. */
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+}
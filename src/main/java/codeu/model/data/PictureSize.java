@@ -0,0 +1,53 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+/**
+ * The sizes a profile picture is stored at. Each uploaded picture is resized to fit a square of
+ * every size, so each page can be served the smallest picture it displays.
+ */
+public enum PictureSize {
+  /** Shown next to each Message on the chat page. */
+  CHAT(40),
+  /** Shown at the top of the profile page. */
+  PROFILE(200),
+  /** The largest size kept of an uploaded picture. */
+  FULL(300);
+
+  private final int pixels;
+
+  private PictureSize(int pixels) {
+    this.pixels = pixels;
+  }
+
+  /** Returns the width and height of the square this size fits pictures into. */
+  public int getPixels() {
+    return pixels;
+  }
+
+  /**
+   * Returns the size with the given width in pixels.
+   *
+   * @return null if no size has that width
+   */
+  public static PictureSize fromPixels(int pixels) {
+    for (PictureSize size : values()) {
+      if (size.pixels == pixels) {
+        return size;
+      }
+    }
+    return null;
+  }
+}
@@ -15,12 +15,10 @@
 package codeu.model.data;
 
 import java.time.Instant;
-import java.util.Base64;
 import java.util.UUID;
 import java.util.Set;
 import java.util.Map;
-import java.util.HashMap;
-import com.google.appengine.api.images.Image;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Class representing a registered user. */
 public class User {
@@ -33,7 +31,6 @@ public class User {
   private final Instant creation;
   private boolean showAllConversations;
   private boolean isAdmin;
-  private byte[] profilePictureBytes;
   private Map<UUID, Boolean> conversationVisibilities;
 
 
@@ -49,13 +46,12 @@ public class User {
    * @param creation the creation time of this User
    * @param showAllConversations whether the user wants to display all their conversations
    * @param isAdmin the isAdmin value of this User
-   * @param profilePicture the profile picture data of this User 
    * @param conversations the map that shows which conversations the user wants to hide
    *
    */
   public User(UUID id, String name, String password, String about, boolean allowMessageDel, 
               int messagesSent, Instant creation, boolean showAllConversations, 
-              boolean isAdmin, byte[] profilePicture, Map conversations) {
+              boolean isAdmin, Map conversations) {
     this.id = id;
     this.name = name;
     this.password = password;
@@ -65,8 +61,7 @@ public class User {
     this.creation = creation;
     this.showAllConversations = showAllConversations;
     this.isAdmin = isAdmin;
-    this.profilePictureBytes = profilePicture;
-    this.conversationVisibilities = conversations;
+    this.conversationVisibilities = new ConcurrentHashMap<>(conversations);
   }
 
   /**
@@ -90,8 +85,7 @@ public class User {
     this.creation = creation;
     this.showAllConversations = false;
     this.isAdmin = isAdmin;
-    this.profilePictureBytes = new byte[0];
-    this.conversationVisibilities = new HashMap();
+    this.conversationVisibilities = new ConcurrentHashMap<>();
   }
 
   /** Returns the ID of this User. */
@@ -144,12 +138,12 @@ public class User {
   }
 
   /** Gets messages sent by this User */
-  public int getMessagesSent() {
+  public synchronized int getMessagesSent() {
     return this.messagesSent;
   }
 
   /** Sets messages sent by this User */
-  public void incMessagesSent() {
+  public synchronized void incMessagesSent() {
     this.messagesSent++;
   }
 
@@ -158,22 +152,6 @@ public class User {
     return conversationVisibilities;
   }
 
-  /** Returns the profile picture of this User. */
-  public byte[] getImageData() {
-    return profilePictureBytes;
-  }
-
-  /** Returns the profile picture of this User as a base64 string. */
-  public String getEncodedImage() {
-    String base64String = Base64.getEncoder().encodeToString(profilePictureBytes);
-    return base64String;
-  }
-
-  /** Changes the profile picture of this User, taking a byte array as input */
-  public void setImageData(byte[] imageBytes) {
-    this.profilePictureBytes = imageBytes;
-  }
-
   /** Adds a conversation to the list */
   public void addConversation(UUID conversationId) {
     this.conversationVisibilities.put(conversationId, true);
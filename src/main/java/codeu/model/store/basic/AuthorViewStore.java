@@ -0,0 +1,155 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.AuthorView;
+import codeu.model.data.Message;
+import codeu.model.data.PictureSize;
+import codeu.model.data.User;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Store class that caches the AuthorView of each User who has sent a Message, so a chat page looks
+ * up each of its authors once instead of once per Message. The cache holds the most recently used
+ * AuthorViews and drops the least recently used once it is full. Callers that change what an
+ * AuthorView shows, such as a profile picture, must call profileUpdated(). It's a singleton so all
+ * servlet classes can access the same instance.
+ */
+public class AuthorViewStore {
+
+  /** Number of AuthorViews kept in memory. */
+  static final int MAX_CACHED_AUTHORS = 10000;
+
+  /** Name shown for Messages whose author no longer exists. */
+  static final String UNKNOWN_AUTHOR_NAME = "[deleted user]";
+
+  /** Singleton instance of AuthorViewStore. */
+  private static volatile AuthorViewStore instance;
+
+  /**
+   * Returns the singleton instance of AuthorViewStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static AuthorViewStore getInstance() {
+    if (instance == null) {
+      synchronized (AuthorViewStore.class) {
+        if (instance == null) {
+          instance = new AuthorViewStore(UserStore.getInstance());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply the UserStore the AuthorViews are built
+   * from.
+   *
+   * @param userStore a UserStore used for testing
+   */
+  public static AuthorViewStore getTestInstance(UserStore userStore) {
+    return new AuthorViewStore(userStore);
+  }
+
+  /** The UserStore that AuthorViews are built from. */
+  private UserStore userStore;
+
+  /** Recently used AuthorViews by User id, least recently used first. */
+  private final Map<UUID, AuthorView> authors;
+
+  /** The version given to the last AuthorView that was built. */
+  private final AtomicLong lastVersion = new AtomicLong();
+
+  /** The version of the profiles shown by AuthorViews, which changes with each profile update. */
+  private volatile long profileVersion = VersionClock.next();
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private AuthorViewStore(UserStore userStore) {
+    this.userStore = userStore;
+    authors =
+        Collections.synchronizedMap(
+            new LinkedHashMap<UUID, AuthorView>(16, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<UUID, AuthorView> eldest) {
+                return size() > MAX_CACHED_AUTHORS;
+              }
+            });
+  }
+
+  /**
+   * Returns the AuthorView of the given User, building it if it isn't cached. An unknown User gets
+   * a placeholder that is not cached.
+   */
+  public AuthorView getAuthorView(UUID userId) {
+    AuthorView author = authors.get(userId);
+    if (author != null) {
+      return author;
+    }
+    User user = userStore.getUser(userId);
+    if (user == null) {
+      return new AuthorView(userId, UNKNOWN_AUTHOR_NAME, avatarUrl(userId, 0), null, 0);
+    }
+    long version = lastVersion.incrementAndGet();
+    author =
+        new AuthorView(
+            userId,
+            user.getName(),
+            avatarUrl(userId, version),
+            "/profile/" + user.getName(),
+            version);
+    authors.put(userId, author);
+    return author;
+  }
+
+  /** Returns the AuthorViews of the distinct authors of the given Messages, by User id. */
+  public Map<UUID, AuthorView> getAuthorViews(Collection<Message> messages) {
+    Map<UUID, AuthorView> pageAuthors = new HashMap<>();
+    for (Message message : messages) {
+      pageAuthors.computeIfAbsent(message.getAuthorId(), this::getAuthorView);
+    }
+    return pageAuthors;
+  }
+
+  /**
+   * Drops the cached AuthorView of a User whose profile changed. The next AuthorView built for
+   * them has a higher version, and a new avatar URL so browsers fetch the new picture.
+   */
+  public void profileUpdated(UUID userId) {
+    authors.remove(userId);
+    profileVersion = VersionClock.next();
+  }
+
+  /**
+   * Returns the version of the profiles shown by AuthorViews. It changes whenever profileUpdated()
+   * is called, so a page showing AuthorViews can be reused for as long as it stays the same.
+   */
+  public long getProfileVersion() {
+    return profileVersion;
+  }
+
+  /**
+   * Returns the URL of a User's chat-sized profile picture. The version is added so that the URL
+   * changes along with the picture.
+   */
+  private static String avatarUrl(UUID userId, long version) {
+    return "/avatar/" + userId + "?size=" + PictureSize.CHAT.getPixels() + "&v=" + version;
+  }
+}
@@ -15,23 +15,25 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Conversation;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
-import java.util.stream.Collectors;
 import java.util.ArrayList;
-import java.util.function.*;
-import java.util.Map;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
- * instance.
+ * instance. Conversations are held in a copy-on-write list and concurrent maps, so the store can be
+ * shared by request threads.
  */
 public class ConversationStore {
 
   /** Singleton instance of ConversationStore. */
-  private static ConversationStore instance;
+  private static volatile ConversationStore instance;
 
   /**
    * Returns the singleton instance of ConversationStore that should be shared between all servlet
@@ -39,7 +41,11 @@ public class ConversationStore {
    */
   public static ConversationStore getInstance() {
     if (instance == null) {
-      instance = new ConversationStore(PersistentStorageAgent.getInstance());
+      synchronized (ConversationStore.class) {
+        if (instance == null) {
+          instance = new ConversationStore(PersistentStorageAgent.getInstance());
+        }
+      }
     }
     return instance;
   }
@@ -60,14 +66,20 @@ public class ConversationStore {
   private PersistentStorageAgent persistentStorageAgent;
 
   /** The in-memory list of Conversations. */
-  private List<Conversation> conversations;
-  private Map<String, Conversation> conversationsByTitle;
-  private Map<UUID, Conversation> conversationsById;
+  private volatile List<Conversation> conversations;
+  private volatile Map<String, Conversation> conversationsByTitle;
+  private volatile Map<UUID, Conversation> conversationsById;
+
+  /** The version of the conversation list, which changes whenever the list changes. */
+  private volatile long version;
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private ConversationStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    conversations = new ArrayList<>();
+    conversations = new CopyOnWriteArrayList<>();
+    conversationsByTitle = new ConcurrentHashMap<>();
+    conversationsById = new ConcurrentHashMap<>();
+    version = VersionClock.next();
   }
 
   /**
@@ -78,7 +90,11 @@ public class ConversationStore {
   public boolean loadTestData() {
     boolean loaded = false;
     try {
-      conversations.addAll(DefaultDataStore.getInstance().getAllConversations());
+      for (Conversation conversation : DefaultDataStore.getInstance().getAllConversations()) {
+        conversations.add(conversation);
+        updateConversationMaps(conversation);
+      }
+      version = VersionClock.next();
       loaded = true;
     } catch (Exception e) {
       loaded = false;
@@ -112,22 +128,78 @@ public class ConversationStore {
     return groups;
   }
 
-  /** Add a new conversation to the current set of conversations known to the application. */
-  public void addConversation(Conversation conversation) {
+  /**
+   * Add a new conversation to the current set of conversations known to the application. The title
+   * is claimed atomically, so of two concurrent requests for the same title only one adds it.
+   *
+   * @return false, without adding or writing the conversation, if the title is already taken.
+   */
+  public boolean addConversation(Conversation conversation) {
+    if (conversationsByTitle.putIfAbsent(conversation.getTitle(), conversation) != null) {
+      return false;
+    }
+    conversationsById.put(conversation.getId(), conversation);
     conversations.add(conversation);
     persistentStorageAgent.writeThrough(conversation);
-    updateConversationMaps(conversation);
+    version = VersionClock.next();
+    return true;
   }
 
-  /** Check whether a Conversation title is already known to the application. */
-  public boolean isTitleTaken(String title) {
-    // This approach will be pretty slow if we have many Conversations.
-    for (Conversation conversation : conversations) {
-      if (conversation.getTitle().equals(title)) {
-        return true;
+  /**
+   * Add many new conversations at once, writing them to Datastore in batches. Meant for seeding
+   * large data sets. Each title is claimed atomically, as in addConversation(), and conversations
+   * whose id is already known or whose title is taken are skipped, so seeding the same data set
+   * again adds nothing.
+   *
+   * @throws PersistentDataStoreException if the conversations could not be written to Datastore
+   */
+  public void addConversations(List<Conversation> newConversations)
+      throws PersistentDataStoreException {
+    List<Conversation> claimedConversations = new ArrayList<>();
+    for (Conversation conversation : newConversations) {
+      if (!conversationsById.containsKey(conversation.getId())
+          && conversationsByTitle.putIfAbsent(conversation.getTitle(), conversation) == null) {
+        claimedConversations.add(conversation);
       }
     }
-    return false;
+    if (claimedConversations.isEmpty()) {
+      return;
+    }
+    try {
+      persistentStorageAgent.writeConversations(claimedConversations);
+    } catch (PersistentDataStoreException e) {
+      for (Conversation conversation : claimedConversations) {
+        conversationsByTitle.remove(conversation.getTitle(), conversation);
+      }
+      throw e;
+    }
+    for (Conversation conversation : claimedConversations) {
+      conversationsById.put(conversation.getId(), conversation);
+    }
+    conversations.addAll(claimedConversations);
+    version = VersionClock.next();
+  }
+
+  /**
+   * Returns the version of the conversation list. It changes whenever a Conversation is added and
+   * whenever participantsChanged() is called, so a page built from the list can be reused for as
+   * long as its version stays the same.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gives the conversation list a new version. Callers that add or remove participants of a
+   * Conversation must call this after the change, since which groups a User sees depends on them.
+   */
+  public void participantsChanged() {
+    version = VersionClock.next();
+  }
+
+  /** Check whether a Conversation title is already known to the application. */
+  public boolean isTitleTaken(String title) {
+    return title != null && conversationsByTitle.containsKey(title);
   }
 
   /** Find and return the Conversation with the given title. */
@@ -142,11 +214,16 @@ public class ConversationStore {
 
   /** Sets the List of Conversations stored by this ConversationStore. */
   public void setConversations(List<Conversation> conversations) {
-    this.conversations = conversations;
-    conversationsByTitle = conversations.stream().collect(Collectors.toMap(Conversation::getTitle,
-                                                                           Function.identity()));
-    conversationsById = conversations.stream().collect(Collectors.toMap(Conversation::getId,
-                                                                     Function.identity()));
+    Map<String, Conversation> newConversationsByTitle = new ConcurrentHashMap<>();
+    Map<UUID, Conversation> newConversationsById = new ConcurrentHashMap<>();
+    for (Conversation conversation : conversations) {
+      newConversationsByTitle.put(conversation.getTitle(), conversation);
+      newConversationsById.put(conversation.getId(), conversation);
+    }
+    this.conversations = new CopyOnWriteArrayList<>(conversations);
+    conversationsByTitle = newConversationsByTitle;
+    conversationsById = newConversationsById;
+    version = VersionClock.next();
   }
 
   public void updateConversationMaps(Conversation conversation) {
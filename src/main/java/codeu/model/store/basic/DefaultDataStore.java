@@ -18,62 +18,108 @@ import org.mindrot.jbcrypt.*;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 import codeu.model.data.User;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This class makes it easy to add dummy data to your chat app instance. To use fake data, set
  * USE_DEFAULT_DATA to true, then adjust the COUNT variables to generate the corresponding amount of
  * users, conversations, and messages. Note that the data must be consistent, i.e. if a Message has
  * an author, that author must be a member of the Users list.
+ *
+ * <p>The data is built in memory and then written to Datastore in batches, so large data sets for
+ * load testing can be seeded quickly. Call setCounts() to change how much data is generated.
  */
 public class DefaultDataStore {
 
   /** Set this to true to use generated default data. */
-  private boolean USE_DEFAULT_DATA = true;
+  private static final boolean USE_DEFAULT_DATA = true;
 
-  /**
-   * Default user count. Only used if USE_DEFAULT_DATA is true. Make sure this is <= the number of
-   * names in the getRandomUsernames() function.
-   */
-  private int DEFAULT_USER_COUNT = 20;
+  /** Default user count. Only used if USE_DEFAULT_DATA is true. */
+  public static final int DEFAULT_USER_COUNT = 20;
 
   /**
    * Default conversation count. Only used if USE_DEFAULT_DATA is true. Each conversation is
    * assigned a random user as its author.
    */
-  private int DEFAULT_CONVERSATION_COUNT = 10;
+  public static final int DEFAULT_CONVERSATION_COUNT = 10;
 
   /**
    * Default message count. Only used if USE_DEFAULT_DATA is true. Each message is assigned a random
    * author and conversation.
    */
-  private int DEFAULT_MESSAGE_COUNT = 100;
+  public static final int DEFAULT_MESSAGE_COUNT = 100;
+
+  /** Password of every generated user. */
+  private static final String DEFAULT_PASSWORD = "password";
+
+  private static volatile DefaultDataStore instance;
 
-  private static DefaultDataStore instance = new DefaultDataStore();
+  private static int userCount = DEFAULT_USER_COUNT;
+  private static int conversationCount = DEFAULT_CONVERSATION_COUNT;
+  private static int messageCount = DEFAULT_MESSAGE_COUNT;
 
   public static DefaultDataStore getInstance() {
+    if (instance == null) {
+      synchronized (DefaultDataStore.class) {
+        if (instance == null) {
+          instance = new DefaultDataStore(userCount, conversationCount, messageCount);
+        }
+      }
+    }
     return instance;
   }
 
+  /**
+   * Sets how many users, conversations and messages are generated. Data that was already generated
+   * is discarded, so the next getInstance() builds and writes a new set of the given size. Its
+   * usernames and titles skip those already in use, so it can be loaded alongside the old set.
+   */
+  public static synchronized void setCounts(
+      int userCount, int conversationCount, int messageCount) {
+    if (userCount < 1 || conversationCount < 0 || messageCount < 0) {
+      throw new IllegalArgumentException("At least one user is needed to own generated data.");
+    }
+    if (conversationCount == 0 && messageCount > 0) {
+      throw new IllegalArgumentException("Messages need at least one conversation.");
+    }
+    DefaultDataStore.userCount = userCount;
+    DefaultDataStore.conversationCount = conversationCount;
+    DefaultDataStore.messageCount = messageCount;
+    instance = null;
+  }
+
   private List<User> users;
   private List<Conversation> conversations;
   private List<Message> messages;
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
-  private DefaultDataStore() {
-    users = new ArrayList<>();
-    conversations = new ArrayList<>();
-    messages = new ArrayList<>();
+  private DefaultDataStore(int userCount, int conversationCount, int messageCount) {
+    users = new ArrayList<>(userCount);
+    conversations = new ArrayList<>(conversationCount);
+    messages = new ArrayList<>(messageCount);
 
     if (USE_DEFAULT_DATA) {
-      addRandomUsers();
-      addRandomConversations();
-      addRandomMessages();
+      addRandomUsers(userCount);
+      addRandomConversations(conversationCount);
+      addRandomMessages(messageCount);
+      try {
+        PersistentStorageAgent.getInstance().writeAll(users, conversations, messages);
+      } catch (PersistentDataStoreException e) {
+        System.err.println("ERROR: Unable to write default data to Datastore.");
+        throw new IllegalStateException(e);
+      }
     }
   }
 
@@ -93,31 +139,53 @@ public class DefaultDataStore {
     return messages;
   }
 
-  private void addRandomUsers() {
+  /**
+   * Adds users named after the distinct random usernames, numbering the names once they run out or
+   * are already registered. Every user shares one password hash: hashing is deliberately slow, and
+   * a fresh salt per user made seeding large data sets take minutes.
+   */
+  private void addRandomUsers(int count) {
 
-    List<String> randomUsernames = getRandomUsernames();
+    List<String> randomUsernames = new ArrayList<>(new LinkedHashSet<>(getRandomUsernames()));
     Collections.shuffle(randomUsernames);
-
-    for (int i = 0; i < DEFAULT_USER_COUNT; i++) {
-      User user = new User(UUID.randomUUID(), randomUsernames.get(i), BCrypt.hashpw("password", BCrypt.gensalt()), Instant.now(), false);
-      PersistentStorageAgent.getInstance().writeThrough(user);
+    String passwordHash = BCrypt.hashpw(DEFAULT_PASSWORD, BCrypt.gensalt());
+    UserStore userStore = UserStore.getInstance();
+    Map<String, Integer> nextSuffix = new HashMap<>();
+    Set<String> usernames = new HashSet<>();
+
+    for (int i = 0; i < count; i++) {
+      String name = randomUsernames.get(i % randomUsernames.size());
+      int suffix = nextSuffix.getOrDefault(name, 0);
+      String username = suffix == 0 ? name : name + "_" + suffix;
+      while (userStore.isUserRegistered(username) || !usernames.add(username)) {
+        suffix++;
+        username = name + "_" + suffix;
+      }
+      nextSuffix.put(name, suffix + 1);
+      User user = new User(UUID.randomUUID(), username, passwordHash, Instant.now(), false);
       users.add(user);
     }
   }
 
-  private void addRandomConversations() {
-    for (int i = 1; i <= DEFAULT_CONVERSATION_COUNT; i++) {
+  /** Adds conversations with numbered titles, skipping numbers whose title is already taken. */
+  private void addRandomConversations(int count) {
+    ConversationStore conversationStore = ConversationStore.getInstance();
+    int number = 0;
+    for (int i = 1; i <= count; i++) {
       User user = getRandomElement(users);
-      String title = "Conversation_" + i;
+      String title;
+      do {
+        number++;
+        title = "Conversation_" + number;
+      } while (conversationStore.isTitleTaken(title));
       Conversation conversation =
           new Conversation(UUID.randomUUID(), user.getId(), title, Instant.now());
-      PersistentStorageAgent.getInstance().writeThrough(conversation);
       conversations.add(conversation);
     }
   }
 
-  private void addRandomMessages() {
-    for (int i = 0; i < DEFAULT_MESSAGE_COUNT; i++) {
+  private void addRandomMessages(int count) {
+    for (int i = 0; i < count; i++) {
       Conversation conversation = getRandomElement(conversations);
       User author = getRandomElement(users);
       String content = getRandomMessageContent();
@@ -125,13 +193,12 @@ public class DefaultDataStore {
       Message message =
           new Message(
               UUID.randomUUID(), conversation.getId(), author.getId(), content, Instant.now());
-      PersistentStorageAgent.getInstance().writeThrough(message);
       messages.add(message);
     }
   }
 
   private <E> E getRandomElement(List<E> list) {
-    return list.get((int) (Math.random() * list.size()));
+    return list.get(ThreadLocalRandom.current().nextInt(list.size()));
   }
 
   private List<String> getRandomUsernames() {
@@ -178,8 +245,9 @@ public class DefaultDataStore {
             + "iure reprehenderit, qui in ea voluptate velit esse, quam nihil molestiae consequatur, vel illum, "
             + "qui dolorem eum fugiat, quo voluptas nulla pariatur";
 
-    int startIndex = (int) (Math.random() * (loremIpsum.length() - 100));
-    int endIndex = (int) (startIndex + 10 + Math.random() * 90);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int startIndex = random.nextInt(loremIpsum.length() - 100);
+    int endIndex = startIndex + 10 + random.nextInt(90);
     String messageContent = loremIpsum.substring(startIndex, endIndex).trim();
 
     return messageContent;
@@ -2,24 +2,35 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Message;
+import codeu.model.data.MessagePage;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
-import java.util.Collections;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
-import java.util.UUID;
 import java.util.Map;
-import java.util.HashMap;
-import codeu.model.store.basic.UserStore;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
- * instance.
+ * instance. All of its data structures are concurrent, so it can be shared by request threads.
  */
 public class MessageStore {
 
   /** Singleton instance of MessageStore. */
-  private static MessageStore instance;
+  private static volatile MessageStore instance;
 
   /**
    * Returns the singleton instance of MessageStore that should be shared between all servlet
@@ -27,7 +38,12 @@ public class MessageStore {
    */
   public static MessageStore getInstance() {
     if (instance == null) {
-      instance = new MessageStore(PersistentStorageAgent.getInstance());
+      synchronized (MessageStore.class) {
+        if (instance == null) {
+          instance =
+              new MessageStore(PersistentStorageAgent.getInstance(), UserStatsStore.getInstance());
+        }
+      }
     }
     return instance;
   }
@@ -38,7 +54,19 @@ public class MessageStore {
    * @param persistentStorageAgent a mock used for testing
    */
   public static MessageStore getTestInstance(PersistentStorageAgent persistentStorageAgent) {
-    return new MessageStore(persistentStorageAgent);
+    return new MessageStore(persistentStorageAgent, UserStatsStore.getTestInstance());
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a mock for PersistentStorageAgent and the
+   * UserStatsStore that should follow this store's Messages.
+   *
+   * @param persistentStorageAgent a mock used for testing
+   * @param userStatsStore the UserStatsStore updated as Messages are added and deleted
+   */
+  public static MessageStore getTestInstance(
+      PersistentStorageAgent persistentStorageAgent, UserStatsStore userStatsStore) {
+    return new MessageStore(persistentStorageAgent, userStatsStore);
   }
 
   /**
@@ -47,18 +75,58 @@ public class MessageStore {
    */
   private PersistentStorageAgent persistentStorageAgent;
 
-  /** The in-memory list of Messages. */
-  private List<Message> messages;
+  /** The per-User counters that are kept in step with the Messages in this store. */
+  private UserStatsStore userStatsStore;
 
-  /** The in-memory list of Messages, organized by author Id */
-  private Map<UUID, List<Message>> messagesByAuthorId;
+  /** The in-memory Messages, by Message id. */
+  private volatile ConcurrentMap<UUID, Message> messages;
 
+  /** The in-memory Messages of each author, ordered by creation time */
+  private volatile ConcurrentMap<UUID, NavigableSet<Message>> messagesByAuthorId;
+
+  /** The in-memory Messages of each Conversation, ordered by creation time */
+  private volatile ConcurrentMap<UUID, NavigableSet<Message>> messagesByConversationId;
+
+  /**
+   * Conversations whose older Messages may still be only in Datastore. This is only filled when
+   * the store was started with setRecentMessages().
+   */
+  private volatile Set<UUID> conversationsWithUnloadedHistory;
+
+  /** The listeners waiting for new Messages, by Conversation id. */
+  private final ConcurrentMap<UUID, Set<Consumer<Message>>> listenersByConversationId;
+
+  /** The version of each Conversation that changed since the Messages were last set. */
+  private final ConcurrentMap<UUID, Long> conversationVersions;
+
+  /** The version of every Conversation that didn't change since the Messages were last set. */
+  private volatile long baseVersion;
+
+  /**
+   * Orders Messages by creation time, falling back to the Message id so that two Messages sent at
+   * the same instant are both kept.
+   */
+  private static final Comparator<Message> CREATION_ORDER =
+      Comparator.comparing(Message::getCreationTime).thenComparing(Message::getId);
+
+  /** The smallest possible Message id, used to build a cursor that sorts before real Messages. */
+  private static final UUID FIRST_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+
+  /** The largest possible Message id, used to build a cursor that sorts after real Messages. */
+  private static final UUID LAST_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
-  private MessageStore(PersistentStorageAgent persistentStorageAgent) {
+  private MessageStore(
+      PersistentStorageAgent persistentStorageAgent, UserStatsStore userStatsStore) {
     this.persistentStorageAgent = persistentStorageAgent;
-    messages = new ArrayList<>();
-    messagesByAuthorId = new HashMap<>();
+    this.userStatsStore = userStatsStore;
+    messages = new ConcurrentHashMap<>();
+    messagesByAuthorId = new ConcurrentHashMap<>();
+    messagesByConversationId = new ConcurrentHashMap<>();
+    conversationsWithUnloadedHistory = ConcurrentHashMap.newKeySet();
+    listenersByConversationId = new ConcurrentHashMap<>();
+    conversationVersions = new ConcurrentHashMap<>();
+    baseVersion = VersionClock.next();
   }
 
   /**
@@ -69,10 +137,11 @@ public class MessageStore {
   public boolean loadTestData() {
     boolean loaded = false;
     try {
-      messages.addAll(DefaultDataStore.getInstance().getAllMessages());
-      for (Message message : messages) {
-        messagesByAuthorId.computeIfAbsent(
-          message.getAuthorId(), k -> new ArrayList()).add(message);
+      for (Message message : DefaultDataStore.getInstance().getAllMessages()) {
+        if (index(message)) {
+          userStatsStore.recordMessage(message);
+          conversationChanged(message.getConversationId());
+        }
       }
       loaded = true;
     } catch (Exception e) {
@@ -84,73 +153,393 @@ public class MessageStore {
 
   /** Add a new message to the current set of messages known to the application. */
   public void addMessage(Message message) {
-    messages.add(message);
+    if (index(message)) {
+      userStatsStore.recordMessage(message);
+      conversationChanged(message.getConversationId());
+      notifyListeners(message);
+    }
     persistentStorageAgent.writeThrough(message);
   }
 
+  /**
+   * Add many new messages at once, writing them to Datastore in batches. Meant for seeding large
+   * data sets.
+   *
+   * @throws PersistentDataStoreException if the messages could not be written to Datastore
+   */
+  public void addMessages(List<Message> newMessages) throws PersistentDataStoreException {
+    persistentStorageAgent.writeMessages(newMessages);
+    for (Message message : newMessages) {
+      if (index(message)) {
+        userStatsStore.recordMessage(message);
+        conversationChanged(message.getConversationId());
+        notifyListeners(message);
+      }
+    }
+  }
+
+  /**
+   * Registers a listener that is called with each Message added to a Conversation from now on.
+   * Listeners are called on the thread that adds the Message, so they must not block.
+   */
+  public void addMessageListener(UUID conversationId, Consumer<Message> listener) {
+    listenersByConversationId.compute(conversationId, (id, listeners) -> {
+      if (listeners == null) {
+        listeners = ConcurrentHashMap.newKeySet();
+      }
+      listeners.add(listener);
+      return listeners;
+    });
+  }
+
+  /** Stops calling a listener registered with addMessageListener(). */
+  public void removeMessageListener(UUID conversationId, Consumer<Message> listener) {
+    listenersByConversationId.computeIfPresent(conversationId, (id, listeners) -> {
+      listeners.remove(listener);
+      return listeners.isEmpty() ? null : listeners;
+    });
+  }
+
+  /** Passes a new Message to the listeners of its Conversation. */
+  private void notifyListeners(Message message) {
+    Set<Consumer<Message>> listeners = listenersByConversationId.get(message.getConversationId());
+    if (listeners == null) {
+      return;
+    }
+    for (Consumer<Message> listener : listeners) {
+      try {
+        listener.accept(message);
+      } catch (RuntimeException e) {
+        // One broken listener must not stop the Message from being sent.
+        System.err.println("ERROR: Message listener failed: " + e);
+      }
+    }
+  }
+
   /** Delete a message from the current set of messages known to the application */
   public void deleteMessage(Message message) {
-    messages.remove(message);
+    if (unindex(message)) {
+      userStatsStore.removeMessage(message);
+      conversationChanged(message.getConversationId());
+    }
     persistentStorageAgent.delete(message);
   }
 
   /** Delete an old message sent by this User */
   public void deleteOldMessages(UUID userId, int numOfMessages) {
-    List<Message> messagesByAuthor = getMessagesByAuthor(userId); 
-    int numToRemove = Math.min(numOfMessages, messagesByAuthor.size());
-    List<Message> messagesToDelete = messagesByAuthor.subList(0, numToRemove);
-    messages.removeAll(messagesToDelete);
-    messagesToDelete.clear();
+    NavigableSet<Message> messagesByAuthor = messagesByAuthorId.get(userId);
+    if (messagesByAuthor == null) {
+      return;
+    }
+    List<Message> messagesToDelete = new ArrayList<>();
+    Iterator<Message> oldestFirst = messagesByAuthor.iterator();
+    while (oldestFirst.hasNext() && messagesToDelete.size() < numOfMessages) {
+      messagesToDelete.add(oldestFirst.next());
+    }
+    for (Message message : messagesToDelete) {
+      if (unindex(message)) {
+        userStatsStore.removeMessage(message);
+        conversationChanged(message.getConversationId());
+      }
+    }
+  }
+
+  /**
+   * Returns the version of a Conversation. It changes whenever a Message is added to or deleted
+   * from the Conversation, and whenever conversationChanged() is called for it, so a page built
+   * from the Conversation can be reused for as long as its version stays the same.
+   */
+  public long getConversationVersion(UUID conversationId) {
+    return conversationVersions.getOrDefault(conversationId, baseVersion);
+  }
+
+  /**
+   * Gives a Conversation a new version. Callers that change what the chat page of a Conversation
+   * shows other than its Messages, such as its participants, must call this after the change.
+   */
+  public void conversationChanged(UUID conversationId) {
+    conversationVersions.merge(conversationId, VersionClock.next(), Math::max);
   }
 
-  /** Access the current set of Messages within the given Conversation. */
+  /** Access the current set of Messages within the given Conversation, oldest first. */
   public List<Message> getMessagesInConversation(UUID conversationId) {
+    NavigableSet<Message> conversationMessages = messagesByConversationId.get(conversationId);
+    if (conversationMessages == null) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(conversationMessages);
+  }
+
+  /**
+   * Access one page of the Messages within the given Conversation. The page holds up to limit of
+   * the newest Messages sent strictly before the given instant, oldest first. Messages that share
+   * a creation time are never split across pages, so a page can be slightly larger than limit.
+   * If the page runs past the oldest Message in memory and older history was left in Datastore,
+   * the next batch of history is loaded first.
+   *
+   * @param before only Messages created before this instant are returned, or null for the newest
+   * @param limit the number of Messages to return
+   */
+  public MessagePage getMessagesInConversation(UUID conversationId, Instant before, int limit) {
+    MessagePage page = readPage(conversationId, before, limit);
+    if (page.hasOlderMessages() || !conversationsWithUnloadedHistory.contains(conversationId)) {
+      return page;
+    }
+    loadOlderMessages(conversationId, limit);
+    return readPage(conversationId, before, limit);
+  }
 
-    List<Message> messagesInConversation = new ArrayList<>();
+  /** Reads one page of a Conversation from the in-memory log only. */
+  private MessagePage readPage(UUID conversationId, Instant before, int limit) {
+    NavigableSet<Message> conversationMessages = messagesByConversationId.get(conversationId);
+    if (conversationMessages == null) {
+      return new MessagePage(new ArrayList<>(), null);
+    }
 
-    for (Message message : messages) {
-      if (message.getConversationId().equals(conversationId)) {
-        messagesInConversation.add(message);
+    NavigableSet<Message> candidates = conversationMessages;
+    if (before != null) {
+      Message cursor = new Message(FIRST_ID, conversationId, null, null, before);
+      candidates = conversationMessages.headSet(cursor, false);
+    }
+
+    LinkedList<Message> page = new LinkedList<>();
+    Iterator<Message> newestFirst = candidates.descendingIterator();
+    while (newestFirst.hasNext()) {
+      Message message = newestFirst.next();
+      if (!page.isEmpty() && page.size() >= limit
+          && !message.getCreationTime().equals(page.getFirst().getCreationTime())) {
+        return new MessagePage(new ArrayList<>(page), page.getFirst().getCreationTime());
       }
+      page.addFirst(message);
     }
+    return new MessagePage(new ArrayList<>(page), null);
+  }
 
-    return messagesInConversation;
+  /**
+   * Access the Messages of a Conversation that were sent after the given Message, oldest first.
+   * Only the Messages returned are visited, so a poll that finds nothing new costs one lookup.
+   *
+   * @param messageId the newest Message the caller already has
+   * @param limit the largest number of Messages to return
+   * @return null if the given Message is not in this Conversation's in-memory log
+   */
+  public List<Message> getMessagesAfter(UUID conversationId, UUID messageId, int limit) {
+    Message cursor = messages.get(messageId);
+    if (cursor == null || !cursor.getConversationId().equals(conversationId)) {
+      return null;
+    }
+    return readAfter(conversationId, cursor, limit);
   }
 
-  /** Access the current set of Messages sent by a specific user. */
+  /**
+   * Access the Messages of a Conversation that were sent strictly after the given instant, oldest
+   * first.
+   *
+   * @param limit the largest number of Messages to return
+   */
+  public List<Message> getMessagesSince(UUID conversationId, Instant since, int limit) {
+    return readAfter(
+        conversationId, new Message(LAST_ID, conversationId, null, null, since), limit);
+  }
+
+  /** Returns the newest Message of a Conversation, or null if it has none in memory. */
+  public Message getNewestMessageInConversation(UUID conversationId) {
+    NavigableSet<Message> conversationMessages = messagesByConversationId.get(conversationId);
+    if (conversationMessages == null) {
+      return null;
+    }
+    try {
+      return conversationMessages.last();
+    } catch (NoSuchElementException e) {
+      // The last Message was removed after the log was looked up.
+      return null;
+    }
+  }
+
+  /** Reads the Messages that sort after the cursor from a Conversation's in-memory log. */
+  private List<Message> readAfter(UUID conversationId, Message cursor, int limit) {
+    NavigableSet<Message> conversationMessages = messagesByConversationId.get(conversationId);
+    List<Message> newerMessages = new ArrayList<>();
+    if (conversationMessages == null) {
+      return newerMessages;
+    }
+    Iterator<Message> oldestFirst = conversationMessages.tailSet(cursor, false).iterator();
+    while (oldestFirst.hasNext() && newerMessages.size() < limit) {
+      newerMessages.add(oldestFirst.next());
+    }
+    return newerMessages;
+  }
+
+  /** Access the current set of Messages sent by a specific user, oldest first. */
   public List<Message> getMessagesByAuthor(UUID authorId) {
 
-    if (!messagesByAuthorId.containsKey(authorId)) {
+    NavigableSet<Message> authorMessages = messagesByAuthorId.get(authorId);
+    if (authorMessages == null) {
       return  new ArrayList<>();
     }
-    List<Message> authorMessages = messagesByAuthorId.get(authorId);
-    //Sorts using the overriden compareTo method on the Message class
-    Collections.sort(authorMessages);
+    return new ArrayList<>(authorMessages);
+  }
+
+  /**
+   * Access the newest Messages sent by a specific user, oldest first.
+   *
+   * @param limit the largest number of Messages to return
+   */
+  public List<Message> getMessagesByAuthor(UUID authorId, int limit) {
 
-    return authorMessages;
+    NavigableSet<Message> authorMessages = messagesByAuthorId.get(authorId);
+    LinkedList<Message> newestMessages = new LinkedList<>();
+    if (authorMessages == null) {
+      return newestMessages;
+    }
+    Iterator<Message> newestFirst = authorMessages.descendingIterator();
+    while (newestFirst.hasNext() && newestMessages.size() < limit) {
+      newestMessages.addFirst(newestFirst.next());
+    }
+    return newestMessages;
   }
 
-  /** Sets the List of Messages stored by this MessageStore. */
+  /**
+   * Sets the List of Messages stored by this MessageStore. The indexes are built aside and then
+   * published, so concurrent readers see either the old or the new set of Messages.
+   */
   public void setMessages(List<Message> messages) {
-    this.messages = messages;
+    ConcurrentMap<UUID, Message> newMessages = new ConcurrentHashMap<>();
+    ConcurrentMap<UUID, NavigableSet<Message>> newMessagesByAuthorId = new ConcurrentHashMap<>();
+    ConcurrentMap<UUID, NavigableSet<Message>> newMessagesByConversationId =
+        new ConcurrentHashMap<>();
     for (Message message : messages) {
-      messagesByAuthorId.computeIfAbsent(
-        message.getAuthorId(), k -> new ArrayList()).add(message);
+      index(message, newMessages, newMessagesByAuthorId, newMessagesByConversationId);
     }
+    this.messages = newMessages;
+    this.messagesByAuthorId = newMessagesByAuthorId;
+    this.messagesByConversationId = newMessagesByConversationId;
+    this.conversationsWithUnloadedHistory = ConcurrentHashMap.newKeySet();
+    baseVersion = VersionClock.next();
+    conversationVersions.clear();
+    userStatsStore.setMessages(newMessages.values());
   }
 
-  public List<Message> getMessagesByUserId(UUID author) {
-    List<Message> ans = new ArrayList<Message>();
-    for(Message m : messages){
-      if(m.getAuthorId().equals(author)){
-        ans.add(m);
+  /**
+   * Sets the Messages stored by this MessageStore when only the newest Messages of each
+   * Conversation were loaded. Older history of the given Conversations is fetched from Datastore
+   * when a reader pages past it. Until then, author lists and user stats only cover the Messages
+   * in memory.
+   *
+   * @param messages the newest Messages of each Conversation
+   * @param conversationsWithUnloadedHistory the Conversations that may have older Messages
+   */
+  public void setRecentMessages(
+      List<Message> messages, Collection<UUID> conversationsWithUnloadedHistory) {
+    setMessages(messages);
+    Set<UUID> unloaded = ConcurrentHashMap.newKeySet();
+    unloaded.addAll(conversationsWithUnloadedHistory);
+    this.conversationsWithUnloadedHistory = unloaded;
+  }
+
+  /**
+   * Loads the batch of Messages just older than the oldest in-memory Message of a Conversation.
+   * Other Messages may share the oldest one's creation time, so the batch is read from that time
+   * inclusive, with room for the in-memory Messages of that time, which are skipped. Once
+   * Datastore returns a short batch, the Conversation is fully loaded.
+   */
+  private void loadOlderMessages(UUID conversationId, int limit) {
+    NavigableSet<Message> conversationMessages = messagesByConversationId.get(conversationId);
+    Instant oldest = null;
+    int loadedAtOldest = 0;
+    if (conversationMessages != null && !conversationMessages.isEmpty()) {
+      oldest = conversationMessages.first().getCreationTime();
+      for (Message message : conversationMessages) {
+        if (!message.getCreationTime().equals(oldest)) {
+          break;
+        }
+        loadedAtOldest++;
+      }
+    }
+    int batchSize = limit + loadedAtOldest;
+    try {
+      List<Message> olderMessages =
+          persistentStorageAgent.loadMessagesAtOrBefore(conversationId, oldest, batchSize);
+      for (Message message : olderMessages) {
+        if (index(message)) {
+          userStatsStore.recordMessage(message);
+        }
+      }
+      if (olderMessages.size() < batchSize) {
+        conversationsWithUnloadedHistory.remove(conversationId);
       }
+    } catch (PersistentDataStoreException e) {
+      System.err.println("ERROR: Unable to load older messages of " + conversationId);
     }
-    return ans;
+  }
+
+  public List<Message> getMessagesByUserId(UUID author) {
+    return getMessagesByAuthor(author);
   }
 
   /** returns number of messages */
   public int getNumMessages() {
     return messages.size();
   }
+
+  /**
+   * Adds a Message to every in-memory index.
+   *
+   * @return false if the Message was already known
+   */
+  private boolean index(Message message) {
+    return index(message, messages, messagesByAuthorId, messagesByConversationId);
+  }
+
+  /**
+   * Adds a Message to the given indexes. Each per-key collection is updated inside compute() so it
+   * cannot be dropped by a concurrent unindex() that finds it empty.
+   */
+  private static boolean index(
+      Message message,
+      ConcurrentMap<UUID, Message> messages,
+      ConcurrentMap<UUID, NavigableSet<Message>> messagesByAuthorId,
+      ConcurrentMap<UUID, NavigableSet<Message>> messagesByConversationId) {
+    if (messages.putIfAbsent(message.getId(), message) != null) {
+      return false;
+    }
+    addToLog(messagesByAuthorId, message.getAuthorId(), message);
+    addToLog(messagesByConversationId, message.getConversationId(), message);
+    return true;
+  }
+
+  /** Adds a Message to the time-ordered log stored under the given key. */
+  private static void addToLog(
+      ConcurrentMap<UUID, NavigableSet<Message>> logs, UUID key, Message message) {
+    logs.compute(key, (k, log) -> {
+      if (log == null) {
+        log = new ConcurrentSkipListSet<>(CREATION_ORDER);
+      }
+      log.add(message);
+      return log;
+    });
+  }
+
+  /** Removes a Message from the time-ordered log stored under the given key. */
+  private static void removeFromLog(
+      ConcurrentMap<UUID, NavigableSet<Message>> logs, UUID key, Message message) {
+    logs.computeIfPresent(key, (k, log) -> {
+      log.remove(message);
+      return log.isEmpty() ? null : log;
+    });
+  }
+
+  /**
+   * Removes a Message from every in-memory index.
+   *
+   * @return false if the Message was not known
+   */
+  private boolean unindex(Message message) {
+    if (messages.remove(message.getId()) == null) {
+      return false;
+    }
+    removeFromLog(messagesByAuthorId, message.getAuthorId(), message);
+    removeFromLog(messagesByConversationId, message.getConversationId(), message);
+    return true;
+  }
 }
@@ -0,0 +1,254 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Store class that keeps named counters, timings and value histograms for this server instance in
+ * memory. Each metric is created the first time it's used. Updates don't take a lock, so recording
+ * a metric on a request path costs about as much as incrementing a field. It's a singleton so all
+ * servlet classes can access the same instance.
+ */
+public class MetricsStore {
+
+  /** Singleton instance of MetricsStore. */
+  private static volatile MetricsStore instance;
+
+  /**
+   * Returns the singleton instance of MetricsStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static MetricsStore getInstance() {
+    if (instance == null) {
+      synchronized (MetricsStore.class) {
+        if (instance == null) {
+          instance = new MetricsStore();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /** Instance getter function used for testing. */
+  public static MetricsStore getTestInstance() {
+    return new MetricsStore();
+  }
+
+  private final ConcurrentMap<String, LongAdder> counters;
+  private final ConcurrentMap<String, Timer> timers;
+  private final ConcurrentMap<String, Histogram> histograms;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private MetricsStore() {
+    counters = new ConcurrentHashMap<>();
+    timers = new ConcurrentHashMap<>();
+    histograms = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the name of a metric with labels attached, such as {@code requests{route="/chat/*"}}.
+   * Metrics that share a base name but have different labels are kept apart, and the metrics page
+   * reports them as one metric with several label sets.
+   *
+   * @param labels label names and values, alternating
+   */
+  public static String withLabels(String name, String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Every label needs a value.");
+    }
+    StringBuilder labeled = new StringBuilder(name).append('{');
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        labeled.append(',');
+      }
+      labeled.append(labels[i]).append("=\"");
+      for (char c : labels[i + 1].toCharArray()) {
+        if (c == '"' || c == '\\') {
+          labeled.append('\\');
+        }
+        labeled.append(c == '\n' ? ' ' : c);
+      }
+      labeled.append('"');
+    }
+    return labeled.append('}').toString();
+  }
+
+  /** Adds one to the named counter. */
+  public void increment(String name) {
+    add(name, 1);
+  }
+
+  /** Adds delta to the named counter. */
+  public void add(String name, long delta) {
+    counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+  }
+
+  /** Returns the value of the named counter, or 0 if it has never been updated. */
+  public long getCount(String name) {
+    LongAdder counter = counters.get(name);
+    return counter == null ? 0 : counter.sum();
+  }
+
+  /** Records one timing of the named operation. */
+  public void recordTime(String name, long millis) {
+    timers.computeIfAbsent(name, key -> new Timer()).record(millis);
+  }
+
+  /**
+   * Returns the timings of the named operation.
+   *
+   * @return null if the operation has never been timed
+   */
+  public Timer getTimer(String name) {
+    return timers.get(name);
+  }
+
+  /** Records one value, such as a size, in the named histogram. */
+  public void recordValue(String name, long value) {
+    histograms.computeIfAbsent(name, key -> new Histogram()).record(value);
+  }
+
+  /**
+   * Returns the values recorded in the named histogram.
+   *
+   * @return null if no value has been recorded
+   */
+  public Histogram getHistogram(String name) {
+    return histograms.get(name);
+  }
+
+  /** Returns the current value of every counter, sorted by name. */
+  public Map<String, Long> getCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+      counts.put(counter.getKey(), counter.getValue().sum());
+    }
+    return counts;
+  }
+
+  /** Returns every timer, sorted by name. */
+  public Map<String, Timer> getTimers() {
+    return new TreeMap<>(timers);
+  }
+
+  /** Returns every histogram, sorted by name. */
+  public Map<String, Histogram> getHistograms() {
+    return new TreeMap<>(histograms);
+  }
+
+  /**
+   * The distribution of the values recorded under one name. Values are counted in buckets that
+   * are exact below 16 and an eighth of a power of two wide above that, so a percentile is never
+   * more than 12.5% above the true value. Recording is lock-free and takes constant space.
+   */
+  public static class Histogram {
+    private static final int EXACT_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = EXACT_BUCKETS + (64 - 4) * SUB_BUCKETS;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    void record(long value) {
+      value = Math.max(0, value);
+      count.increment();
+      total.add(value);
+      max.accumulate(value);
+      buckets.incrementAndGet(bucketOf(value));
+    }
+
+    /** Returns the number of values recorded. */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /** Returns the sum of all values. */
+    public long getTotal() {
+      return total.sum();
+    }
+
+    /** Returns the largest value. */
+    public long getMax() {
+      return max.get();
+    }
+
+    /**
+     * Returns the value that the given percentage of recorded values are at or below, rounded up
+     * to the top of its bucket.
+     *
+     * @param percentile between 0 and 100
+     * @return 0 if no value has been recorded
+     */
+    public long getPercentile(double percentile) {
+      long[] counts = new long[BUCKETS];
+      long recorded = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = buckets.get(i);
+        recorded += counts[i];
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(upperBound(i), getMax());
+        }
+      }
+      return 0;
+    }
+
+    private static int bucketOf(long value) {
+      if (value < EXACT_BUCKETS) {
+        return (int) value;
+      }
+      int power = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int) (value >>> (power - 3)) & (SUB_BUCKETS - 1);
+      return EXACT_BUCKETS + (power - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+      if (bucket < EXACT_BUCKETS) {
+        return bucket;
+      }
+      int power = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + 4;
+      int subBucket = (bucket - EXACT_BUCKETS) % SUB_BUCKETS;
+      long next = (SUB_BUCKETS + subBucket + 1L) << (power - 3);
+      return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+  }
+
+  /** The timings recorded for one operation, in milliseconds. */
+  public static final class Timer extends Histogram {
+
+    /** Returns the sum of all timings, in milliseconds. */
+    public long getTotalMillis() {
+      return getTotal();
+    }
+
+    /** Returns the longest timing, in milliseconds. */
+    public long getMaxMillis() {
+      return getMax();
+    }
+  }
+}
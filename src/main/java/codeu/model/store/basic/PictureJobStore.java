@@ -0,0 +1,131 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.PictureJob;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Store class for uploaded profile pictures that are waiting to be resized. Submitting a picture
+ * saves it through PersistentStorageAgent and adds a task to the picture-processing push queue,
+ * whose worker requests resize and store it. The queue's settings in queue.xml bound how many
+ * pictures are processed at once. Job status is kept in Datastore, so any instance can report it.
+ * It's a singleton so all servlet classes can access the same instance.
+ */
+public class PictureJobStore {
+
+  /**
+   * Largest upload accepted, in bytes. Pending uploads are kept on their job's Datastore entity,
+   * which can't be larger than 1 MB.
+   */
+  public static final int MAX_UPLOAD_BYTES = 900 * 1024;
+
+  /** Name of the push queue in queue.xml that picture tasks are added to. */
+  static final String QUEUE_NAME = "picture-processing";
+
+  /** URL the push queue sends each picture task to. */
+  public static final String TASK_URL = "/tasks/process-picture";
+
+  /** Name of the task parameter that holds the job id. */
+  public static final String JOB_PARAMETER = "job";
+
+  /** Singleton instance of PictureJobStore. */
+  private static volatile PictureJobStore instance;
+
+  /**
+   * Returns the singleton instance of PictureJobStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static PictureJobStore getInstance() {
+    if (instance == null) {
+      synchronized (PictureJobStore.class) {
+        if (instance == null) {
+          instance =
+              new PictureJobStore(
+                  PersistentStorageAgent.getInstance(), QueueFactory.getQueue(QUEUE_NAME));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply mocks for PersistentStorageAgent and Queue.
+   *
+   * @param persistentStorageAgent a mock used for testing
+   * @param queue a mock used for testing
+   */
+  public static PictureJobStore getTestInstance(
+      PersistentStorageAgent persistentStorageAgent, Queue queue) {
+    return new PictureJobStore(persistentStorageAgent, queue);
+  }
+
+  /**
+   * The PersistentStorageAgent responsible for loading jobs from and saving jobs to Datastore.
+   */
+  private PersistentStorageAgent persistentStorageAgent;
+
+  /** The push queue that hands jobs to workers. */
+  private Queue queue;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private PictureJobStore(PersistentStorageAgent persistentStorageAgent, Queue queue) {
+    this.persistentStorageAgent = persistentStorageAgent;
+    this.queue = queue;
+  }
+
+  /**
+   * Saves an uploaded picture and queues it for processing.
+   *
+   * @return the new job, which is pending
+   */
+  public PictureJob submit(UUID userId, byte[] upload) {
+    PictureJob job = new PictureJob(UUID.randomUUID(), userId, Instant.now(),
+                                    PictureJob.Status.PENDING);
+    persistentStorageAgent.writeThrough(job, upload);
+    queue.add(TaskOptions.Builder.withUrl(TASK_URL).param(JOB_PARAMETER, job.getId().toString()));
+    return job;
+  }
+
+  /**
+   * Access the PictureJob with the given id.
+   *
+   * @return null if the id does not match any job
+   */
+  public PictureJob getJob(UUID jobId) throws PersistentDataStoreException {
+    return persistentStorageAgent.loadPictureJob(jobId);
+  }
+
+  /**
+   * Access the uploaded picture of a pending PictureJob.
+   *
+   * @return an empty array if the job doesn't exist or was already processed
+   */
+  public byte[] getUpload(UUID jobId) throws PersistentDataStoreException {
+    return persistentStorageAgent.loadPictureUpload(jobId);
+  }
+
+  /** Records that a PictureJob has finished with the given status, dropping its upload. */
+  public void finish(PictureJob job, PictureJob.Status status) {
+    job.setStatus(status);
+    persistentStorageAgent.update(job);
+  }
+}
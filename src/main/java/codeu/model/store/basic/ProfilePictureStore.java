@@ -0,0 +1,163 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.PictureSize;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Store class for User profile pictures. Pictures are kept out of the User objects and are stored
+ * at every PictureSize. Each size is loaded from PersistentStorageAgent the first time it's asked
+ * for, then cached along with a digest of its bytes that serves as its HTTP entity tag. The cache
+ * holds the most recently used pictures and drops the least recently used once it is full. It's a
+ * singleton so all servlet classes can access the same instance.
+ */
+public class ProfilePictureStore {
+
+  /** Number of pictures kept in memory, counting each size of a picture separately. */
+  static final int MAX_CACHED_PICTURES = 1000;
+
+  /** Singleton instance of ProfilePictureStore. */
+  private static volatile ProfilePictureStore instance;
+
+  /**
+   * Returns the singleton instance of ProfilePictureStore that should be shared between all
+   * servlet classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static ProfilePictureStore getInstance() {
+    if (instance == null) {
+      synchronized (ProfilePictureStore.class) {
+        if (instance == null) {
+          instance = new ProfilePictureStore(PersistentStorageAgent.getInstance());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a mock for PersistentStorageAgent.
+   *
+   * @param persistentStorageAgent a mock used for testing
+   */
+  public static ProfilePictureStore getTestInstance(
+      PersistentStorageAgent persistentStorageAgent) {
+    return new ProfilePictureStore(persistentStorageAgent);
+  }
+
+  /**
+   * The PersistentStorageAgent responsible for loading pictures from and saving pictures to
+   * Datastore.
+   */
+  private PersistentStorageAgent persistentStorageAgent;
+
+  /** Recently used pictures by User id and size, least recently used first. */
+  private final Map<String, CachedPicture> pictures;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private ProfilePictureStore(PersistentStorageAgent persistentStorageAgent) {
+    this.persistentStorageAgent = persistentStorageAgent;
+    pictures =
+        Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedPicture>(16, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<String, CachedPicture> eldest) {
+                return size() > MAX_CACHED_PICTURES;
+              }
+            });
+  }
+
+  /**
+   * Returns the profile picture of the given User at the given size, loading it from Datastore if
+   * it isn't cached. Two requests that miss at the same time may both load the picture; the result
+   * is the same.
+   *
+   * @return the picture bytes, or an empty array if the User has no picture
+   */
+  public byte[] getProfilePicture(UUID userId, PictureSize size)
+      throws PersistentDataStoreException {
+    return getCachedPicture(userId, size).imageData;
+  }
+
+  /**
+   * Returns a tag that changes whenever the given User's profile picture at the given size
+   * changes, suitable for use as a strong HTTP ETag.
+   */
+  public String getProfilePictureTag(UUID userId, PictureSize size)
+      throws PersistentDataStoreException {
+    return getCachedPicture(userId, size).tag;
+  }
+
+  /** Returns true if the given User has uploaded a profile picture. */
+  public boolean hasProfilePicture(UUID userId) throws PersistentDataStoreException {
+    return getProfilePicture(userId, PictureSize.CHAT).length != 0;
+  }
+
+  /**
+   * Replaces the profile picture of the given User.
+   *
+   * @param imageDataBySize the new picture at every PictureSize
+   */
+  public void setProfilePictures(UUID userId, Map<PictureSize, byte[]> imageDataBySize) {
+    for (Map.Entry<PictureSize, byte[]> entry : imageDataBySize.entrySet()) {
+      pictures.put(cacheKey(userId, entry.getKey()), new CachedPicture(entry.getValue()));
+    }
+    persistentStorageAgent.writeProfilePictures(userId, imageDataBySize);
+  }
+
+  private CachedPicture getCachedPicture(UUID userId, PictureSize size)
+      throws PersistentDataStoreException {
+    String key = cacheKey(userId, size);
+    CachedPicture picture = pictures.get(key);
+    if (picture == null) {
+      picture = new CachedPicture(persistentStorageAgent.loadProfilePicture(userId, size));
+      pictures.put(key, picture);
+    }
+    return picture;
+  }
+
+  private static String cacheKey(UUID userId, PictureSize size) {
+    return userId + "/" + size.getPixels();
+  }
+
+  /** A picture together with its tag, which is computed once when the picture is cached. */
+  private static final class CachedPicture {
+    private final byte[] imageData;
+    private final String tag;
+
+    private CachedPicture(byte[] imageData) {
+      this.imageData = imageData;
+      this.tag = digest(imageData);
+    }
+
+    private static String digest(byte[] imageData) {
+      try {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(imageData);
+        return String.format("%064x", new BigInteger(1, hash));
+      } catch (NoSuchAlgorithmException e) {
+        // Every Java platform is required to support SHA-256.
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
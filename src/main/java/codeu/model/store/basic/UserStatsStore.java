@@ -0,0 +1,189 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * Store class that keeps per-User message and word counts in memory, along with rankings of the
+ * Users by each count. MessageStore updates it as Messages are added and deleted, so the
+ * leaderboard and admin pages can read the top Users without scanning every Message. It's a
+ * singleton so all servlet classes can access the same instance.
+ */
+public class UserStatsStore {
+
+  /** Singleton instance of UserStatsStore. */
+  private static volatile UserStatsStore instance;
+
+  /**
+   * Returns the singleton instance of UserStatsStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static UserStatsStore getInstance() {
+    if (instance == null) {
+      synchronized (UserStatsStore.class) {
+        if (instance == null) {
+          instance = new UserStatsStore();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /** Instance getter function used for testing. */
+  public static UserStatsStore getTestInstance() {
+    return new UserStatsStore();
+  }
+
+  /** Orders rankings from the highest count to the lowest, breaking ties by User id. */
+  private static final Comparator<Ranking> HIGHEST_FIRST =
+      Comparator.comparingLong((Ranking ranking) -> ranking.count)
+          .reversed()
+          .thenComparing(ranking -> ranking.userId);
+
+  /** The message count of each User who has sent at least one Message. */
+  private final Map<UUID, Long> messageCounts;
+
+  /** The word count of each User who has sent at least one Message. */
+  private final Map<UUID, Long> wordCounts;
+
+  /** Users ordered by message count, highest first. */
+  private final NavigableSet<Ranking> messageRankings;
+
+  /** Users ordered by word count, highest first. */
+  private final NavigableSet<Ranking> wordRankings;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private UserStatsStore() {
+    messageCounts = new ConcurrentHashMap<>();
+    wordCounts = new ConcurrentHashMap<>();
+    messageRankings = new ConcurrentSkipListSet<>(HIGHEST_FIRST);
+    wordRankings = new ConcurrentSkipListSet<>(HIGHEST_FIRST);
+  }
+
+  /** Counts a Message that was added to the application. */
+  public synchronized void recordMessage(Message message) {
+    adjust(messageCounts, messageRankings, message.getAuthorId(), 1);
+    adjust(wordCounts, wordRankings, message.getAuthorId(), message.getWords());
+  }
+
+  /** Stops counting a Message that was deleted from the application. */
+  public synchronized void removeMessage(Message message) {
+    adjust(messageCounts, messageRankings, message.getAuthorId(), -1);
+    adjust(wordCounts, wordRankings, message.getAuthorId(), -message.getWords());
+  }
+
+  /** Replaces all counts with the counts of the given Messages. */
+  public synchronized void setMessages(Iterable<Message> messages) {
+    messageCounts.clear();
+    wordCounts.clear();
+    messageRankings.clear();
+    wordRankings.clear();
+    for (Message message : messages) {
+      recordMessage(message);
+    }
+  }
+
+  /** Returns the number of Messages sent by the given User. */
+  public long getMessageCount(UUID userId) {
+    return messageCounts.getOrDefault(userId, 0L);
+  }
+
+  /** Returns the number of words sent by the given User. */
+  public long getWordCount(UUID userId) {
+    return wordCounts.getOrDefault(userId, 0L);
+  }
+
+  /** Returns the ids of up to k Users who have sent the most Messages, most active first. */
+  public List<UUID> getMostActiveUserIds(int k) {
+    return topUserIds(messageRankings, k, userId -> true);
+  }
+
+  /**
+   * Returns the ids of up to k Users who have sent the most Messages, most active first, counting
+   * only the Users that include accepts. Counts are kept for deleted Users, whose Messages remain,
+   * so callers use this to leave them out without getting fewer than k ids.
+   */
+  public List<UUID> getMostActiveUserIds(int k, Predicate<UUID> include) {
+    return topUserIds(messageRankings, k, include);
+  }
+
+  /** Returns the ids of up to k Users who have sent the most words, wordiest first. */
+  public List<UUID> getWordiestUserIds(int k) {
+    return topUserIds(wordRankings, k, userId -> true);
+  }
+
+  /**
+   * Returns the ids of up to k Users who have sent the most words, wordiest first, counting only
+   * the Users that include accepts.
+   */
+  public List<UUID> getWordiestUserIds(int k, Predicate<UUID> include) {
+    return topUserIds(wordRankings, k, include);
+  }
+
+  /** Moves a User's count by delta, keeping the matching ranking in step. */
+  private static void adjust(
+      Map<UUID, Long> counts, NavigableSet<Ranking> rankings, UUID userId, long delta) {
+    long oldCount = counts.getOrDefault(userId, 0L);
+    long newCount = Math.max(0, oldCount + delta);
+    if (oldCount > 0) {
+      rankings.remove(new Ranking(userId, oldCount));
+    }
+    if (newCount > 0) {
+      counts.put(userId, newCount);
+      rankings.add(new Ranking(userId, newCount));
+    } else {
+      counts.remove(userId);
+    }
+  }
+
+  /**
+   * Reads the first k distinct Users of a ranking that include accepts. Readers don't take the
+   * lock, so while a count is moving a User can briefly appear twice; the duplicate is skipped.
+   */
+  private static List<UUID> topUserIds(
+      NavigableSet<Ranking> rankings, int k, Predicate<UUID> include) {
+    List<UUID> userIds = new ArrayList<>();
+    for (Ranking ranking : rankings) {
+      if (userIds.size() >= k) {
+        break;
+      }
+      if (!userIds.contains(ranking.userId) && include.test(ranking.userId)) {
+        userIds.add(ranking.userId);
+      }
+    }
+    return userIds;
+  }
+
+  /** A User's position in a ranking. */
+  private static final class Ranking {
+    private final UUID userId;
+    private final long count;
+
+    private Ranking(UUID userId, long count) {
+      this.userId = userId;
+      this.count = count;
+    }
+  }
+}
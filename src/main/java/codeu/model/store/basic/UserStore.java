@@ -18,18 +18,25 @@ import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import codeu.model.store.persistence.PersistentDataStoreException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
- * instance.
+ * instance. Users are held in a copy-on-write list, so readers never block and never see a
+ * partially applied change.
  */
 public class UserStore {
 
   /** Singleton instance of UserStore. */
-  private static UserStore instance;
+  private static volatile UserStore instance;
 
   /**
    * Returns the singleton instance of UserStore that should be shared between all servlet classes.
@@ -37,7 +44,11 @@ public class UserStore {
    */
   public static UserStore getInstance() {
     if (instance == null) {
-      instance = new UserStore(PersistentStorageAgent.getInstance());
+      synchronized (UserStore.class) {
+        if (instance == null) {
+          instance = new UserStore(PersistentStorageAgent.getInstance());
+        }
+      }
     }
     return instance;
   }
@@ -51,23 +62,44 @@ public class UserStore {
     return new UserStore(persistentStorageAgent);
   }
 
+  /** Orders Users by creation time, breaking ties by id. */
+  private static final Comparator<User> CREATION_ORDER =
+      Comparator.comparing(User::getCreationTime).thenComparing(User::getId);
+
   /**
    * The PersistentStorageAgent responsible for loading Users from and saving Users to Datastore.
    */
   private PersistentStorageAgent persistentStorageAgent;
 
   /** The in-memory list of Users. */
-  private List<User> users;
+  private volatile List<User> users;
+
+  /** The in-memory Users, indexed by username. */
+  private volatile Map<String, User> nameToUser;
+
+  /** The in-memory Users, indexed by id. */
+  private volatile Map<UUID, User> idToUser;
+
+  /** The in-memory Users, oldest first, so the newest can be read without sorting. */
+  private volatile NavigableSet<User> usersByCreation;
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private UserStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    users = new ArrayList<>();
+    users = new CopyOnWriteArrayList<>();
+    nameToUser = new ConcurrentHashMap<>();
+    idToUser = new ConcurrentHashMap<>();
+    usersByCreation = new ConcurrentSkipListSet<>(CREATION_ORDER);
   }
 
   /** Load a set of randomly-generated Message objects. */
   public void loadTestData() {
-    users.addAll(DefaultDataStore.getInstance().getAllUsers());
+    for (User user : DefaultDataStore.getInstance().getAllUsers()) {
+      users.add(user);
+      nameToUser.put(user.getName(), user);
+      idToUser.put(user.getId(), user);
+      usersByCreation.add(user);
+    }
   }
 
   /**
@@ -76,13 +108,10 @@ public class UserStore {
    * @return null if username does not match any existing User.
    */
   public User getUser(String username) {
-    // This approach will be pretty slow if we have many users.
-    for (User user : users) {
-      if (user.getName().equals(username)) {
-        return user;
-      }
+    if (username == null) {
+      return null;
     }
-    return null;
+    return nameToUser.get(username);
   }
 
   /**
@@ -91,23 +120,68 @@ public class UserStore {
    * @return null if the UUID does not match any existing User.
    */
   public User getUser(UUID id) {
-    for (User user : users) {
-      if (user.getId().equals(id)) {
-        return user;
-      }
+    if (id == null) {
+      return null;
     }
-    return null;
+    return idToUser.get(id);
   }
 
-  /** Add a new user to the current set of users known to the application. */
-  public void addUser(User user) {
+  /**
+   * Add a new user to the current set of users known to the application. The username is claimed
+   * atomically, so of two concurrent sign-ups with the same name only one is added.
+   *
+   * @return false, without adding or writing the user, if the username is already taken.
+   */
+  public boolean addUser(User user) {
+    if (nameToUser.putIfAbsent(user.getName(), user) != null) {
+      return false;
+    }
+    idToUser.put(user.getId(), user);
+    usersByCreation.add(user);
     users.add(user);
     persistentStorageAgent.writeThrough(user);
+    return true;
+  }
+
+  /**
+   * Add many new users at once, writing them to Datastore in batches. Meant for seeding large data
+   * sets. Each username is claimed atomically, as in addUser(), and users whose id is already known
+   * or whose username is taken are skipped, so seeding the same data set again adds nothing.
+   *
+   * @throws PersistentDataStoreException if the users could not be written to Datastore
+   */
+  public void addUsers(List<User> newUsers) throws PersistentDataStoreException {
+    List<User> claimedUsers = new ArrayList<>();
+    for (User user : newUsers) {
+      if (!idToUser.containsKey(user.getId())
+          && nameToUser.putIfAbsent(user.getName(), user) == null) {
+        claimedUsers.add(user);
+      }
+    }
+    if (claimedUsers.isEmpty()) {
+      return;
+    }
+    try {
+      persistentStorageAgent.writeUsers(claimedUsers);
+    } catch (PersistentDataStoreException e) {
+      for (User user : claimedUsers) {
+        nameToUser.remove(user.getName(), user);
+      }
+      throw e;
+    }
+    for (User user : claimedUsers) {
+      idToUser.put(user.getId(), user);
+      usersByCreation.add(user);
+    }
+    users.addAll(claimedUsers);
   }
 
   /** Deletes user */
   public void deleteUser(User user){
     users.remove(user);
+    nameToUser.remove(user.getName(), user);
+    idToUser.remove(user.getId(), user);
+    usersByCreation.remove(user);
     persistentStorageAgent.delete(user);
   }
 
@@ -116,14 +190,34 @@ public class UserStore {
     persistentStorageAgent.update(user);
   }
 
+  /**
+   * Update the information of a known user without waiting for the write. Meant for frequent,
+   * low-stakes changes such as counters, which are batched with other users' updates.
+   */
+  public void updateUserLater(User user) {
+    persistentStorageAgent.updateLater(user);
+  }
+
   /** Return true if the given username is known to the application. */
   public boolean isUserRegistered(String username) {
-    for (User user : users) {
-      if (user.getName().equals(username)) {
-        return true;
+    return username != null && nameToUser.containsKey(username);
+  }
+
+  /** Access the current set of Users known to the application. */
+  public List<User> getAllUsers() {
+    return users;
+  }
+
+  /** Returns up to k Users, newest first. */
+  public List<User> getNewestUsers(int k) {
+    List<User> newestUsers = new ArrayList<>();
+    for (User user : usersByCreation.descendingSet()) {
+      if (newestUsers.size() >= k) {
+        break;
       }
+      newestUsers.add(user);
     }
-    return false;
+    return newestUsers;
   }
 
   // returns number of users
@@ -136,7 +230,18 @@ public class UserStore {
    * is loaded from Datastore.
    */
   public void setUsers(List<User> users) {
-    this.users = users;
+    Map<String, User> newNameToUser = new ConcurrentHashMap<>();
+    Map<UUID, User> newIdToUser = new ConcurrentHashMap<>();
+    NavigableSet<User> newUsersByCreation = new ConcurrentSkipListSet<>(CREATION_ORDER);
+    for (User user : users) {
+      newNameToUser.put(user.getName(), user);
+      newIdToUser.put(user.getId(), user);
+      newUsersByCreation.add(user);
+    }
+    this.users = new CopyOnWriteArrayList<>(users);
+    nameToUser = newNameToUser;
+    idToUser = newIdToUser;
+    usersByCreation = newUsersByCreation;
   }
 
 
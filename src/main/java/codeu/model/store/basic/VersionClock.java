@@ -0,0 +1,37 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the versions the stores give to data that pages are rendered from. Versions are the
+ * time of the change in milliseconds, raised where needed so that each one is larger than the
+ * last. They can then serve both as an ETag, and, rounded down to the second, as a Last-Modified
+ * time. Because they start from the clock, versions handed out after a restart differ from the
+ * ones handed out before it.
+ */
+final class VersionClock {
+
+  private static final AtomicLong lastVersion = new AtomicLong();
+
+  private VersionClock() {}
+
+  /** Returns a version larger than every version returned before. */
+  static long next() {
+    long now = System.currentTimeMillis();
+    return lastVersion.updateAndGet(last -> Math.max(last + 1, now));
+  }
+}
@@ -0,0 +1,350 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Generates a synthetic data set shaped like real chat traffic, for capacity tests and benchmarks.
+ * Unlike DefaultDataStore, every choice comes from a Random seeded by the caller, so the same seed
+ * and counts always produce the same Users, Conversations and Messages, ids and timestamps
+ * included.
+ *
+ * <ul>
+ *   <li>How often a User posts and how busy a Conversation is both follow a Zipf distribution, so
+ *       a few Users and Conversations account for most Messages.
+ *   <li>Message lengths are log-normal: most Messages are a handful of words, a few are long.
+ *   <li>About GROUP_FRACTION of the Conversations are groups. Their participants are drawn by
+ *       activity, and only participants post in them.
+ * </ul>
+ *
+ * <p>Users and Conversations are built up front. Messages are produced lazily in batches by
+ * messageBatches(), so a run of millions of Messages never holds more than one batch that the
+ * caller hasn't stored yet. They are generated in blocks of BLOCK_SIZE, each from its own Random
+ * and time window, so any range of Messages can be generated without the ones before it; that
+ * lets a large data set be loaded in chunks by separate requests.
+ */
+public class WorkloadGenerator {
+
+  /** Exponent of the Zipf distributions of User and Conversation activity. */
+  static final double ZIPF_EXPONENT = 1.1;
+
+  /** Share of Conversations that are groups. */
+  static final double GROUP_FRACTION = 0.3;
+
+  /** Median number of words in a Message. */
+  static final int MEDIAN_MESSAGE_WORDS = 8;
+
+  /** Longest Message generated, in words. */
+  static final int MAX_MESSAGE_WORDS = 300;
+
+  /** Median number of participants in a group. */
+  static final int MEDIAN_GROUP_SIZE = 6;
+
+  /** Mean time between two Messages. */
+  static final long MEAN_MESSAGE_GAP_MILLIS = 1000;
+
+  /** Number of Messages generated from one Random. */
+  static final int BLOCK_SIZE = 1000;
+
+  /** When the generated history starts. Fixed so that generated timestamps are reproducible. */
+  static final Instant START = Instant.parse("2018-01-01T00:00:00Z");
+
+  /** Password of every generated User. */
+  private static final String PASSWORD = "password";
+
+  /** Words Messages are made of, most common first. */
+  private static final String[] WORDS = {
+    "the", "I", "to", "you", "a", "and", "it", "is", "that", "of", "in", "we", "for", "this", "on",
+    "me", "have", "be", "so", "what", "do", "can", "not", "just", "with", "are", "was", "but", "my",
+    "lol", "yes", "no", "ok", "at", "will", "get", "about", "think", "if", "how", "know", "like",
+    "there", "all", "one", "time", "now", "good", "thanks", "meeting", "today", "tomorrow",
+    "code", "review", "test", "build", "deploy", "bug", "fix", "lunch", "weekend", "project",
+    "idea", "question", "later", "sure", "great", "maybe", "link", "doc", "team", "chat"
+  };
+
+  private final long seed;
+
+  /**
+   * Starts every generated username and title, so data sets with different seeds don't compete for
+   * the same names.
+   */
+  private final String namePrefix;
+  private final Random random;
+  private final int messageCount;
+  private final List<User> users;
+  private final List<Conversation> conversations;
+
+  /** Each Conversation's participants, most active first; empty for Conversations open to all. */
+  private final List<User[]> participants;
+
+  /** How often each participant of a Conversation posts in it; null if it's open to all. */
+  private final List<ZipfDistribution> participantActivity;
+
+  private final ZipfDistribution userActivity;
+  private final ZipfDistribution conversationActivity;
+  private final ZipfDistribution wordFrequency;
+
+  /**
+   * Builds the Users and Conversations of a data set. Messages are generated later, by
+   * messageBatches().
+   *
+   * @param seed the seed every random choice is derived from
+   * @param userCount number of Users, at least 1
+   * @param conversationCount number of Conversations; at least 1 if messageCount is positive
+   * @param messageCount number of Messages
+   */
+  public WorkloadGenerator(long seed, int userCount, int conversationCount, int messageCount) {
+    if (userCount < 1 || conversationCount < 0 || messageCount < 0) {
+      throw new IllegalArgumentException("At least one user is needed to own generated data.");
+    }
+    if (conversationCount == 0 && messageCount > 0) {
+      throw new IllegalArgumentException("Messages need at least one conversation.");
+    }
+    this.seed = seed;
+    this.namePrefix = "s" + Long.toUnsignedString(seed, 36) + "_";
+    this.random = new Random(seed);
+    this.messageCount = messageCount;
+    this.userActivity = new ZipfDistribution(userCount, ZIPF_EXPONENT);
+    this.conversationActivity =
+        conversationCount == 0 ? null : new ZipfDistribution(conversationCount, ZIPF_EXPONENT);
+    this.wordFrequency = new ZipfDistribution(WORDS.length, ZIPF_EXPONENT);
+    this.users = generateUsers(userCount);
+    this.conversations = new ArrayList<>(conversationCount);
+    this.participants = new ArrayList<>(conversationCount);
+    this.participantActivity = new ArrayList<>(conversationCount);
+    generateConversations(conversationCount);
+  }
+
+  /**
+   * Returns the generated Users, ordered by activity: the User at index 0 posts the most. They all
+   * share one password hash, since BCrypt is slow by design.
+   */
+  public List<User> getUsers() {
+    return users;
+  }
+
+  /**
+   * Returns the generated Conversations, ordered by activity: the Conversation at index 0 gets the
+   * most Messages.
+   */
+  public List<Conversation> getConversations() {
+    return conversations;
+  }
+
+  /**
+   * Returns the Messages of the data set in batches of up to batchSize, oldest first. Each batch is
+   * generated when it's requested.
+   */
+  public Iterator<List<Message>> messageBatches(int batchSize) {
+    return messageBatches(batchSize, 0, messageCount);
+  }
+
+  /**
+   * Returns the Messages from index from up to but not including index to, in batches of up to
+   * batchSize, oldest first. They are the same Messages messageBatches(batchSize) returns at those
+   * indexes, whatever the batch size.
+   */
+  public Iterator<List<Message>> messageBatches(int batchSize, int from, int to) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive.");
+    }
+    if (from < 0 || from > to || to > messageCount) {
+      throw new IllegalArgumentException("Message range is outside the data set.");
+    }
+    return new Iterator<List<Message>>() {
+      private int next = from;
+      private int blockIndex = -1;
+      private List<Message> block;
+
+      @Override
+      public boolean hasNext() {
+        return next < to;
+      }
+
+      @Override
+      public List<Message> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int size = Math.min(batchSize, to - next);
+        List<Message> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++, next++) {
+          if (next / BLOCK_SIZE != blockIndex) {
+            blockIndex = next / BLOCK_SIZE;
+            block = generateBlock(blockIndex);
+          }
+          batch.add(block.get(next % BLOCK_SIZE));
+        }
+        return batch;
+      }
+    };
+  }
+
+  private List<User> generateUsers(int count) {
+    String passwordHash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt());
+    List<User> users = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      users.add(new User(nextId(random), namePrefix + "user_" + i, passwordHash, START, false));
+    }
+    return users;
+  }
+
+  private void generateConversations(int count) {
+    for (int i = 0; i < count; i++) {
+      Instant creation = START.plusSeconds(i);
+      if (random.nextDouble() < GROUP_FRACTION) {
+        User[] members = pickMembers();
+        String title = namePrefix + "group_" + i;
+        Conversation group =
+            new Conversation(nextId(random), members[0].getId(), title, creation, true);
+        for (User member : members) {
+          group.addParticipant(member.getId());
+          member.addConversation(group.getId());
+        }
+        conversations.add(group);
+        participants.add(members);
+        participantActivity.add(new ZipfDistribution(members.length, ZIPF_EXPONENT));
+      } else {
+        User owner = users.get(userActivity.sample(random));
+        String title = namePrefix + "conversation_" + i;
+        conversations.add(new Conversation(nextId(random), owner.getId(), title, creation));
+        participants.add(new User[0]);
+        participantActivity.add(null);
+      }
+    }
+  }
+
+  /**
+   * Picks the distinct members of a group, drawn by activity so busy Users are in more groups.
+   * The first member is the owner.
+   */
+  private User[] pickMembers() {
+    int size =
+        (int)
+            Math.min(logNormal(random, MEDIAN_GROUP_SIZE, 0.8), Math.max(1, users.size() / 2));
+    size = Math.max(size, Math.min(3, users.size()));
+    Set<User> members = new LinkedHashSet<>();
+    // Zipf draws repeat the busiest Users often; fall back to uniform draws if they stall.
+    for (int attempts = 0; members.size() < size && attempts < size * 20; attempts++) {
+      members.add(users.get(userActivity.sample(random)));
+    }
+    while (members.size() < size) {
+      members.add(users.get(random.nextInt(users.size())));
+    }
+    return members.toArray(new User[0]);
+  }
+
+  /**
+   * Generates the Messages of one block. A block has its own Random, derived from the seed and the
+   * block's index, and its own time window of BLOCK_SIZE mean gaps. Arrival times are uniform and
+   * sorted within the window, which is how independent arrivals are spread given their count.
+   */
+  private List<Message> generateBlock(int index) {
+    Random random = new Random(seed ^ ((index + 1) * 0x9E3779B97F4A7C15L));
+    int size = Math.min(BLOCK_SIZE, messageCount - index * BLOCK_SIZE);
+    long windowMillis = size * MEAN_MESSAGE_GAP_MILLIS;
+    Instant windowStart =
+        START
+            .plusSeconds(conversations.size())
+            .plusMillis((long) index * BLOCK_SIZE * MEAN_MESSAGE_GAP_MILLIS);
+    long[] offsets = new long[size];
+    for (int i = 0; i < size; i++) {
+      offsets[i] = (long) (random.nextDouble() * windowMillis);
+    }
+    Arrays.sort(offsets);
+    List<Message> block = new ArrayList<>(size);
+    for (long offset : offsets) {
+      block.add(generateMessage(random, windowStart.plusMillis(offset)));
+    }
+    return block;
+  }
+
+  private Message generateMessage(Random random, Instant creation) {
+    int conversationIndex = conversationActivity.sample(random);
+    Conversation conversation = conversations.get(conversationIndex);
+    User[] members = participants.get(conversationIndex);
+    User author =
+        members.length == 0
+            ? users.get(userActivity.sample(random))
+            : members[participantActivity.get(conversationIndex).sample(random)];
+    return new Message(
+        nextId(random), conversation.getId(), author.getId(), generateContent(random), creation);
+  }
+
+  private String generateContent(Random random) {
+    double length = logNormal(random, MEDIAN_MESSAGE_WORDS, 0.9);
+    int words = (int) Math.min(Math.max(1, length), MAX_MESSAGE_WORDS);
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        content.append(' ');
+      }
+      content.append(WORDS[wordFrequency.sample(random)]);
+    }
+    return content.toString();
+  }
+
+  /** Draws from a log-normal distribution with the given median. */
+  private static double logNormal(Random random, double median, double sigma) {
+    return Math.round(Math.exp(Math.log(median) + sigma * random.nextGaussian()));
+  }
+
+  /** Builds a random (version 4) UUID from a seeded Random. */
+  private static UUID nextId(Random random) {
+    long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+    long leastSigBits = (random.nextLong() & ~(0xCL << 60)) | (0x8L << 60);
+    return new UUID(mostSigBits, leastSigBits);
+  }
+
+  /**
+   * Samples ranks 0 to n - 1, where rank k is drawn with probability proportional to
+   * 1 / (k + 1)^exponent. Sampling is a binary search of the cumulative distribution.
+   */
+  static final class ZipfDistribution {
+    private final double[] cumulative;
+
+    ZipfDistribution(int n, double exponent) {
+      cumulative = new double[n];
+      double total = 0;
+      for (int k = 0; k < n; k++) {
+        total += 1 / Math.pow(k + 1, exponent);
+        cumulative[k] = total;
+      }
+      for (int k = 0; k < n; k++) {
+        cumulative[k] /= total;
+      }
+    }
+
+    int sample(Random random) {
+      int index = Arrays.binarySearch(cumulative, random.nextDouble());
+      int rank = index >= 0 ? index : -index - 1;
+      return Math.min(rank, cumulative.length - 1);
+    }
+  }
+}
@@ -16,26 +16,51 @@ package codeu.model.store.persistence;
 
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
+import codeu.model.data.PictureJob;
+import codeu.model.data.PictureSize;
 import codeu.model.data.User;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Blob;
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesService;
 import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.appengine.api.images.Transform;
 import codeu.model.store.persistence.PersistentDataStoreException;
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.UUID;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * This class handles all interactions with Google App Engine's Datastore service. On startup it
@@ -44,14 +69,23 @@ import java.util.Map;
  */
 public class PersistentDataStore {
 
+  // Number of entities fetched by each query when a whole kind is loaded.
+  static final int LOAD_CHUNK_SIZE = 1000;
+
+  // Number of chunks of one kind that are fetched at the same time.
+  static final int LOAD_THREADS = 4;
+
+  // Largest number of entities Datastore accepts in one batch put or delete.
+  static final int WRITE_BATCH_SIZE = 500;
+
+  // Name of the entity whose presence marks that every message has a creation_nanos property.
+  private static final String MESSAGE_TIME_MIGRATION = "message-creation-nanos";
+
   // Handle to Google AppEngine's Datastore service.
   private DatastoreService datastore;
 
-  //  List of UserEntities that can be used alter user data
-  private Map<UUID, Entity> userEntitiesById;
-
-  //  List of Message Entities that can be used to alter message data
-  private Map<UUID, Entity> messageEntitiesById;
+  // Handle to the same service for writes that the caller doesn't wait on.
+  private AsyncDatastoreService asyncDatastore;
 
   /**
    * Constructs a new PersistentDataStore and sets up its state to begin loading objects from the
@@ -59,6 +93,7 @@ public class PersistentDataStore {
    */
   public PersistentDataStore() {
     datastore = DatastoreServiceFactory.getDatastoreService();
+    asyncDatastore = DatastoreServiceFactory.getAsyncDatastoreService();
   }
 
   /**
@@ -70,14 +105,12 @@ public class PersistentDataStore {
   public List<User> loadUsers() throws PersistentDataStoreException {
 
     List<User> users = new ArrayList<>();
-    userEntitiesById = new HashMap<>();
+    Migration migration = new Migration();
 
     // Retrieve all users from the datastore.
-    Query query = new Query("chat-users");
-    PreparedQuery results = datastore.prepare(query);
-
-    for (Entity entity : results.asIterable()) {
+    for (Entity loadedEntity : loadEntities("chat-users")) {
       try {
+        Entity entity = migration.toNamedKey(loadedEntity);
 
         /**
          *
@@ -107,8 +140,15 @@ public class PersistentDataStore {
                          ? ((Long) entity.getProperty("messagesSent")).intValue()
                          : -1;
 
-        Blob imageBlob = (Blob) entity.getProperty("profilePicture");
-        byte[] profilePictureBytes = imageBlob.getBytes();
+        // Users saved before pictures had their own kind carry the picture on the user entity.
+        if (entity.hasProperty("profilePicture")) {
+          Blob imageBlob = (Blob) entity.getProperty("profilePicture");
+          entity.removeProperty("profilePicture");
+          if (imageBlob != null && imageBlob.getBytes().length != 0) {
+            migration.put(profilePictureEntity(uuid, imageBlob.getBytes()));
+          }
+          migration.put(entity);
+        }
 
         // Retrieving the individual lists of Keys and Values for the conversationVisibilities map.
         List<String> conversationIdsString = (List<String>) entity.getProperty("conversationIds");
@@ -122,9 +162,8 @@ public class PersistentDataStore {
         }
 
         User user = new User(uuid, userName, password, about, delete, messagesSent, creationTime, 
-                             showAllConvs, isAdmin, profilePictureBytes, conversationVisibilities);
+                             showAllConvs, isAdmin, conversationVisibilities);
         users.add(user);
-        userEntitiesById.put(uuid, entity);
       } catch (Exception e) {
         // In a production environment, errors should be very rare. Errors which may
         // occur include network errors, Datastore service errors, authorization errors,
@@ -133,6 +172,10 @@ public class PersistentDataStore {
       }
     }
 
+    migration.apply();
+
+    // Keys are derived from random ids, so load order says nothing; keep users in sign-up order.
+    users.sort(Comparator.comparing(User::getCreationTime));
     return users;
   }
 
@@ -171,9 +214,6 @@ public class PersistentDataStore {
                          ? ((Long) entity.getProperty("messagesSent")).intValue()
                          : -1;
 
-        Blob imageBlob = (Blob) entity.getProperty("profilePicture");
-        byte[] profilePictureBytes = imageBlob.getBytes();
-
         // Retrieving the individual lists of Keys and Values for the conversationVisibilities map.
         List<String> conversationIdsString = (List<String>) entity.getProperty("conversationIds");
         List<UUID> conversationIds = convertListtoUUID(conversationIdsString);
@@ -187,7 +227,7 @@ public class PersistentDataStore {
         }
 
         User admin = new User(uuid, userName, password, about, delete, messagesSent, creationTime, 
-                              showAllConvs, isAdmin, profilePictureBytes, conversationVisibilities);
+                              showAllConvs, isAdmin, conversationVisibilities);
         if (isAdmin) {
           admins.add(admin);
         }
@@ -198,6 +238,7 @@ public class PersistentDataStore {
         throw new PersistentDataStoreException(e);
       }
     }
+    admins.sort(Comparator.comparing(User::getCreationTime));
     return admins;
   }
 
@@ -211,12 +252,12 @@ public class PersistentDataStore {
 
     List<Conversation> conversations = new ArrayList<>();
 
-    // Retrieve all conversations from the datastore.
-    Query query = new Query("chat-conversations");
-    PreparedQuery results = datastore.prepare(query);
+    Migration migration = new Migration();
 
-    for (Entity entity : results.asIterable()) {
+    // Retrieve all conversations from the datastore.
+    for (Entity loadedEntity : loadEntities("chat-conversations")) {
       try {
+        Entity entity = migration.toNamedKey(loadedEntity);
         UUID uuid = UUID.fromString((String) entity.getProperty("uuid"));
         UUID ownerUuid = UUID.fromString((String) entity.getProperty("owner_uuid"));
         String title = (String) entity.getProperty("title");
@@ -231,6 +272,9 @@ public class PersistentDataStore {
       }
     }
 
+    migration.apply();
+
+    conversations.sort(Comparator.comparing(Conversation::getCreationTime));
     return conversations;
   }
 
@@ -242,23 +286,119 @@ public class PersistentDataStore {
    */
   public List<Message> loadMessages() throws PersistentDataStoreException {
 
-    List<Message> messages = new ArrayList<>();
-    messageEntitiesById = new HashMap<>();
-
     // Retrieve all messages from the datastore.
-    Query query = new Query("chat-messages");
-    PreparedQuery results = datastore.prepare(query);
+    List<Message> messages = toMessages(loadEntities("chat-messages"));
+    datastore.put(new Entity(migrationKey(MESSAGE_TIME_MIGRATION)));
+    messages.sort(Comparator.comparing(Message::getCreationTime));
+    return messages;
+  }
 
-    for (Entity entity : results.asIterable()) {
+  /**
+   * Loads the newest Messages of each of the given Conversations from the Datastore service. The
+   * Conversations are queried in parallel, and each contributes at most limit Messages.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Message> loadRecentMessages(List<Conversation> conversations, int limit)
+      throws PersistentDataStoreException {
+    backfillMessageTimes();
+    List<Callable<List<Entity>>> queries = new ArrayList<>();
+    for (Conversation conversation : conversations) {
+      queries.add(() -> queryMessages(conversation.getId(), null, limit));
+    }
+    return toMessages(fetchInParallel(queries));
+  }
+
+  /**
+   * Loads up to limit of the newest Messages of a Conversation that were created at or before the
+   * given instant, or the newest overall if upTo is null. The Messages are returned oldest first.
+   * Messages created at the same instant are taken in descending key order, as the newest batch
+   * was, so a caller that already has some Messages of that instant can ask for that many more and
+   * skip the ones it has. This uses the composite index on conv_uuid, creation_nanos and key.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Message> loadMessagesAtOrBefore(UUID conversationId, Instant upTo, int limit)
+      throws PersistentDataStoreException {
+    return toMessages(queryMessages(conversationId, upTo, limit));
+  }
+
+  /**
+   * Queries the newest Messages of a Conversation, optionally only those created at or before a
+   * time. The query sorts on creation_nanos, which orders by time, and then on key, so ties have a
+   * stable order.
+   */
+  private List<Entity> queryMessages(UUID conversationId, Instant upTo, int limit) {
+    Query.Filter filter =
+        new FilterPredicate("conv_uuid", FilterOperator.EQUAL, conversationId.toString());
+    if (upTo != null) {
+      filter =
+          CompositeFilterOperator.and(
+              filter,
+              new FilterPredicate(
+                  "creation_nanos", FilterOperator.LESS_THAN_OR_EQUAL, epochNanos(upTo)));
+    }
+    Query query =
+        new Query("chat-messages")
+            .setFilter(filter)
+            .addSort("creation_nanos", SortDirection.DESCENDING)
+            .addSort(Entity.KEY_RESERVED_PROPERTY, SortDirection.DESCENDING);
+    List<Entity> entities =
+        new ArrayList<>(
+            datastore.prepare(query).asQueryResultList(FetchOptions.Builder.withLimit(limit)));
+    Collections.reverse(entities);
+    return entities;
+  }
+
+  /**
+   * Gives every stored message a creation_nanos property, unless that was already done. Messages
+   * written before the property existed are otherwise invisible to queryMessages(). The first load
+   * after an upgrade reads every message once; later loads only check the marker entity.
+   */
+  private void backfillMessageTimes() throws PersistentDataStoreException {
+    try {
+      datastore.get(migrationKey(MESSAGE_TIME_MIGRATION));
+      return;
+    } catch (EntityNotFoundException e) {
+      // Not migrated yet.
+    }
+    toMessages(loadEntities("chat-messages"));
+    datastore.put(new Entity(migrationKey(MESSAGE_TIME_MIGRATION)));
+  }
+
+  /**
+   * Returns an instant as nanoseconds since the epoch. Unlike the ISO-8601 string kept in
+   * creation_time, which drops trailing zeros of the fraction, this sorts in time order.
+   */
+  static long epochNanos(Instant instant) {
+    return Math.addExact(
+        Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+  }
+
+  /**
+   * Turns message entities into Messages. Every path that loads messages goes through here, so this
+   * is also where messages with allocated keys are moved to named keys, and where messages without
+   * a creation_nanos property are given one.
+   */
+  private List<Message> toMessages(List<Entity> entities) throws PersistentDataStoreException {
+    List<Message> messages = new ArrayList<>();
+    Migration migration = new Migration();
+    for (Entity loadedEntity : entities) {
       try {
+        Entity entity = migration.toNamedKey(loadedEntity);
         UUID uuid = UUID.fromString((String) entity.getProperty("uuid"));
         UUID conversationUuid = UUID.fromString((String) entity.getProperty("conv_uuid"));
         UUID authorUuid = UUID.fromString((String) entity.getProperty("author_uuid"));
         Instant creationTime = Instant.parse((String) entity.getProperty("creation_time"));
+        if (!entity.hasProperty("creation_nanos")) {
+          entity.setProperty("creation_nanos", epochNanos(creationTime));
+          migration.put(entity);
+        }
         String content = (String) entity.getProperty("content");
         Message message = new Message(uuid, conversationUuid, authorUuid, content, creationTime);
         messages.add(message);
-        messageEntitiesById.put(uuid, entity);
       } catch (Exception e) {
         // In a production environment, errors should be very rare. Errors which may
         // occur include network errors, Datastore service errors, authorization errors,
@@ -267,12 +407,47 @@ public class PersistentDataStore {
       }
     }
 
+    migration.apply();
     return messages;
   }
 
-  /** Write a User object to the Datastore service. */
-  public void writeThrough(User user) {
-    Entity userEntity = new Entity("chat-users");
+  /**
+   * Start writing a User object to the Datastore service.
+   *
+   * @return a Future that completes once the write has been applied
+   */
+  public Future<Key> writeThrough(User user) {
+    return asyncDatastore.put(userEntity(user));
+  }
+
+  /** Change some property of a user then re-add to datastore. */
+  public void update(User user) {
+    datastore.put(userEntity(user));
+  }
+
+  /** Re-add a batch of changed users to datastore in as few puts as possible. */
+  public void update(Collection<User> users) {
+    List<Entity> userEntities = new ArrayList<>();
+    for (User user : users) {
+      userEntities.add(userEntity(user));
+    }
+    putInBatches(userEntities);
+  }
+
+  /**
+   * Write many User objects to the Datastore service in batches. Meant for seeding; waits until
+   * every batch has been applied.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the write to the
+   *     Datastore service
+   */
+  public void writeUsers(Collection<User> users) throws PersistentDataStoreException {
+    writeInBatches(users, PersistentDataStore::userEntity);
+  }
+
+  /** Builds the entity of a user, keyed by the user's id. */
+  private static Entity userEntity(User user) {
+    Entity userEntity = new Entity(userKey(user.getId()));
     userEntity.setProperty("uuid", user.getId().toString());
     userEntity.setProperty("username", user.getName());
     userEntity.setProperty("password", user.getPassword());
@@ -283,9 +458,6 @@ public class PersistentDataStore {
     userEntity.setProperty("allowMessageDel", user.getAllowMessageDel());
     userEntity.setProperty("creation", user.getCreationTime().toString());
 
-    Blob profilePictureBlob = new Blob(user.getImageData());
-    userEntity.setProperty("profilePicture", profilePictureBlob);
-
     /** Since the map of conversationVisibilities can't be stored on the user entity, a list of
     *   its keys and a separate list of its values are stored. UUIDs are also not supported, so
     *   the list is converted to contain Strings.
@@ -297,84 +469,405 @@ public class PersistentDataStore {
     List<Boolean> hiddenConversations = new ArrayList<Boolean>(user.getConversations().values());
     userEntity.setProperty("hiddenConversations", hiddenConversations);
 
-    datastore.put(userEntity);
+    return userEntity;
   }
 
-  /** Change some property of a user then re-add to datastore. */
-  public void update(User user) {
+  /** Delete a User object from the Datastore service */
+  public void delete(User user) {
     UUID userId = user.getId();
-    if (!userEntitiesById.containsKey(userId)) {
-      return;
+    List<Key> keys = new ArrayList<>();
+    keys.add(userKey(userId));
+    keys.add(profilePictureKey(userId));
+    for (PictureSize size : PictureSize.values()) {
+      keys.add(profilePictureKey(userId, size));
     }
+    datastore.delete(keys);
+  }
 
-    Entity userEntity = userEntitiesById.get(userId);
-    userEntity.setProperty("about", user.getAbout());
-    userEntity.setProperty("allowMessageDel", user.getAllowMessageDel());
-    userEntity.setProperty("messagesSent", user.getMessagesSent());
-    userEntity.setProperty("showAllConvs", user.getShowAllConversations());
+  /**
+   * Loads the profile picture of a User at the given size from the Datastore service. Pictures
+   * uploaded before sizes were stored separately only exist at one size, which is returned for
+   * every size.
+   *
+   * @return the picture bytes, or an empty array if the User has no picture
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public byte[] loadProfilePicture(UUID userId, PictureSize size)
+      throws PersistentDataStoreException {
+    try {
+      Key sizedKey = profilePictureKey(userId, size);
+      Key unsizedKey = profilePictureKey(userId);
+      Map<Key, Entity> pictureEntities = datastore.get(Arrays.asList(sizedKey, unsizedKey));
+      Entity pictureEntity = pictureEntities.containsKey(sizedKey)
+                           ? pictureEntities.get(sizedKey)
+                           : pictureEntities.get(unsizedKey);
+      if (pictureEntity == null) {
+        return new byte[0];
+      }
+      return ((Blob) pictureEntity.getProperty("picture")).getBytes();
+    } catch (Exception e) {
+      // In a production environment, errors should be very rare. Errors which may
+      // occur include network errors, Datastore service errors, authorization errors,
+      // database entity definition mismatches, or service mismatches.
+      throw new PersistentDataStoreException(e);
+    }
+  }
 
-    Blob profilePictureBlob = new Blob(user.getImageData());
-    userEntity.setProperty("profilePicture", profilePictureBlob);
+  /** Write every size of a User's profile picture to the Datastore service in a single put. */
+  public void writeProfilePictures(UUID userId, Map<PictureSize, byte[]> imageDataBySize) {
+    List<Entity> pictureEntities = new ArrayList<>();
+    for (Map.Entry<PictureSize, byte[]> entry : imageDataBySize.entrySet()) {
+      Entity pictureEntity = new Entity(profilePictureKey(userId, entry.getKey()));
+      pictureEntity.setUnindexedProperty("picture", new Blob(entry.getValue()));
+      pictureEntities.add(pictureEntity);
+    }
+    datastore.put(pictureEntities);
+  }
 
-    /** Since the map of conversationVisibilities can't be stored on the user entity, a list of
-    *   its keys and a separate list of its values are stored. UUIDs are also not supported, so
-    *   the list is converted to contain Strings.
-    */
-    List<UUID> conversationIds = new ArrayList<UUID>(user.getConversations().keySet());
-    List<String> conversationIdString = convertListtoString(conversationIds);
-    userEntity.setProperty("conversationIds", conversationIdString);
+  /**
+   * Profile pictures are stored apart from the chat-users entity, keyed by User id and size, so
+   * that user loads and updates don't carry the image bytes and each page loads only the size it
+   * shows.
+   */
+  private static Key profilePictureKey(UUID userId, PictureSize size) {
+    return KeyFactory.createKey("chat-profile-pictures", userId + "/" + size.getPixels());
+  }
 
-    List<Boolean> hiddenConversations = new ArrayList<Boolean>(user.getConversations().values());
-    userEntity.setProperty("hiddenConversations", hiddenConversations);
+  /** Key of a picture stored before sizes were stored separately. */
+  private static Key profilePictureKey(UUID userId) {
+    return KeyFactory.createKey("chat-profile-pictures", userId.toString());
+  }
 
-    datastore.put(userEntity);
+  private static Entity profilePictureEntity(UUID userId, byte[] imageData) {
+    Entity pictureEntity = new Entity(profilePictureKey(userId));
+    pictureEntity.setUnindexedProperty("picture", new Blob(imageData));
+    return pictureEntity;
   }
 
-  /** Delete a User object from the Datastore service */
-  public void delete(User user) {
-    UUID userId = user.getId();
-    if (!userEntitiesById.containsKey(userId)) {
-      return;
+  /**
+   * Write a PictureJob and its uploaded picture to the Datastore service. The upload is kept on
+   * the job's entity until the job is processed, so it must fit within Datastore's entity size
+   * limit.
+   */
+  public void writeThrough(PictureJob job, byte[] upload) {
+    Entity jobEntity = new Entity(pictureJobKey(job.getId()));
+    jobEntity.setProperty("user_uuid", job.getUserId().toString());
+    jobEntity.setProperty("creation_time", job.getCreationTime().toString());
+    jobEntity.setProperty("status", job.getStatus().name());
+    jobEntity.setUnindexedProperty("upload", new Blob(upload));
+    datastore.put(jobEntity);
+  }
+
+  /**
+   * Loads a PictureJob from the Datastore service.
+   *
+   * @return null if there is no PictureJob with the given id
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public PictureJob loadPictureJob(UUID jobId) throws PersistentDataStoreException {
+    try {
+      Entity jobEntity = datastore.get(pictureJobKey(jobId));
+      UUID userId = UUID.fromString((String) jobEntity.getProperty("user_uuid"));
+      Instant creationTime = Instant.parse((String) jobEntity.getProperty("creation_time"));
+      PictureJob.Status status = PictureJob.Status.valueOf((String) jobEntity.getProperty("status"));
+      return new PictureJob(jobId, userId, creationTime, status);
+    } catch (EntityNotFoundException e) {
+      return null;
+    } catch (Exception e) {
+      // In a production environment, errors should be very rare. Errors which may
+      // occur include network errors, Datastore service errors, authorization errors,
+      // database entity definition mismatches, or service mismatches.
+      throw new PersistentDataStoreException(e);
     }
+  }
+
+  /**
+   * Loads the uploaded picture of a PictureJob from the Datastore service.
+   *
+   * @return the upload, or an empty array if the job doesn't exist or was already processed
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public byte[] loadPictureUpload(UUID jobId) throws PersistentDataStoreException {
+    try {
+      Blob upload = (Blob) datastore.get(pictureJobKey(jobId)).getProperty("upload");
+      return upload == null ? new byte[0] : upload.getBytes();
+    } catch (EntityNotFoundException e) {
+      return new byte[0];
+    } catch (Exception e) {
+      // In a production environment, errors should be very rare. Errors which may
+      // occur include network errors, Datastore service errors, authorization errors,
+      // database entity definition mismatches, or service mismatches.
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
+  /**
+   * Record the status of a PictureJob that has finished processing in the Datastore service. Its
+   * upload is no longer needed and is dropped.
+   */
+  public void update(PictureJob job) {
+    Entity jobEntity = new Entity(pictureJobKey(job.getId()));
+    jobEntity.setProperty("user_uuid", job.getUserId().toString());
+    jobEntity.setProperty("creation_time", job.getCreationTime().toString());
+    jobEntity.setProperty("status", job.getStatus().name());
+    datastore.put(jobEntity);
+  }
 
-    Entity userEntity = userEntitiesById.get(userId);
-    datastore.delete(userEntity.getKey());
+  /** PictureJobs are keyed by their id so their status can be read without a query. */
+  private static Key pictureJobKey(UUID jobId) {
+    return KeyFactory.createKey("chat-picture-jobs", jobId.toString());
   }
 
-  /** Write a Message object to the Datastore service. */
-  public void writeThrough(Message message) {
-    Entity messageEntity = new Entity("chat-messages");
+  /**
+   * Start writing a Message object to the Datastore service.
+   *
+   * @return a Future that completes once the write has been applied
+   */
+  public Future<Key> writeThrough(Message message) {
+    return asyncDatastore.put(messageEntity(message));
+  }
+
+  /**
+   * Write many Message objects to the Datastore service in batches. Meant for seeding; waits until
+   * every batch has been applied.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the write to the
+   *     Datastore service
+   */
+  public void writeMessages(Collection<Message> messages) throws PersistentDataStoreException {
+    writeInBatches(messages, PersistentDataStore::messageEntity);
+  }
+
+  /** Builds the entity of a message, keyed by the message's id. */
+  private static Entity messageEntity(Message message) {
+    Entity messageEntity = new Entity(messageKey(message.getId()));
     messageEntity.setProperty("uuid", message.getId().toString());
     messageEntity.setProperty("conv_uuid", message.getConversationId().toString());
     messageEntity.setProperty("author_uuid", message.getAuthorId().toString());
     messageEntity.setProperty("content", message.getContent());
     messageEntity.setProperty("creation_time", message.getCreationTime().toString());
-    datastore.put(messageEntity);
+    messageEntity.setProperty("creation_nanos", epochNanos(message.getCreationTime()));
+    return messageEntity;
   }
 
   /** Delete a Message object from the Datastore service */
   public void delete(Message message) {
-    UUID messageId = message.getId();
-    if (!messageEntitiesById.containsKey(messageId)) {
-      return;
-    }
+    datastore.delete(messageKey(message.getId()));
+  }
 
-    Entity messageEntity = messageEntitiesById.get(messageId);
-    datastore.delete(messageEntity.getKey());
+  /**
+   * Start writing a Conversation object to the Datastore service.
+   *
+   * @return a Future that completes once the write has been applied
+   */
+  public Future<Key> writeThrough(Conversation conversation) {
+    return asyncDatastore.put(conversationEntity(conversation));
   }
 
-  /** Write a Conversation object to the Datastore service. */
-  public void writeThrough(Conversation conversation) {
-    Entity conversationEntity = new Entity("chat-conversations");
+  /**
+   * Write many Conversation objects to the Datastore service in batches. Meant for seeding; waits
+   * until every batch has been applied.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the write to the
+   *     Datastore service
+   */
+  public void writeConversations(Collection<Conversation> conversations)
+      throws PersistentDataStoreException {
+    writeInBatches(conversations, PersistentDataStore::conversationEntity);
+  }
+
+  /** Builds the entity of a conversation, keyed by the conversation's id. */
+  private static Entity conversationEntity(Conversation conversation) {
+    Entity conversationEntity = new Entity(conversationKey(conversation.getId()));
     conversationEntity.setProperty("uuid", conversation.getId().toString());
     conversationEntity.setProperty("owner_uuid", conversation.getOwnerId().toString());
     conversationEntity.setProperty("title", conversation.getTitle());
     conversationEntity.setProperty("creation_time", conversation.getCreationTime().toString());
-    datastore.put(conversationEntity);
+    return conversationEntity;
+  }
+
+  /**
+   * Users, Conversations and Messages are keyed by their ids, so they can be updated and deleted
+   * without looking up their entities first.
+   */
+  private static Key userKey(UUID userId) {
+    return KeyFactory.createKey("chat-users", userId.toString());
+  }
+
+  private static Key conversationKey(UUID conversationId) {
+    return KeyFactory.createKey("chat-conversations", conversationId.toString());
+  }
+
+  private static Key messageKey(UUID messageId) {
+    return KeyFactory.createKey("chat-messages", messageId.toString());
+  }
+
+  /** One-time migrations are recorded by an entity named after them. */
+  private static Key migrationKey(String migration) {
+    return KeyFactory.createKey("chat-migrations", migration);
+  }
+
+  /** Puts entities WRITE_BATCH_SIZE at a time. */
+  private void putInBatches(List<Entity> entities) {
+    for (int start = 0; start < entities.size(); start += WRITE_BATCH_SIZE) {
+      datastore.put(entities.subList(start, Math.min(start + WRITE_BATCH_SIZE, entities.size())));
+    }
+  }
+
+  /**
+   * Puts the entities of objects WRITE_BATCH_SIZE at a time, keeping up to LOAD_THREADS batches in
+   * flight. Entities are built as each batch is filled, so only the batches in flight are held in
+   * memory.
+   */
+  private <T> void writeInBatches(Collection<T> objects, Function<T, Entity> toEntity)
+      throws PersistentDataStoreException {
+    Deque<Future<List<Key>>> puts = new ArrayDeque<>();
+    try {
+      List<Entity> batch = new ArrayList<>();
+      for (T object : objects) {
+        batch.add(toEntity.apply(object));
+        if (batch.size() == WRITE_BATCH_SIZE) {
+          if (puts.size() == LOAD_THREADS) {
+            puts.poll().get();
+          }
+          puts.add(asyncDatastore.put(batch));
+          batch = new ArrayList<>();
+        }
+      }
+      if (!batch.isEmpty()) {
+        puts.add(asyncDatastore.put(batch));
+      }
+      while (!puts.isEmpty()) {
+        puts.poll().get();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
+  /** Deletes keys WRITE_BATCH_SIZE at a time. */
+  private void deleteInBatches(List<Key> keys) {
+    for (int start = 0; start < keys.size(); start += WRITE_BATCH_SIZE) {
+      datastore.delete(keys.subList(start, Math.min(start + WRITE_BATCH_SIZE, keys.size())));
+    }
+  }
+
+  /**
+   * Collects the writes that bring loaded entities up to the current storage format, so they can
+   * be applied in batches once loading is done. Entities written before keys were derived from ids
+   * have keys allocated by Datastore; they are copied to a key named by their uuid property and
+   * the old copy is deleted. Moving an entity twice writes the same result, so instances that
+   * start at the same time can both migrate safely.
+   */
+  private final class Migration {
+    private final Map<Key, Entity> puts = new LinkedHashMap<>();
+    private final List<Key> deletes = new ArrayList<>();
+
+    /** Returns the entity under its named key, queuing the move if it had an allocated key. */
+    Entity toNamedKey(Entity entity) {
+      if (entity.getKey().getName() != null) {
+        return entity;
+      }
+      Entity namedEntity =
+          new Entity(KeyFactory.createKey(entity.getKind(), (String) entity.getProperty("uuid")));
+      namedEntity.setPropertiesFrom(entity);
+      puts.put(namedEntity.getKey(), namedEntity);
+      deletes.add(entity.getKey());
+      return namedEntity;
+    }
+
+    /** Queues a write of an entity that was changed while loading. */
+    void put(Entity entity) {
+      puts.put(entity.getKey(), entity);
+    }
+
+    /** Writes the moved and changed entities, then deletes the old copies. */
+    void apply() {
+      putInBatches(new ArrayList<>(puts.values()));
+      deleteInBatches(deletes);
+    }
+  }
+
+  /**
+   * Loads every entity of the given kind. A keys-only scan first finds a cursor at the start of
+   * each chunk of LOAD_CHUNK_SIZE entities; the chunks are then fetched in parallel and joined in
+   * query order.
+   *
+   * @throws PersistentDataStoreException if any chunk could not be fetched
+   */
+  private List<Entity> loadEntities(String kind) throws PersistentDataStoreException {
+    List<Cursor> chunkStarts = findChunkStarts(kind);
+    if (chunkStarts.size() == 1) {
+      return fetchChunk(kind, null);
+    }
+
+    List<Callable<List<Entity>>> chunks = new ArrayList<>();
+    for (Cursor chunkStart : chunkStarts) {
+      chunks.add(() -> fetchChunk(kind, chunkStart));
+    }
+    return fetchInParallel(chunks);
+  }
+
+  /**
+   * Runs the given queries LOAD_THREADS at a time and joins their results in the order the
+   * queries were given.
+   *
+   * @throws PersistentDataStoreException if any query failed
+   */
+  private List<Entity> fetchInParallel(List<Callable<List<Entity>>> queries)
+      throws PersistentDataStoreException {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(LOAD_THREADS, ThreadManager.currentRequestThreadFactory());
+    try {
+      List<Future<List<Entity>>> results = new ArrayList<>();
+      for (Callable<List<Entity>> query : queries) {
+        results.add(executor.submit(query));
+      }
+
+      List<Entity> entities = new ArrayList<>();
+      for (Future<List<Entity>> result : results) {
+        entities.addAll(result.get());
+      }
+      return entities;
+    } catch (InterruptedException | ExecutionException e) {
+      throw new PersistentDataStoreException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Returns the cursor at the start of each chunk of a kind; the first chunk starts at null. */
+  private List<Cursor> findChunkStarts(String kind) {
+    List<Cursor> chunkStarts = new ArrayList<>();
+    chunkStarts.add(null);
+
+    PreparedQuery keys = datastore.prepare(new Query(kind).setKeysOnly());
+    QueryResultList<Entity> chunk =
+        keys.asQueryResultList(FetchOptions.Builder.withLimit(LOAD_CHUNK_SIZE));
+    while (chunk.size() == LOAD_CHUNK_SIZE) {
+      Cursor next = chunk.getCursor();
+      chunkStarts.add(next);
+      chunk =
+          keys.asQueryResultList(
+              FetchOptions.Builder.withLimit(LOAD_CHUNK_SIZE).startCursor(next));
+    }
+    return chunkStarts;
+  }
+
+  /** Fetches up to LOAD_CHUNK_SIZE entities of a kind, starting at the given cursor. */
+  private List<Entity> fetchChunk(String kind, Cursor start) {
+    FetchOptions options = FetchOptions.Builder.withLimit(LOAD_CHUNK_SIZE);
+    if (start != null) {
+      options.startCursor(start);
+    }
+    return new ArrayList<>(datastore.prepare(new Query(kind)).asQueryResultList(options));
   }
 
   /** Helper function to turn a List<UUID> into a List<String> */
-  private List<String> convertListtoString(List<UUID> inputList) {
+  private static List<String> convertListtoString(List<UUID> inputList) {
     List<String> stringList = new ArrayList();
     for (UUID conversationId : inputList) {
       stringList.add(conversationId.toString());
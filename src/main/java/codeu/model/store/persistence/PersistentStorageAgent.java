@@ -16,31 +16,101 @@ package codeu.model.store.persistence;
 
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
+import codeu.model.data.PictureJob;
+import codeu.model.data.PictureSize;
 import codeu.model.data.User;
+import codeu.model.store.basic.MetricsStore;
 import codeu.model.store.persistence.PersistentDataStore;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
 /**
  * This class is the interface between the application and PersistentDataStore, which handles
- * interactions with Google App Engine's Datastore service. Currently this class simply passes
- * function calls through to PersistentDataStore, but this could be modified to make asynchronous
- * calls or to point to a different backend storage system.
+ * interactions with Google App Engine's Datastore service. Most calls pass straight through to
+ * PersistentDataStore; User updates queued with updateLater() are held back and written in
+ * batches.
+ *
+ * <p>New Users, Conversations and Messages are written asynchronously: writeThrough() starts the
+ * write and returns, so the rest of the request overlaps with it. The App Engine runtime still
+ * waits for outstanding RPCs before it sends the response, so this doesn't make the request
+ * itself return sooner. At most MAX_IN_FLIGHT_WRITES writes are outstanding at once; a caller that
+ * would start one more first waits for the oldest. Writes that fail are queued and started again
+ * with the next write, up to MAX_WRITE_ATTEMPTS times, and every outcome is counted in
+ * MetricsStore under "datastore-write.*".
+ *
+ * <p>Outstanding writes are tracked per entity, so an update or delete only waits for the write
+ * of the same User or Message, not for every write on the instance.
  *
  * <p>This is a singleton; the single instance is accessed through getInstance().
  */
 public class PersistentStorageAgent {
 
-  private static PersistentStorageAgent instance;
+  private static volatile PersistentStorageAgent instance;
+
+  /** Queued User updates are flushed once this many distinct Users are waiting. */
+  static final int UPDATE_BATCH_SIZE = 50;
+
+  /** Queued User updates are flushed once the oldest of them has waited this long. */
+  static final long UPDATE_FLUSH_INTERVAL_MILLIS = 5000;
+
+  /** Largest number of asynchronous writes that may be outstanding at once. */
+  static final int MAX_IN_FLIGHT_WRITES = 32;
+
+  /** Number of times a write is attempted before it is given up on. */
+  static final int MAX_WRITE_ATTEMPTS = 3;
 
   private final PersistentDataStore persistentDataStore;
 
+  private final MetricsStore metricsStore;
+
+  /** Writes that have been started but not yet checked, oldest first. */
+  private final Queue<PendingWrite> inFlightWrites = new ConcurrentLinkedQueue<>();
+
+  /** Writes that failed and are waiting to be started again. */
+  private final Queue<PendingWrite> failedWrites = new ConcurrentLinkedQueue<>();
+
+  /** Writes that have not succeeded or been given up on yet, keyed by the entity they write. */
+  private final ConcurrentMap<String, PendingWrite> pendingWritesByKey = new ConcurrentHashMap<>();
+
+  /** One permit per write that may be in flight. */
+  private final Semaphore writePermits = new Semaphore(MAX_IN_FLIGHT_WRITES);
+
+  /** If false, writeThrough() waits for each write to be applied before returning. */
+  private volatile boolean asyncWrites = true;
+
+  /**
+   * Users whose changes have not been written to Datastore yet, keyed by id. Queueing the same
+   * User again before a flush only replaces the entry, so a burst of changes costs one write.
+   */
+  private final ConcurrentMap<UUID, User> pendingUpdates = new ConcurrentHashMap<>();
+
+  /** When the oldest entry in pendingUpdates was queued, or 0 if nothing is queued. */
+  private volatile long oldestPendingUpdateMillis;
+
   /**
    * Access the persistent storage agent, in order to perform object-level loads and/or stores. Do
    * not call this function from a test; use getTestInstance() instead.
    */
   public static PersistentStorageAgent getInstance() {
     if (instance == null) {
-      instance = new PersistentStorageAgent(new PersistentDataStore());
+      synchronized (PersistentStorageAgent.class) {
+        if (instance == null) {
+          instance =
+              new PersistentStorageAgent(new PersistentDataStore(), MetricsStore.getInstance());
+        }
+      }
     }
     return instance;
   }
@@ -51,12 +121,34 @@ public class PersistentStorageAgent {
    * @param mockPersistentDataStore a mock used for testing
    */
   static PersistentStorageAgent getTestInstance(PersistentDataStore mockPersistentDataStore) {
-    return new PersistentStorageAgent(mockPersistentDataStore);
+    return new PersistentStorageAgent(mockPersistentDataStore, MetricsStore.getTestInstance());
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a mock for PersistentDataStore and the
+   * MetricsStore that write outcomes should be counted in.
+   *
+   * @param mockPersistentDataStore a mock used for testing
+   * @param metricsStore the MetricsStore to inspect from the test
+   */
+  static PersistentStorageAgent getTestInstance(
+      PersistentDataStore mockPersistentDataStore, MetricsStore metricsStore) {
+    return new PersistentStorageAgent(mockPersistentDataStore, metricsStore);
   }
 
   // Private constructor, accessible only through singleton interface
-  private PersistentStorageAgent(PersistentDataStore persistentDataStore) {
+  private PersistentStorageAgent(
+      PersistentDataStore persistentDataStore, MetricsStore metricsStore) {
     this.persistentDataStore = persistentDataStore;
+    this.metricsStore = metricsStore;
+  }
+
+  /**
+   * Sets whether writeThrough() returns as soon as a write is started (the default) or waits for
+   * it to be applied.
+   */
+  public void setAsyncWrites(boolean asyncWrites) {
+    this.asyncWrites = asyncWrites;
   }
 
   /**
@@ -99,33 +191,382 @@ public class PersistentStorageAgent {
     return persistentDataStore.loadMessages();
   }
 
-  /** Write a User object to the Datastore service. */
+  /**
+   * Retrieve the newest Message objects of each of the given Conversations from the Datastore
+   * service, at most limit per Conversation. The returned list may be empty.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Message> loadRecentMessages(List<Conversation> conversations, int limit)
+      throws PersistentDataStoreException {
+    return persistentDataStore.loadRecentMessages(conversations, limit);
+  }
+
+  /**
+   * Retrieve up to limit of the newest Message objects of a Conversation that were created at or
+   * before the given instant, or the newest overall if upTo is null. The returned list is oldest
+   * first and may be empty.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Message> loadMessagesAtOrBefore(UUID conversationId, Instant upTo, int limit)
+      throws PersistentDataStoreException {
+    return persistentDataStore.loadMessagesAtOrBefore(conversationId, upTo, limit);
+  }
+
+  /** Start writing a User object to the Datastore service. */
   public void writeThrough(User user) {
-    persistentDataStore.writeThrough(user);
+    startWrite(new PendingWrite(
+        userKey(user.getId()), () -> persistentDataStore.writeThrough(user)));
   }
 
-  /** Update the information of a User within the Datastore */
+  /**
+   * Update the information of a User within the Datastore. An outstanding write of the same User
+   * is waited for first, so it can't land after this one.
+   */
   public void update(User user) {
+    pendingUpdates.remove(user.getId());
+    awaitWrite(userKey(user.getId()));
     persistentDataStore.update(user);
   }
 
+  /**
+   * Queue an update of a User's information. Updates are written in batches once enough Users
+   * are queued or the oldest update has waited long enough, whichever comes first; until then
+   * the User's Datastore entity may be behind the in-memory object. Use update() for changes
+   * that must be written immediately.
+   */
+  public void updateLater(User user) {
+    if (pendingUpdates.put(user.getId(), user) == null && oldestPendingUpdateMillis == 0) {
+      oldestPendingUpdateMillis = System.currentTimeMillis();
+    }
+    if (pendingUpdates.size() >= UPDATE_BATCH_SIZE) {
+      flushUpdates();
+    } else {
+      flushUpdatesIfOverdue();
+    }
+  }
+
+  /**
+   * Write the queued User updates if the oldest of them has waited UPDATE_FLUSH_INTERVAL_MILLIS.
+   * This is cheap when nothing is overdue, so it can be called after every request; that way
+   * updates are written even if no further updateLater() call arrives.
+   */
+  public void flushUpdatesIfOverdue() {
+    long oldest = oldestPendingUpdateMillis;
+    if (oldest != 0 && System.currentTimeMillis() - oldest >= UPDATE_FLUSH_INTERVAL_MILLIS) {
+      flushUpdates();
+    }
+  }
+
+  /** Write all queued User updates to the Datastore service in a single batch. */
+  public synchronized void flushUpdates() {
+    oldestPendingUpdateMillis = 0;
+    List<User> users = new ArrayList<>();
+    for (UUID userId : pendingUpdates.keySet()) {
+      User user = pendingUpdates.remove(userId);
+      if (user != null) {
+        users.add(user);
+      }
+    }
+    if (!users.isEmpty()) {
+      for (User user : users) {
+        awaitWrite(userKey(user.getId()));
+      }
+      persistentDataStore.update(users);
+    }
+  }
+
+  /** Returns the number of Users with queued updates that have not been written yet. */
+  public int getPendingUpdateCount() {
+    return pendingUpdates.size();
+  }
+
   /** Delete a User object from the Datastore service */
   public void delete(User user) {
+    pendingUpdates.remove(user.getId());
+    awaitWrite(userKey(user.getId()));
     persistentDataStore.delete(user);
   }
 
-  /** Write a Conversation object to the Datastore service. */
+  /**
+   * Retrieve the profile picture of a User at the given size from the Datastore service. The
+   * returned array is empty if the User has no picture.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public byte[] loadProfilePicture(UUID userId, PictureSize size)
+      throws PersistentDataStoreException {
+    return persistentDataStore.loadProfilePicture(userId, size);
+  }
+
+  /** Write every size of a User's profile picture to the Datastore service. */
+  public void writeProfilePictures(UUID userId, Map<PictureSize, byte[]> imageDataBySize) {
+    persistentDataStore.writeProfilePictures(userId, imageDataBySize);
+  }
+
+  /** Write a PictureJob and its uploaded picture to the Datastore service. */
+  public void writeThrough(PictureJob job, byte[] upload) {
+    persistentDataStore.writeThrough(job, upload);
+  }
+
+  /**
+   * Retrieve a PictureJob from the Datastore service, or null if there is no job with the given
+   * id.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public PictureJob loadPictureJob(UUID jobId) throws PersistentDataStoreException {
+    return persistentDataStore.loadPictureJob(jobId);
+  }
+
+  /**
+   * Retrieve the uploaded picture of a PictureJob from the Datastore service. The returned array
+   * is empty if the job doesn't exist or was already processed.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public byte[] loadPictureUpload(UUID jobId) throws PersistentDataStoreException {
+    return persistentDataStore.loadPictureUpload(jobId);
+  }
+
+  /** Record the status of a finished PictureJob within the Datastore. */
+  public void update(PictureJob job) {
+    persistentDataStore.update(job);
+  }
+
+  /**
+   * Write many Users, Conversations and Messages to the Datastore service in batches, waiting for
+   * every write. Meant for seeding large data sets; Users are written first, then Conversations,
+   * then Messages.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the write to the
+   *     Datastore service
+   */
+  public void writeAll(
+      Collection<User> users, Collection<Conversation> conversations, Collection<Message> messages)
+      throws PersistentDataStoreException {
+    writeUsers(users);
+    writeConversations(conversations);
+    writeMessages(messages);
+  }
+
+  /**
+   * Write many User objects to the Datastore service in batches, waiting for every write.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the write to the
+   *     Datastore service
+   */
+  public void writeUsers(Collection<User> users) throws PersistentDataStoreException {
+    persistentDataStore.writeUsers(users);
+  }
+
+  /**
+   * Write many Conversation objects to the Datastore service in batches, waiting for every write.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the write to the
+   *     Datastore service
+   */
+  public void writeConversations(Collection<Conversation> conversations)
+      throws PersistentDataStoreException {
+    persistentDataStore.writeConversations(conversations);
+  }
+
+  /**
+   * Write many Message objects to the Datastore service in batches, waiting for every write.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the write to the
+   *     Datastore service
+   */
+  public void writeMessages(Collection<Message> messages) throws PersistentDataStoreException {
+    persistentDataStore.writeMessages(messages);
+  }
+
+  /** Start writing a Conversation object to the Datastore service. */
   public void writeThrough(Conversation conversation) {
-    persistentDataStore.writeThrough(conversation);
+    startWrite(new PendingWrite(
+        conversationKey(conversation.getId()),
+        () -> persistentDataStore.writeThrough(conversation)));
   }
 
-  /** Write a Messsage object to the Datastore service. */
+  /** Start writing a Messsage object to the Datastore service. */
   public void writeThrough(Message message) {
-    persistentDataStore.writeThrough(message);
+    startWrite(new PendingWrite(
+        messageKey(message.getId()), () -> persistentDataStore.writeThrough(message)));
   }
 
-  /** Delete a Message object from the Datastore service */
+  /**
+   * Delete a Message object from the Datastore service. An outstanding write of the same Message
+   * is waited for first, so a Message that was just written can't reappear after it's deleted.
+   */
   public void delete(Message message) {
+    awaitWrite(messageKey(message.getId()));
     persistentDataStore.delete(message);
   }
+
+  /**
+   * Waits until every started write has been applied, starting failed writes again until they
+   * succeed or run out of attempts.
+   */
+  public void awaitWrites() {
+    while (!inFlightWrites.isEmpty() || !failedWrites.isEmpty()) {
+      PendingWrite write;
+      while ((write = inFlightWrites.poll()) != null) {
+        finish(write);
+      }
+      retryFailedWrites();
+    }
+  }
+
+  /**
+   * Waits until the outstanding write of one entity, if there is one, has been applied or given
+   * up on. Writes of other entities are left running.
+   */
+  private void awaitWrite(String key) {
+    PendingWrite write;
+    while ((write = pendingWritesByKey.get(key)) != null) {
+      if (inFlightWrites.remove(write)) {
+        finish(write);
+      } else if (failedWrites.remove(write)) {
+        metricsStore.increment("datastore-write.retried");
+        start(write);
+      } else {
+        // Another thread is starting or finishing this write right now.
+        Thread.yield();
+      }
+    }
+  }
+
+  /** Returns the number of writes that have been started but not yet checked. */
+  public int getInFlightWriteCount() {
+    return inFlightWrites.size();
+  }
+
+  /** Returns the number of failed writes waiting to be started again. */
+  public int getFailedWriteCount() {
+    return failedWrites.size();
+  }
+
+  /**
+   * Starts a write, first checking on writes that have finished and retrying ones that failed. If
+   * MAX_IN_FLIGHT_WRITES are already outstanding, waits for the oldest before starting this one.
+   */
+  private void startWrite(PendingWrite write) {
+    finishCompletedWrites();
+    retryFailedWrites();
+    awaitWrite(write.key);
+    pendingWritesByKey.put(write.key, write);
+    start(write);
+  }
+
+  private void start(PendingWrite write) {
+    while (!writePermits.tryAcquire()) {
+      metricsStore.increment("datastore-write.throttled");
+      PendingWrite oldest = inFlightWrites.poll();
+      if (oldest != null) {
+        finish(oldest);
+      } else {
+        // Every permit belongs to a write another thread is finishing right now.
+        writePermits.acquireUninterruptibly();
+        break;
+      }
+    }
+    write.attempts++;
+    metricsStore.increment("datastore-write.started");
+    try {
+      write.future = write.write.get();
+    } catch (RuntimeException e) {
+      writePermits.release();
+      fail(write, e);
+      return;
+    }
+    if (asyncWrites) {
+      inFlightWrites.add(write);
+    } else {
+      finish(write);
+    }
+  }
+
+  /** Checks every in-flight write that is already done, without waiting on any. */
+  private void finishCompletedWrites() {
+    for (PendingWrite write : inFlightWrites) {
+      if (write.future.isDone() && inFlightWrites.remove(write)) {
+        finish(write);
+      }
+    }
+  }
+
+  /** Waits for a write that has left inFlightWrites, and records how it went. */
+  private void finish(PendingWrite write) {
+    long startTime = System.currentTimeMillis();
+    try {
+      write.future.get();
+      metricsStore.increment("datastore-write.succeeded");
+      pendingWritesByKey.remove(write.key, write);
+    } catch (ExecutionException e) {
+      fail(write, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failedWrites.add(write);
+    } finally {
+      metricsStore.recordTime("datastore-write.wait", System.currentTimeMillis() - startTime);
+      writePermits.release();
+    }
+  }
+
+  private void fail(PendingWrite write, Throwable cause) {
+    metricsStore.increment("datastore-write.failed");
+    if (write.attempts < MAX_WRITE_ATTEMPTS) {
+      failedWrites.add(write);
+    } else {
+      metricsStore.increment("datastore-write.dropped");
+      pendingWritesByKey.remove(write.key, write);
+      System.err.println(
+          "Giving up on write of " + write.key + " after " + write.attempts
+              + " attempts: " + cause);
+    }
+  }
+
+  /** Starts each write that was waiting for a retry when this was called. */
+  private void retryFailedWrites() {
+    for (int i = failedWrites.size(); i > 0; i--) {
+      PendingWrite write = failedWrites.poll();
+      if (write == null) {
+        return;
+      }
+      metricsStore.increment("datastore-write.retried");
+      start(write);
+    }
+  }
+
+  private static String userKey(UUID userId) {
+    return "user " + userId;
+  }
+
+  private static String conversationKey(UUID conversationId) {
+    return "conversation " + conversationId;
+  }
+
+  private static String messageKey(UUID messageId) {
+    return "message " + messageId;
+  }
+
+  /** A write of one object, which can be started again if it fails. */
+  private static final class PendingWrite {
+    /** Names the entity written, such as "user {id}"; also used in log messages. */
+    private final String key;
+    private final Supplier<Future<?>> write;
+    private volatile Future<?> future;
+    private volatile int attempts;
+
+    private PendingWrite(String key, Supplier<Future<?>> write) {
+      this.key = key;
+      this.write = write;
+    }
+  }
 }
@@ -13,14 +13,17 @@
   See the License for the specific language governing permissions and
   limitations under the License.
 --%>
+<%@ page import="java.time.Instant" %>
 <%@ page import="java.util.List" %>
 <%@ page import="codeu.model.data.Conversation" %>
 <%@ page import="codeu.model.data.Message" %>
-<%@ page import="codeu.model.data.User" %>
-<%@ page import="codeu.model.store.basic.UserStore" %>
 <%
 Conversation conversation = (Conversation) request.getAttribute("conversation");
 List<Message> messages = (List<Message>) request.getAttribute("messages");
+List<String> messageFragments = (List<String>) request.getAttribute("messageFragments");
+Instant olderMessagesCursor = (Instant) request.getAttribute("olderMessagesCursor");
+Integer pageSize = (Integer) request.getAttribute("pageSize");
+boolean chatEventStreaming = Boolean.TRUE.equals(request.getAttribute("chatEventStreaming"));
 %>
 
 <!DOCTYPE html>
@@ -67,31 +70,89 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
     <hr/>
 
     <div id="chat">
-      <ul>
-    <%
-      for (Message message : messages) {
-        String author = UserStore.getInstance()
-          .getUser(message.getAuthorId()).getName();
-    %>
-      <% User user = UserStore.getInstance().getUser(author); %>
-      <% if (user.getImageData().length == 0) { %>
-        <img src="https://www.idyllwildarts.org/wp-content/uploads/2016/09/blank-profile-picture.jpg"
-         height = "40", width = "40" />
-      <% } else { %>
-        <% String base64Image = user.getEncodedImage(); %>
-        <% if(base64Image != null) { %>
-          <%  String format = "data:image/*;base64, "; %>
-              <img src="<%= format + base64Image %>" height = "40" width = "40" /> 
-          <% } %>
-        <% } %>
-      <a href="/profile/<%= author %>"><%= author %>:</a> <%= message.getContent() %>
-      <br/>
+    <% if (olderMessagesCursor != null) { %>
+      <a href="/chat/<%= conversation.getTitle() %>?before=<%= olderMessagesCursor %>&limit=<%= pageSize %>">
+        Load older messages</a>
+    <% } %>
+      <ul id="messages">
     <%
+      // Each Message is already rendered; write the cached HTML as it is.
+      for (String messageFragment : messageFragments) {
+        out.write(messageFragment);
       }
     %>
       </ul>
     </div>
 
+    <% if (request.getParameter("before") == null) { %>
+    <script>
+      // Poll for Messages sent after the newest one on the page and append them as they arrive.
+      // Where the server streams events, follow them over EventSource instead.
+      var messagesCursor =
+          '<%= messages.isEmpty() ? Instant.EPOCH : messages.get(messages.size() - 1).getId() %>';
+
+      function appendMessage(message) {
+        var list = document.getElementById('messages');
+        var avatar = document.createElement('img');
+        avatar.src = '/avatar/' + message.authorId + '?size=40';
+        avatar.height = 40;
+        avatar.width = 40;
+        var author = document.createElement('a');
+        author.href = '/profile/' + encodeURIComponent(message.author);
+        author.textContent = message.author + ':';
+        var content = document.createElement('span');
+        // The content was stripped of HTML when it was sent, as on the server-rendered page.
+        content.innerHTML = ' ' + message.content;
+        list.appendChild(avatar);
+        list.appendChild(document.createTextNode(' '));
+        list.appendChild(author);
+        list.appendChild(content);
+        list.appendChild(document.createElement('br'));
+      }
+
+      function pollMessages() {
+        var request = new XMLHttpRequest();
+        request.onload = function() {
+          if (request.status == 410) {
+            location.reload();
+            return;
+          }
+          var delay = 3000;
+          if (request.status == 200) {
+            var result = JSON.parse(request.responseText);
+            result.messages.forEach(appendMessage);
+            if (result.messages.length > 0) {
+              scrollChat();
+            }
+            messagesCursor = result.cursor;
+            delay = result.hasMore ? 0 : delay;
+          }
+          setTimeout(pollMessages, delay);
+        };
+        request.onerror = function() {
+          setTimeout(pollMessages, 10000);
+        };
+        request.open('GET', '/api/chat/<%= conversation.getTitle() %>/messages?since='
+            + encodeURIComponent(messagesCursor));
+        request.send();
+      }
+      if (<%= chatEventStreaming %> && window.EventSource) {
+        var events = new EventSource('/api/chat-events/<%= conversation.getTitle() %>?since='
+            + encodeURIComponent(messagesCursor));
+        events.onmessage = function(event) {
+          appendMessage(JSON.parse(event.data));
+          scrollChat();
+        };
+        events.addEventListener('reset', function() {
+          events.close();
+          location.reload();
+        });
+      } else {
+        setTimeout(pollMessages, 3000);
+      }
+    </script>
+    <% } %>
+
     <hr/>
     <!-- should only fire if the conversation is a group conversation -->
     <% if (conversation.getIsGroup()) { %>
@@ -62,18 +62,48 @@ boolean isOwner = profileOwnerName.equals(request.getSession().getAttribute("use
     <h1><%= profileOwnerName %>'s Profile Page</h1>
     <hr>
 
-    <% if(profileOwner.getImageData().length == 0) { %>
-      <img src="https://www.idyllwildarts.org/wp-content/uploads/2016/09/blank-profile-picture.jpg" 
-       height = "200" width = "200"/>
-    <% } else { %>
-      <% String base64Image = profileOwner.getEncodedImage(); %>
-      <% if(base64Image != null) { %>
-      <%  String format = "data:image/*;base64, "; %>
-          <img src="<%= format + base64Image %>" alt="<%= profileOwnerName%>" />
-      <% } %>
-    <% } %>
+    <img id="profilePicture" src="/avatar/<%= profileOwnerId %>?size=200"
+     alt="<%= profileOwnerName %>" height="200" width="200" />
     <% if (isOwner) { %>
 
+      <% if ("tooLarge".equals(request.getParameter("pictureError"))) { %>
+        <p>That picture is too large. Please choose a smaller one.</p>
+      <% } %>
+
+      <%
+        // An upload is processed in the background; poll its job until the new picture is ready.
+        UUID pictureJobId = null;
+        try {
+          pictureJobId = UUID.fromString(request.getParameter("pictureJob"));
+        } catch (IllegalArgumentException | NullPointerException e) {
+          // No upload in progress.
+        }
+      %>
+      <% if (pictureJobId != null) { %>
+        <p id="pictureStatus">Processing your new picture...</p>
+        <script>
+          function pollPictureJob() {
+            var request = new XMLHttpRequest();
+            request.onload = function() {
+              var status = request.status == 200 ? JSON.parse(request.responseText).status : null;
+              var message = document.getElementById('pictureStatus');
+              if (status == 'PENDING') {
+                setTimeout(pollPictureJob, 1000);
+              } else if (status == 'DONE') {
+                message.textContent = 'Your new picture is ready.';
+                document.getElementById('profilePicture').src =
+                    '/avatar/<%= profileOwnerId %>?size=200&job=<%= pictureJobId %>';
+              } else {
+                message.textContent = 'That file could not be used as a picture.';
+              }
+            };
+            request.open('GET', '/picture-jobs/<%= pictureJobId %>');
+            request.send();
+          }
+          pollPictureJob();
+        </script>
+      <% } %>
+
       <h3> Update your Profile Picture: </h3>
       <form action ="/profile/<%= profileOwnerName%>" method = "POST" 
             enctype ="multipart/form-data">
@@ -114,9 +144,9 @@ boolean isOwner = profileOwnerName.equals(request.getSession().getAttribute("use
         <h2><%= profileOwnerName %>'s sent messages</h2>
         <div id="messages">
           <ul>
-        <% //This list contains messages written by the profile owner in order sorted by time
+        <% //This list contains the newest messages written by the profile owner, sorted by time
            List<Message> userMessages = 
-           MessageStore.getInstance().getMessagesByAuthor(profileOwnerId);
+           MessageStore.getInstance().getMessagesByAuthor(profileOwnerId, 100);
 
            ConversationStore conversationStore = ConversationStore.getInstance();
         %>
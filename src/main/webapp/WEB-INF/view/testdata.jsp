@@ -13,6 +13,7 @@
   See the License for the specific language governing permissions and
   limitations under the License.
 --%>
+<%@ page import="codeu.model.store.basic.DefaultDataStore" %>
 <!DOCTYPE html>
 <html>
 <head>
@@ -36,8 +37,22 @@
   <div id="container">
     <h1>Load Test Data</h1>
     <p>This will load a number of users, conversations, and messages for testing
-        purposes.</p>
+        purposes. With a seed, the messages are loaded in the background and keep
+        appearing for a while.</p>
     <form action="/testdata" method="POST">
+      <label for="users">Users</label>
+      <input type="number" id="users" name="users" min="1"
+          value="<%= DefaultDataStore.DEFAULT_USER_COUNT %>">
+      <label for="conversations">Conversations</label>
+      <input type="number" id="conversations" name="conversations" min="0"
+          value="<%= DefaultDataStore.DEFAULT_CONVERSATION_COUNT %>">
+      <label for="messages">Messages</label>
+      <input type="number" id="messages" name="messages" min="0"
+          value="<%= DefaultDataStore.DEFAULT_MESSAGE_COUNT %>">
+      <label for="seed">Seed</label>
+      <input type="number" id="seed" name="seed"
+          title="Leave empty for random data; set to generate the same data set every time.">
+      <br/>
       <button type="submit" value="confirm" name="confirm">Confirm</button>
       <button type="submit" value="cancel" name="cancel">Do Nothing</button>
     </form>
@@ -0,0 +1,110 @@
+package codeu.controller;
+
+import codeu.model.data.PictureSize;
+import codeu.model.store.basic.ProfilePictureStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class AvatarServletTest {
+
+  private AvatarServlet avatarServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ServletOutputStream mockOutputStream;
+  private ProfilePictureStore mockProfilePictureStore;
+
+  private final UUID USER_ID = UUID.randomUUID();
+  private final byte[] PICTURE = {1, 2, 3};
+
+  @Before
+  public void setup() throws IOException, PersistentDataStoreException {
+    avatarServlet = new AvatarServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockOutputStream = Mockito.mock(ServletOutputStream.class);
+    Mockito.when(mockResponse.getOutputStream()).thenReturn(mockOutputStream);
+
+    mockProfilePictureStore = Mockito.mock(ProfilePictureStore.class);
+    Mockito.when(mockProfilePictureStore.getProfilePicture(USER_ID, PictureSize.FULL))
+        .thenReturn(PICTURE);
+    Mockito.when(mockProfilePictureStore.getProfilePictureTag(USER_ID, PictureSize.FULL))
+        .thenReturn("abc");
+    avatarServlet.setProfilePictureStore(mockProfilePictureStore);
+
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/avatar/" + USER_ID);
+  }
+
+  @Test
+  public void testDoGet() throws IOException, ServletException {
+    avatarServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("ETag", "\"abc\"");
+    Mockito.verify(mockResponse).setHeader("Cache-Control", AvatarServlet.CACHE_CONTROL);
+    Mockito.verify(mockResponse).setContentType("image/png");
+    Mockito.verify(mockOutputStream).write(PICTURE);
+  }
+
+  @Test
+  public void testDoGet_chatSize() throws IOException, ServletException,
+      PersistentDataStoreException {
+    byte[] chatPicture = {4};
+    Mockito.when(mockRequest.getParameter("size")).thenReturn("40");
+    Mockito.when(mockProfilePictureStore.getProfilePicture(USER_ID, PictureSize.CHAT))
+        .thenReturn(chatPicture);
+    Mockito.when(mockProfilePictureStore.getProfilePictureTag(USER_ID, PictureSize.CHAT))
+        .thenReturn("def");
+
+    avatarServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("ETag", "\"def\"");
+    Mockito.verify(mockOutputStream).write(chatPicture);
+  }
+
+  @Test
+  public void testDoGet_badSize() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("size")).thenReturn("41");
+
+    avatarServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void testDoGet_notModified() throws IOException, ServletException {
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn("\"old\", \"abc\"");
+
+    avatarServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockOutputStream, Mockito.never()).write(Mockito.any(byte[].class));
+  }
+
+  @Test
+  public void testDoGet_noPicture() throws IOException, ServletException,
+      PersistentDataStoreException {
+    Mockito.when(mockProfilePictureStore.getProfilePicture(USER_ID, PictureSize.FULL))
+        .thenReturn(new byte[0]);
+
+    avatarServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendRedirect(AvatarServlet.BLANK_PICTURE_URL);
+  }
+
+  @Test
+  public void testDoGet_badId() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/avatar/not-a-uuid");
+
+    avatarServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+}
@@ -0,0 +1,184 @@
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ChatApiServletTest {
+
+  private static final String URI = "/api/chat/test_conversation/messages";
+
+  private ChatApiServlet chatApiServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ConversationStore mockConversationStore;
+  private MessageStore messageStore;
+  private UserStore mockUserStore;
+  private StringWriter responseBody;
+
+  private final UUID conversationId = UUID.randomUUID();
+  private final User author =
+      new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+  private Message firstMessage;
+  private Message secondMessage;
+
+  @Before
+  public void setup() throws IOException {
+    chatApiServlet = new ChatApiServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getRequestURI()).thenReturn(URI);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    responseBody = new StringWriter();
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+    mockConversationStore = Mockito.mock(ConversationStore.class);
+    Conversation conversation =
+        new Conversation(conversationId, author.getId(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(conversation);
+    chatApiServlet.setConversationStore(mockConversationStore);
+
+    mockUserStore = Mockito.mock(UserStore.class);
+    Mockito.when(mockUserStore.getUser(author.getId())).thenReturn(author);
+    chatApiServlet.setUserStore(mockUserStore);
+
+    firstMessage =
+        new Message(
+            UUID.randomUUID(), conversationId, author.getId(), "first", Instant.ofEpochMilli(1000));
+    secondMessage =
+        new Message(
+            UUID.randomUUID(),
+            conversationId,
+            author.getId(),
+            "say \"hi\"",
+            Instant.ofEpochMilli(2000));
+    List<Message> messages = new ArrayList<>();
+    messages.add(firstMessage);
+    messages.add(secondMessage);
+    messageStore = MessageStore.getTestInstance(Mockito.mock(PersistentStorageAgent.class));
+    messageStore.setMessages(messages);
+    chatApiServlet.setMessageStore(messageStore);
+  }
+
+  @Test
+  public void testDoGet_sinceMessageId() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("since")).thenReturn(firstMessage.getId().toString());
+
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setContentType("application/json");
+    Assert.assertEquals(
+        "{\"messages\": [{\"id\": \"" + secondMessage.getId() + "\", \"authorId\": \""
+            + author.getId() + "\", \"author\": \"test_username\", \"content\": \"say \\\"hi\\\"\","
+            + " \"creationTime\": \"1970-01-01T00:00:02Z\"}], \"cursor\": \""
+            + secondMessage.getId() + "\", \"hasMore\": false}",
+        responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_sinceInstant() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("since")).thenReturn("1970-01-01T00:00:00Z");
+
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    String body = responseBody.toString();
+    Assert.assertTrue(
+        body.indexOf(firstMessage.getId().toString()) < body.indexOf("\"content\": \"say"));
+    Assert.assertTrue(
+        body.endsWith("\"cursor\": \"" + secondMessage.getId() + "\", \"hasMore\": false}"));
+  }
+
+  @Test
+  public void testDoGet_nothingNew() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("since")).thenReturn(secondMessage.getId().toString());
+
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    Assert.assertEquals(
+        "{\"messages\": [], \"cursor\": \"" + secondMessage.getId() + "\", \"hasMore\": false}",
+        responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_noCursor() throws IOException, ServletException {
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    Assert.assertEquals(
+        "{\"messages\": [], \"cursor\": \"" + secondMessage.getId() + "\", \"hasMore\": false}",
+        responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_hasMore() throws IOException, ServletException {
+    List<Message> manyMessages = new ArrayList<>();
+    for (int i = 0; i < ChatApiServlet.MAX_MESSAGES_PER_POLL + 1; i++) {
+      manyMessages.add(
+          new Message(
+              UUID.randomUUID(),
+              conversationId,
+              author.getId(),
+              "message " + i,
+              Instant.ofEpochMilli(3000 + i)));
+    }
+    for (Message message : manyMessages) {
+      messageStore.addMessage(message);
+    }
+    Mockito.when(mockRequest.getParameter("since")).thenReturn(secondMessage.getId().toString());
+
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    String body = responseBody.toString();
+    Assert.assertTrue(
+        body.endsWith(
+            "\"cursor\": \"" + manyMessages.get(ChatApiServlet.MAX_MESSAGES_PER_POLL - 1).getId()
+                + "\", \"hasMore\": true}"));
+    Assert.assertFalse(
+        body.contains(manyMessages.get(manyMessages.size() - 1).getId().toString()));
+  }
+
+  @Test
+  public void testDoGet_unknownMessageId() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("since")).thenReturn(UUID.randomUUID().toString());
+
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_GONE);
+  }
+
+  @Test
+  public void testDoGet_badCursor() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("since")).thenReturn("yesterday");
+
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void testDoGet_unknownConversation() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/api/chat/bad_conversation/messages");
+
+    chatApiServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+}
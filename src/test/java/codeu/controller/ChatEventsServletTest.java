@@ -0,0 +1,266 @@
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.MetricsStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class ChatEventsServletTest {
+
+  private ChatEventsServlet chatEventsServlet;
+  private MessageStore messageStore;
+  private MetricsStore metricsStore;
+  private Server server;
+
+  private final UUID conversationId = UUID.randomUUID();
+  private final User author =
+      new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+  private Message firstMessage;
+  private Message secondMessage;
+
+  @Before
+  public void setup() {
+    chatEventsServlet =
+        new ChatEventsServlet() {
+          @Override
+          public void init() {
+            // The stores are set by the test.
+          }
+        };
+
+    ConversationStore mockConversationStore = Mockito.mock(ConversationStore.class);
+    Conversation conversation =
+        new Conversation(conversationId, author.getId(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(conversation);
+    chatEventsServlet.setConversationStore(mockConversationStore);
+
+    UserStore mockUserStore = Mockito.mock(UserStore.class);
+    Mockito.when(mockUserStore.getUser(author.getId())).thenReturn(author);
+    chatEventsServlet.setUserStore(mockUserStore);
+
+    metricsStore = MetricsStore.getTestInstance();
+    chatEventsServlet.setMetricsStore(metricsStore);
+
+    firstMessage = newMessage("first", 1000);
+    secondMessage = newMessage("second", 2000);
+    List<Message> messages = new ArrayList<>();
+    messages.add(firstMessage);
+    messages.add(secondMessage);
+    messageStore = MessageStore.getTestInstance(Mockito.mock(PersistentStorageAgent.class));
+    messageStore.setMessages(messages);
+    chatEventsServlet.setMessageStore(messageStore);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testStream_pushesNewMessages() throws Exception {
+    HttpURLConnection connection = connect("test_conversation", null);
+    Assert.assertEquals(200, connection.getResponseCode());
+    Assert.assertTrue(connection.getContentType().startsWith("text/event-stream"));
+    BufferedReader events = reader(connection);
+    Assert.assertEquals("retry: 1000", readEvent(events));
+
+    Message newMessage = newMessage("hello", 3000);
+    messageStore.addMessage(newMessage);
+
+    String event = readEvent(events);
+    Assert.assertTrue(event, event.startsWith("id: " + newMessage.getId() + "\ndata: {"));
+    Assert.assertTrue(event, event.contains("\"content\": \"hello\""));
+    Assert.assertTrue(event, event.contains("\"author\": \"test_username\""));
+    connection.disconnect();
+  }
+
+  @Test
+  public void testStream_replaysMissedMessages() throws Exception {
+    HttpURLConnection connection = connect("test_conversation", firstMessage.getId().toString());
+    BufferedReader events = reader(connection);
+
+    Assert.assertEquals("retry: 1000", readEvent(events));
+    Assert.assertTrue(readEvent(events).startsWith("id: " + secondMessage.getId() + "\n"));
+    connection.disconnect();
+  }
+
+  @Test
+  public void testStream_unknownCursor() throws Exception {
+    HttpURLConnection connection = connect("test_conversation", UUID.randomUUID().toString());
+    BufferedReader events = reader(connection);
+
+    Assert.assertEquals("retry: 1000", readEvent(events));
+    Assert.assertEquals("event: reset\ndata:", readEvent(events));
+    Assert.assertNull(events.readLine());
+    Assert.assertEquals(0, chatEventsServlet.getSubscriberCount());
+  }
+
+  @Test
+  public void testStream_unknownConversation() throws Exception {
+    HttpURLConnection connection = connect("bad_conversation", null);
+
+    Assert.assertEquals(404, connection.getResponseCode());
+  }
+
+  @Test
+  public void testStream_disabled() throws Exception {
+    chatEventsServlet.setEnabled(false);
+
+    HttpURLConnection connection = connect("test_conversation", null);
+
+    Assert.assertEquals(404, connection.getResponseCode());
+    Assert.assertEquals(0, chatEventsServlet.getSubscriberCount());
+  }
+
+  @Test
+  public void testSlowConsumerIsEvicted() throws Exception {
+    MockConnection connection = new MockConnection(false);
+
+    for (int i = 0; i < ChatEventsServlet.MAX_QUEUED_EVENTS; i++) {
+      messageStore.addMessage(newMessage("message " + i, 3000 + i));
+    }
+
+    Mockito.verify(connection.asyncContext).complete();
+    Assert.assertEquals(0, chatEventsServlet.getSubscriberCount());
+    Assert.assertEquals(1, metricsStore.getCount("chat-events.evicted"));
+    Mockito.verify(connection.out, Mockito.never()).write(Mockito.any(byte[].class));
+  }
+
+  @Test
+  public void testStalledConsumerIsEvicted() throws Exception {
+    MockConnection connection = new MockConnection(false);
+
+    chatEventsServlet.sweep(System.nanoTime());
+    Mockito.verify(connection.asyncContext, Mockito.never()).complete();
+
+    chatEventsServlet.sweep(
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ChatEventsServlet.STALL_MILLIS + 1000));
+
+    Mockito.verify(connection.asyncContext).complete();
+    Assert.assertEquals(1, metricsStore.getCount("chat-events.evicted"));
+  }
+
+  @Test
+  public void testHeartbeat() throws Exception {
+    MockConnection connection = new MockConnection(true);
+    connection.writeListener.getValue().onWritePossible();
+
+    chatEventsServlet.sweep(System.nanoTime());
+    Mockito.verify(connection.out, Mockito.times(1)).write(Mockito.any(byte[].class));
+
+    chatEventsServlet.sweep(
+        System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(ChatEventsServlet.HEARTBEAT_MILLIS + 1000));
+
+    Mockito.verify(connection.out)
+        .write(": heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+    Mockito.verify(connection.asyncContext, Mockito.never()).complete();
+    Assert.assertEquals(1, chatEventsServlet.getSubscriberCount());
+  }
+
+  /** A stream opened on mocks, whose output accepts writes only if ready is true. */
+  private class MockConnection {
+    private final AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+    private final ServletOutputStream out = Mockito.mock(ServletOutputStream.class);
+    private final ArgumentCaptor<WriteListener> writeListener =
+        ArgumentCaptor.forClass(WriteListener.class);
+
+    private MockConnection(boolean ready) throws Exception {
+      HttpServletRequest mockRequest = Mockito.mock(HttpServletRequest.class);
+      Mockito.when(mockRequest.getRequestURI()).thenReturn("/api/chat-events/test_conversation");
+      Mockito.when(mockRequest.startAsync()).thenReturn(asyncContext);
+      HttpServletResponse mockResponse = Mockito.mock(HttpServletResponse.class);
+      Mockito.when(mockResponse.getOutputStream()).thenReturn(out);
+      Mockito.when(out.isReady()).thenReturn(ready);
+
+      chatEventsServlet.doGet(mockRequest, mockResponse);
+
+      Mockito.verify(out).setWriteListener(writeListener.capture());
+    }
+  }
+
+  private Message newMessage(String content, long creationMillis) {
+    return new Message(
+        UUID.randomUUID(),
+        conversationId,
+        author.getId(),
+        content,
+        Instant.ofEpochMilli(creationMillis));
+  }
+
+  /** Starts a local servlet container serving the servlet under test, and opens a stream. */
+  private HttpURLConnection connect(String title, String lastEventId) throws Exception {
+    if (server == null) {
+      server = new Server();
+      ServerConnector connector = new ServerConnector(server);
+      connector.setHost("127.0.0.1");
+      server.addConnector(connector);
+      ServletContextHandler context = new ServletContextHandler();
+      ServletHolder holder = new ServletHolder(chatEventsServlet);
+      holder.setAsyncSupported(true);
+      context.addServlet(holder, "/api/chat-events/*");
+      server.setHandler(context);
+      server.start();
+    }
+    int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL("http://127.0.0.1:" + port + "/api/chat-events/" + title).openConnection();
+    connection.setReadTimeout(5000);
+    if (lastEventId != null) {
+      connection.setRequestProperty("Last-Event-ID", lastEventId);
+    }
+    return connection;
+  }
+
+  private BufferedReader reader(HttpURLConnection connection) throws IOException {
+    return new BufferedReader(
+        new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+  }
+
+  /** Reads the lines of the next event, up to the blank line that ends it. */
+  private String readEvent(BufferedReader events) throws IOException {
+    StringBuilder event = new StringBuilder();
+    String line;
+    while ((line = events.readLine()) != null && !line.isEmpty()) {
+      if (event.length() > 0) {
+        event.append('\n');
+      }
+      event.append(line);
+    }
+    return event.toString();
+  }
+}
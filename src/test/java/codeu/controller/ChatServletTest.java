@@ -16,9 +16,12 @@ package codeu.controller;
 
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
+import codeu.model.data.MessagePage;
 import codeu.model.data.User;
+import codeu.model.store.basic.AuthorViewStore;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.MetricsStore;
 import codeu.model.store.basic.UserStore;
 import java.io.IOException;
 import java.time.Instant;
@@ -70,9 +73,14 @@ public class ChatServletTest {
 
     mockUserStore = Mockito.mock(UserStore.class);
     chatServlet.setUserStore(mockUserStore);
+
+    chatServlet.setAuthorViewStore(AuthorViewStore.getTestInstance(mockUserStore));
+    chatServlet.setMessageFragmentCache(
+        new MessageFragmentCache(100, MetricsStore.getTestInstance()));
   }
 
   @Test
+  @SuppressWarnings("unchecked")
   public void testDoGet() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
 
@@ -82,24 +90,98 @@ public class ChatServletTest {
     Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
         .thenReturn(fakeConversation);
 
+    User fakeAuthor = new User(UUID.randomUUID(), "test_author", "password", Instant.now(), false);
+    Mockito.when(mockUserStore.getUser(fakeAuthor.getId())).thenReturn(fakeAuthor);
+
     List<Message> fakeMessageList = new ArrayList<>();
     fakeMessageList.add(
         new Message(
             UUID.randomUUID(),
             fakeConversationId,
-            UUID.randomUUID(),
+            fakeAuthor.getId(),
             "test message",
             Instant.now()));
-    Mockito.when(mockMessageStore.getMessagesInConversation(fakeConversationId))
-        .thenReturn(fakeMessageList);
+    Mockito.when(
+            mockMessageStore.getMessagesInConversation(
+                fakeConversationId, null, ChatServlet.DEFAULT_PAGE_SIZE))
+        .thenReturn(new MessagePage(fakeMessageList, null));
 
     chatServlet.doGet(mockRequest, mockResponse);
 
     Mockito.verify(mockRequest).setAttribute("conversation", fakeConversation);
     Mockito.verify(mockRequest).setAttribute("messages", fakeMessageList);
+    Mockito.verify(mockRequest).setAttribute("olderMessagesCursor", null);
+    Mockito.verify(mockRequest).setAttribute("chatEventStreaming", false);
+    ArgumentCaptor<List<String>> fragments = ArgumentCaptor.forClass(List.class);
+    Mockito.verify(mockRequest).setAttribute(Mockito.eq("messageFragments"), fragments.capture());
+    Assert.assertEquals(1, fragments.getValue().size());
+    Assert.assertTrue(
+        fragments.getValue().get(0).contains("<a href=\"/profile/test_author\">test_author:</a>"));
+    Assert.assertTrue(fragments.getValue().get(0).contains("test message"));
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoGet_olderPage() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+    Mockito.when(mockRequest.getParameter("before")).thenReturn("1970-01-01T00:00:05Z");
+    Mockito.when(mockRequest.getParameter("limit")).thenReturn("2");
+
+    UUID fakeConversationId = UUID.randomUUID();
+    Conversation fakeConversation =
+        new Conversation(fakeConversationId, UUID.randomUUID(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(fakeConversation);
+
+    List<Message> fakeMessageList = new ArrayList<>();
+    Instant fakeCursor = Instant.ofEpochSecond(3);
+    Mockito.when(
+            mockMessageStore.getMessagesInConversation(
+                fakeConversationId, Instant.ofEpochSecond(5), 2))
+        .thenReturn(new MessagePage(fakeMessageList, fakeCursor));
+
+    chatServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("messages", fakeMessageList);
+    Mockito.verify(mockRequest).setAttribute("olderMessagesCursor", fakeCursor);
     Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
   }
 
+  @Test
+  public void testDoGet_notModified() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+    UUID fakeConversationId = UUID.randomUUID();
+    Conversation fakeConversation =
+        new Conversation(fakeConversationId, UUID.randomUUID(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(fakeConversation);
+    Mockito.when(mockMessageStore.getConversationVersion(fakeConversationId)).thenReturn(1234L);
+    Mockito.when(
+            mockMessageStore.getMessagesInConversation(
+                fakeConversationId, null, ChatServlet.DEFAULT_PAGE_SIZE))
+        .thenReturn(new MessagePage(new ArrayList<>(), null));
+
+    chatServlet.doGet(mockRequest, mockResponse);
+
+    ArgumentCaptor<String> eTag = ArgumentCaptor.forClass(String.class);
+    Mockito.verify(mockResponse).setHeader(Mockito.eq("ETag"), eTag.capture());
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn(eTag.getValue());
+    chatServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockMessageStore, Mockito.times(1))
+        .getMessagesInConversation(fakeConversationId, null, ChatServlet.DEFAULT_PAGE_SIZE);
+    Mockito.verify(mockRequestDispatcher, Mockito.times(1)).forward(mockRequest, mockResponse);
+
+    // A new Message changes the version, so the page is built again.
+    Mockito.when(mockMessageStore.getConversationVersion(fakeConversationId)).thenReturn(1235L);
+    chatServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequestDispatcher, Mockito.times(2)).forward(mockRequest, mockResponse);
+  }
+
   @Test
   public void testDoGet_badConversation() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/bad_conversation");
@@ -174,6 +256,32 @@ public class ChatServletTest {
     Assert.assertEquals(fakeUser.getMessagesSent(), 1);
   }
 
+  @Test
+  public void testDoPost_AddsParticipant() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_group");
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
+
+    User fakeUser = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    User addedUser =
+        new User(UUID.randomUUID(), "added_username", "password", Instant.now(), false);
+    Mockito.when(mockUserStore.getUser("added_username")).thenReturn(addedUser);
+
+    Conversation fakeGroup =
+        new Conversation(UUID.randomUUID(), fakeUser.getId(), "test_group", Instant.now(), true);
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_group"))
+        .thenReturn(fakeGroup);
+
+    Mockito.when(mockRequest.getParameter("addedUser")).thenReturn("added_username");
+    Mockito.when(mockRequest.getParameter("message")).thenReturn("Welcome.");
+
+    chatServlet.doPost(mockRequest, mockResponse);
+
+    Assert.assertTrue(fakeGroup.participants.contains(addedUser.getId()));
+    Mockito.verify(mockMessageStore).conversationChanged(fakeGroup.getId());
+    Mockito.verify(mockConversationStore).participantsChanged();
+  }
+
   @Test
   public void testDoPost_CleansHtmlContent() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
@@ -206,11 +314,10 @@ public class ChatServletTest {
     Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     UUID userId = UUID.randomUUID();
-    byte[] imageData = new byte[0];
     Map<UUID, Boolean> conversationVisibilities = new HashMap();
 
     User fakeUser = new User(userId, "test_username","password", "", true, 15000, Instant.now(),
-                             true, true, imageData, conversationVisibilities);
+                             true, true, conversationVisibilities);
     
     Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
 
@@ -0,0 +1,90 @@
+package codeu.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ConditionalGetTest {
+
+  private static final String ETAG = ConditionalGet.eTag("test_username", 1234L, 5678L);
+
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+
+  @Before
+  public void setup() {
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+  }
+
+  @Test
+  public void testETag_differsByVersionAndUser() {
+    Assert.assertNotEquals(ETAG, ConditionalGet.eTag("test_username", 1235L, 5678L));
+    Assert.assertNotEquals(ETAG, ConditionalGet.eTag("test_username", 1234L, 5679L));
+    Assert.assertNotEquals(ETAG, ConditionalGet.eTag("other_username", 1234L, 5678L));
+    Assert.assertNotEquals(ETAG, ConditionalGet.eTag(null, 1234L, 5678L));
+    Assert.assertEquals(ETAG, ConditionalGet.eTag("test_username", 1234L, 5678L));
+  }
+
+  @Test
+  public void testIsNotModified_noConditionalHeaders() {
+    Assert.assertFalse(ConditionalGet.isNotModified(mockRequest, mockResponse, ETAG, 5678L));
+
+    Mockito.verify(mockResponse).setHeader("ETag", ETAG);
+    Mockito.verify(mockResponse).setDateHeader("Last-Modified", 5678L);
+    Mockito.verify(mockResponse).setHeader("Cache-Control", "private, no-cache");
+    Mockito.verify(mockResponse, Mockito.never()).setStatus(Mockito.anyInt());
+  }
+
+  @Test
+  public void testIsNotModified_matchingETag() {
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn("\"other\", " + ETAG);
+
+    Assert.assertTrue(ConditionalGet.isNotModified(mockRequest, mockResponse, ETAG, 5678L));
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+  }
+
+  @Test
+  public void testIsNotModified_matchingStrongETag() {
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn(ETAG.substring(2));
+
+    Assert.assertTrue(ConditionalGet.isNotModified(mockRequest, mockResponse, ETAG, 5678L));
+  }
+
+  @Test
+  public void testIsNotModified_staleETagIgnoresModifiedSince() {
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn("W/\"stale\"");
+    Mockito.when(mockRequest.getHeader("If-Modified-Since"))
+        .thenReturn("Thu, 01 Jan 1970 00:00:05 GMT");
+    Mockito.when(mockRequest.getDateHeader("If-Modified-Since")).thenReturn(10000L);
+
+    Assert.assertFalse(ConditionalGet.isNotModified(mockRequest, mockResponse, ETAG, 5678L));
+
+    Mockito.verify(mockResponse, Mockito.never()).setStatus(Mockito.anyInt());
+  }
+
+  @Test
+  public void testIsNotModified_modifiedSince() {
+    // HTTP dates have whole seconds, so a change within the same second is not newer.
+    Mockito.when(mockRequest.getHeader("If-Modified-Since"))
+        .thenReturn("Thu, 01 Jan 1970 00:00:05 GMT");
+    Mockito.when(mockRequest.getDateHeader("If-Modified-Since")).thenReturn(5000L);
+    Assert.assertTrue(ConditionalGet.isNotModified(mockRequest, mockResponse, ETAG, 5678L));
+
+    Mockito.when(mockRequest.getDateHeader("If-Modified-Since")).thenReturn(4000L);
+    Assert.assertFalse(ConditionalGet.isNotModified(mockRequest, mockResponse, ETAG, 5678L));
+  }
+
+  @Test
+  public void testIsNotModified_badModifiedSince() {
+    Mockito.when(mockRequest.getHeader("If-Modified-Since")).thenReturn("not a date");
+    Mockito.when(mockRequest.getDateHeader("If-Modified-Since"))
+        .thenThrow(new IllegalArgumentException());
+
+    Assert.assertFalse(ConditionalGet.isNotModified(mockRequest, mockResponse, ETAG, 5678L));
+  }
+}
@@ -77,6 +77,33 @@ public class ConversationServletTest {
     Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
   }
 
+  @Test
+  public void testDoGet_notModified() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
+    Mockito.when(mockConversationStore.getVersion()).thenReturn(1234L);
+    Mockito.when(mockRequest.getHeader("If-None-Match"))
+        .thenReturn(ConditionalGet.eTag("test_username", 1234L));
+
+    conversationServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockConversationStore, Mockito.never()).getAllNonGroupConversations();
+    Mockito.verify(mockRequestDispatcher, Mockito.never()).forward(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoGet_otherUser() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("other_username");
+    Mockito.when(mockConversationStore.getVersion()).thenReturn(1234L);
+    Mockito.when(mockRequest.getHeader("If-None-Match"))
+        .thenReturn(ConditionalGet.eTag("test_username", 1234L));
+
+    conversationServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse, Mockito.never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+  }
+
   @Test
   public void testDoPost_UserNotLoggedIn() throws IOException, ServletException {
     Mockito.when(mockSession.getAttribute("user")).thenReturn(null);
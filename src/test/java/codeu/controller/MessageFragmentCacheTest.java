@@ -0,0 +1,88 @@
+package codeu.controller;
+
+import codeu.model.data.AuthorView;
+import codeu.model.data.Message;
+import codeu.model.store.basic.MetricsStore;
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageFragmentCacheTest {
+
+  private MessageFragmentCache messageFragmentCache;
+  private MetricsStore metricsStore;
+
+  private final UUID AUTHOR_ID = UUID.randomUUID();
+  private final AuthorView AUTHOR =
+      new AuthorView(AUTHOR_ID, "test_author", "/avatar/a?size=40&v=1", "/profile/test_author", 1);
+  private final Message MESSAGE =
+      new Message(
+          UUID.randomUUID(), UUID.randomUUID(), AUTHOR_ID, "hello &amp; bye", Instant.now());
+
+  @Before
+  public void setup() {
+    metricsStore = MetricsStore.getTestInstance();
+    messageFragmentCache = new MessageFragmentCache(2, metricsStore);
+  }
+
+  @Test
+  public void testRender() {
+    Assert.assertEquals(
+        "<img src=\"/avatar/a?size=40&amp;v=1\" height=\"40\" width=\"40\" />\n"
+            + "<a href=\"/profile/test_author\">test_author:</a> hello &amp; bye\n<br/>\n",
+        MessageFragmentCache.render(MESSAGE, AUTHOR));
+  }
+
+  @Test
+  public void testRender_escapesAuthor() {
+    AuthorView author = new AuthorView(AUTHOR_ID, "<b>\"x\"</b>", "/avatar/a", null, 0);
+
+    Assert.assertEquals(
+        "<img src=\"/avatar/a\" height=\"40\" width=\"40\" />\n"
+            + "&lt;b&gt;&quot;x&quot;&lt;/b&gt;: hello &amp; bye\n<br/>\n",
+        MessageFragmentCache.render(MESSAGE, author));
+  }
+
+  @Test
+  public void testGetFragment_cachesFragments() {
+    String first = messageFragmentCache.getFragment(MESSAGE, AUTHOR);
+    String second = messageFragmentCache.getFragment(MESSAGE, AUTHOR);
+
+    Assert.assertSame(first, second);
+    Assert.assertEquals(1, metricsStore.getCount(MessageFragmentCache.MISSES));
+    Assert.assertEquals(1, metricsStore.getCount(MessageFragmentCache.HITS));
+  }
+
+  @Test
+  public void testGetFragment_rerendersNewAuthorVersion() {
+    messageFragmentCache.getFragment(MESSAGE, AUTHOR);
+    AuthorView updatedAuthor =
+        new AuthorView(
+            AUTHOR_ID, "test_author", "/avatar/a?size=40&v=2", "/profile/test_author", 2);
+
+    String fragment = messageFragmentCache.getFragment(MESSAGE, updatedAuthor);
+
+    Assert.assertTrue(fragment.contains("v=2"));
+    Assert.assertEquals(2, metricsStore.getCount(MessageFragmentCache.MISSES));
+  }
+
+  @Test
+  public void testGetFragment_evictsLeastRecentlyUsed() {
+    Message second =
+        new Message(UUID.randomUUID(), UUID.randomUUID(), AUTHOR_ID, "2", Instant.now());
+    Message third =
+        new Message(UUID.randomUUID(), UUID.randomUUID(), AUTHOR_ID, "3", Instant.now());
+
+    messageFragmentCache.getFragment(MESSAGE, AUTHOR);
+    messageFragmentCache.getFragment(second, AUTHOR);
+    messageFragmentCache.getFragment(MESSAGE, AUTHOR);
+    messageFragmentCache.getFragment(third, AUTHOR);
+    messageFragmentCache.getFragment(MESSAGE, AUTHOR);
+    messageFragmentCache.getFragment(second, AUTHOR);
+
+    Assert.assertEquals(2, metricsStore.getCount(MessageFragmentCache.HITS));
+    Assert.assertEquals(4, metricsStore.getCount(MessageFragmentCache.MISSES));
+  }
+}
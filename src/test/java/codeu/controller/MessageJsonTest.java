@@ -0,0 +1,33 @@
+package codeu.controller;
+
+import codeu.model.data.Message;
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageJsonTest {
+
+  @Test
+  public void testAppendMessage_unknownAuthor() {
+    UUID id = UUID.randomUUID();
+    UUID authorId = UUID.randomUUID();
+    Message message = new Message(id, UUID.randomUUID(), authorId, "hi", Instant.EPOCH);
+    StringBuilder json = new StringBuilder();
+
+    MessageJson.appendMessage(json, message, null);
+
+    Assert.assertEquals(
+        "{\"id\": \"" + id + "\", \"authorId\": \"" + authorId + "\", \"author\": null,"
+            + " \"content\": \"hi\", \"creationTime\": \"1970-01-01T00:00:00Z\"}",
+        json.toString());
+  }
+
+  @Test
+  public void testAppendString() {
+    StringBuilder json = new StringBuilder();
+    MessageJson.appendString(json, "a\\b\n\u2028\"");
+
+    Assert.assertEquals("\"a\\\\b\\n\\u2028\\\"\"", json.toString());
+  }
+}
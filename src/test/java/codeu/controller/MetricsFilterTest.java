@@ -0,0 +1,110 @@
+package codeu.controller;
+
+import codeu.model.store.basic.MetricsStore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class MetricsFilterTest {
+
+  private static final String LABELS = "{servlet=\"unknown\",route=\"/chat/*\"}";
+
+  private MetricsFilter metricsFilter;
+  private MetricsStore metricsStore;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private FilterChain mockChain;
+
+  @Before
+  public void setup() throws IOException {
+    metricsFilter = new MetricsFilter();
+    metricsStore = MetricsStore.getTestInstance();
+    metricsFilter.setMetricsStore(metricsStore);
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/chat");
+    Mockito.when(mockRequest.getPathInfo()).thenReturn("/test_conversation");
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+    mockChain = Mockito.mock(FilterChain.class);
+  }
+
+  @Test
+  public void testRoute() {
+    Assert.assertEquals("/chat/*", MetricsFilter.route(mockRequest));
+
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/conversations");
+    Mockito.when(mockRequest.getPathInfo()).thenReturn(null);
+    Assert.assertEquals("/conversations", MetricsFilter.route(mockRequest));
+  }
+
+  @Test
+  public void testDoFilter() throws IOException, ServletException {
+    Mockito.when(mockResponse.getStatus()).thenReturn(HttpServletResponse.SC_OK);
+    Mockito.doAnswer(invocation -> {
+      ServletResponse response = invocation.getArgument(1);
+      response.getWriter().write("héllo");
+      return null;
+    }).when(mockChain).doFilter(Mockito.any(), Mockito.any());
+
+    metricsFilter.doFilter(mockRequest, mockResponse, mockChain);
+
+    Assert.assertEquals(
+        1, metricsStore.getHistogram(MetricsFilter.DURATION + LABELS).getCount());
+    Assert.assertEquals(
+        6, metricsStore.getHistogram(MetricsFilter.RESPONSE_SIZE + LABELS).getTotal());
+    Assert.assertEquals(
+        1,
+        metricsStore.getCount(
+            "http.requests{servlet=\"unknown\",route=\"/chat/*\",status=\"2xx\"}"));
+    Assert.assertEquals(0, metricsStore.getCount(MetricsFilter.ERRORS + LABELS));
+  }
+
+  @Test
+  public void testDoFilter_serverError() throws IOException, ServletException {
+    Mockito.when(mockResponse.getStatus()).thenReturn(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+
+    metricsFilter.doFilter(mockRequest, mockResponse, mockChain);
+
+    Assert.assertEquals(
+        1,
+        metricsStore.getCount(
+            "http.requests{servlet=\"unknown\",route=\"/chat/*\",status=\"5xx\"}"));
+    Assert.assertEquals(1, metricsStore.getCount(MetricsFilter.ERRORS + LABELS));
+  }
+
+  @Test
+  public void testDoFilter_exception() throws IOException, ServletException {
+    Mockito.doThrow(new ServletException("failed"))
+        .when(mockChain)
+        .doFilter(Mockito.any(), Mockito.any());
+
+    try {
+      metricsFilter.doFilter(mockRequest, mockResponse, mockChain);
+      Assert.fail("Expected the exception to be rethrown.");
+    } catch (ServletException expected) {
+      // The filter only records the failure.
+    }
+
+    Assert.assertEquals(1, metricsStore.getCount(MetricsFilter.ERRORS + LABELS));
+    Assert.assertEquals(
+        1, metricsStore.getHistogram(MetricsFilter.DURATION + LABELS).getCount());
+  }
+
+  @Test
+  public void testUtf8Length() {
+    Assert.assertEquals(3, MetricsFilter.utf8Length("abc", 0, 3));
+    Assert.assertEquals(2, MetricsFilter.utf8Length("é", 0, 1));
+    Assert.assertEquals(3, MetricsFilter.utf8Length("€", 0, 1));
+    Assert.assertEquals(4, MetricsFilter.utf8Length("😀", 0, 2));
+  }
+}
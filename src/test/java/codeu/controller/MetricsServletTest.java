@@ -0,0 +1,106 @@
+package codeu.controller;
+
+import codeu.model.data.User;
+import codeu.model.store.basic.MetricsStore;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class MetricsServletTest {
+
+  private MetricsServlet metricsServlet;
+  private MetricsStore metricsStore;
+  private HttpServletRequest mockRequest;
+  private HttpSession mockSession;
+  private HttpServletResponse mockResponse;
+  private UserStore mockUserStore;
+  private StringWriter responseBody;
+
+  @Before
+  public void setup() throws IOException {
+    metricsServlet = new MetricsServlet();
+    metricsStore = MetricsStore.getTestInstance();
+    metricsServlet.setMetricsStore(metricsStore);
+    mockUserStore = Mockito.mock(UserStore.class);
+    metricsServlet.setUserStore(mockUserStore);
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockSession = Mockito.mock(HttpSession.class);
+    Mockito.when(mockRequest.getSession()).thenReturn(mockSession);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    responseBody = new StringWriter();
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+  }
+
+  @Test
+  public void testDoGet_notAdmin() throws IOException, ServletException {
+    User user = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
+    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(user);
+
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_FORBIDDEN);
+    Assert.assertEquals("", responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_loggedOut() throws IOException, ServletException {
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_FORBIDDEN);
+  }
+
+  @Test
+  public void testDoGet_admin() throws IOException, ServletException {
+    User admin = new User(UUID.randomUUID(), "test_admin", "password", Instant.now(), true);
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_admin");
+    Mockito.when(mockUserStore.getUser("test_admin")).thenReturn(admin);
+    metricsStore.increment("datastore-write.started");
+
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setContentType("text/plain; version=0.0.4; charset=utf-8");
+    Assert.assertTrue(
+        responseBody.toString().contains("chatapp_datastore_write_started_total 1\n"));
+  }
+
+  @Test
+  public void testRender() {
+    metricsStore.increment(MetricsStore.withLabels("http.requests", "route", "/chat/*"));
+    metricsStore.increment(MetricsStore.withLabels("http.requests", "route", "/conversations"));
+    metricsStore.recordTime("message-load", 20);
+    metricsStore.recordValue(MetricsStore.withLabels("http.response.size.bytes", "route", "/"), 5);
+
+    String text = MetricsServlet.render(metricsStore);
+
+    Assert.assertEquals(
+        "# TYPE chatapp_http_requests_total counter\n"
+            + "chatapp_http_requests_total{route=\"/chat/*\"} 1\n"
+            + "chatapp_http_requests_total{route=\"/conversations\"} 1\n"
+            + "# TYPE chatapp_http_response_size_bytes summary\n"
+            + "chatapp_http_response_size_bytes{route=\"/\",quantile=\"0.5\"} 5\n"
+            + "chatapp_http_response_size_bytes{route=\"/\",quantile=\"0.95\"} 5\n"
+            + "chatapp_http_response_size_bytes{route=\"/\",quantile=\"0.99\"} 5\n"
+            + "chatapp_http_response_size_bytes_sum{route=\"/\"} 5\n"
+            + "chatapp_http_response_size_bytes_count{route=\"/\"} 1\n"
+            + "# TYPE chatapp_message_load_milliseconds summary\n"
+            + "chatapp_message_load_milliseconds{quantile=\"0.5\"} 20\n"
+            + "chatapp_message_load_milliseconds{quantile=\"0.95\"} 20\n"
+            + "chatapp_message_load_milliseconds{quantile=\"0.99\"} 20\n"
+            + "chatapp_message_load_milliseconds_sum 20\n"
+            + "chatapp_message_load_milliseconds_count 1\n",
+        text);
+  }
+}
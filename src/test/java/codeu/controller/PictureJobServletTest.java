@@ -0,0 +1,62 @@
+package codeu.controller;
+
+import codeu.model.data.PictureJob;
+import codeu.model.store.basic.PictureJobStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class PictureJobServletTest {
+
+  private PictureJobServlet pictureJobServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private PictureJobStore mockPictureJobStore;
+  private StringWriter responseBody;
+
+  @Before
+  public void setup() throws IOException {
+    pictureJobServlet = new PictureJobServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    responseBody = new StringWriter();
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+    mockPictureJobStore = Mockito.mock(PictureJobStore.class);
+    pictureJobServlet.setPictureJobStore(mockPictureJobStore);
+  }
+
+  @Test
+  public void testDoGet() throws IOException, ServletException, PersistentDataStoreException {
+    PictureJob job =
+        new PictureJob(UUID.randomUUID(), UUID.randomUUID(), Instant.now(),
+                       PictureJob.Status.PENDING);
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/picture-jobs/" + job.getId());
+    Mockito.when(mockPictureJobStore.getJob(job.getId())).thenReturn(job);
+
+    pictureJobServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setContentType("application/json");
+    Assert.assertEquals("{\"status\": \"PENDING\"}", responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_unknownJob() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/picture-jobs/" + UUID.randomUUID());
+
+    pictureJobServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+}
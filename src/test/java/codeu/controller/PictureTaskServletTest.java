@@ -0,0 +1,102 @@
+package codeu.controller;
+
+import codeu.model.data.PictureJob;
+import codeu.model.data.PictureSize;
+import codeu.model.store.basic.AuthorViewStore;
+import codeu.model.store.basic.PictureJobStore;
+import codeu.model.store.basic.ProfilePictureStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.Transform;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class PictureTaskServletTest {
+
+  private PictureTaskServlet pictureTaskServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private PictureJobStore mockPictureJobStore;
+  private ProfilePictureStore mockProfilePictureStore;
+  private AuthorViewStore mockAuthorViewStore;
+  private ImagesService mockImagesService;
+
+  private final UUID USER_ID = UUID.randomUUID();
+  private PictureJob job;
+
+  @Before
+  public void setup() throws PersistentDataStoreException {
+    pictureTaskServlet = new PictureTaskServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+
+    mockPictureJobStore = Mockito.mock(PictureJobStore.class);
+    pictureTaskServlet.setPictureJobStore(mockPictureJobStore);
+    mockProfilePictureStore = Mockito.mock(ProfilePictureStore.class);
+    pictureTaskServlet.setProfilePictureStore(mockProfilePictureStore);
+    mockAuthorViewStore = Mockito.mock(AuthorViewStore.class);
+    pictureTaskServlet.setAuthorViewStore(mockAuthorViewStore);
+    mockImagesService = Mockito.mock(ImagesService.class);
+    pictureTaskServlet.setImagesService(mockImagesService);
+
+    job = new PictureJob(UUID.randomUUID(), USER_ID, Instant.now(), PictureJob.Status.PENDING);
+    Mockito.when(mockRequest.getParameter(PictureJobStore.JOB_PARAMETER))
+        .thenReturn(job.getId().toString());
+    Mockito.when(mockPictureJobStore.getJob(job.getId())).thenReturn(job);
+    Mockito.when(mockPictureJobStore.getUpload(job.getId())).thenReturn(new byte[] {1, 2, 3});
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDoPost() throws IOException, ServletException {
+    Image mockImage = Mockito.mock(Image.class);
+    Mockito.when(mockImage.getImageData()).thenReturn(new byte[] {4});
+    Mockito.when(mockImagesService.applyTransform(
+            Mockito.any(Transform.class), Mockito.any(Image.class)))
+        .thenReturn(mockImage);
+
+    pictureTaskServlet.doPost(mockRequest, mockResponse);
+
+    ArgumentCaptor<Map<PictureSize, byte[]>> pictures = ArgumentCaptor.forClass(Map.class);
+    Mockito.verify(mockProfilePictureStore).setProfilePictures(
+        Mockito.eq(USER_ID), pictures.capture());
+    Assert.assertEquals(PictureSize.values().length, pictures.getValue().size());
+    Mockito.verify(mockAuthorViewStore).profileUpdated(USER_ID);
+    Mockito.verify(mockPictureJobStore).finish(job, PictureJob.Status.DONE);
+  }
+
+  @Test
+  public void testDoPost_notAnImage() throws IOException, ServletException {
+    Mockito.when(mockImagesService.applyTransform(
+            Mockito.any(Transform.class), Mockito.any(Image.class)))
+        .thenThrow(new IllegalArgumentException("not an image"));
+
+    pictureTaskServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockPictureJobStore).finish(job, PictureJob.Status.FAILED);
+    Mockito.verifyZeroInteractions(mockProfilePictureStore);
+  }
+
+  @Test
+  public void testDoPost_alreadyFinished() throws IOException, ServletException {
+    job.setStatus(PictureJob.Status.DONE);
+
+    pictureTaskServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verifyZeroInteractions(mockImagesService, mockProfilePictureStore);
+    Mockito.verify(mockPictureJobStore, Mockito.never())
+        .finish(Mockito.any(PictureJob.class), Mockito.any(PictureJob.Status.class));
+  }
+}
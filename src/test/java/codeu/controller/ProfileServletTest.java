@@ -11,7 +11,12 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import java.util.UUID;
 import codeu.model.data.User;
+import codeu.model.data.PictureJob;
+import codeu.model.store.basic.MetricsStore;
+import codeu.model.store.basic.PictureJobStore;
 import codeu.model.store.basic.UserStore;
+import java.io.ByteArrayInputStream;
+import javax.servlet.http.Part;
 import java.time.Instant;
 import org.junit.Assert;
 
@@ -22,6 +27,8 @@ public class ProfileServletTest {
   private HttpSession mockSession;
   private RequestDispatcher mockRequestDispatcher; 
   private UserStore mockUserStore; 
+  private PictureJobStore mockPictureJobStore;
+  private MetricsStore metricsStore;
 
   @Before
   public void setup() throws IOException {
@@ -38,6 +45,12 @@ public class ProfileServletTest {
 
     mockUserStore = Mockito.mock(UserStore.class);
     profileServlet.setUserStore(mockUserStore);
+
+    mockPictureJobStore = Mockito.mock(PictureJobStore.class);
+    profileServlet.setPictureJobStore(mockPictureJobStore);
+
+    metricsStore = MetricsStore.getTestInstance();
+    profileServlet.setMetricsStore(metricsStore);
   }
 
   @Test
@@ -98,4 +111,85 @@ public class ProfileServletTest {
     Assert.assertEquals(fakeUser.getAbout(), "Hi! I'm test_user!");
     Mockito.verify(mockResponse).sendRedirect("/profile/test_user");
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testDoPost_picture() throws IOException, ServletException {
+    User fakeUser = givenPictureUpload(new byte[] {1, 2, 3});
+    PictureJob job =
+        new PictureJob(UUID.randomUUID(), fakeUser.getId(), Instant.now(),
+                       PictureJob.Status.PENDING);
+    Mockito.when(mockPictureJobStore.submit(
+            Mockito.eq(fakeUser.getId()), Mockito.any(byte[].class)))
+        .thenReturn(job);
+
+    profileServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockPictureJobStore).submit(fakeUser.getId(), new byte[] {1, 2, 3});
+    Mockito.verify(mockResponse).sendRedirect("/profile/test_user?pictureJob=" + job.getId());
+    Assert.assertEquals(1, metricsStore.getCount("picture-upload.count"));
+    Assert.assertEquals(3, metricsStore.getCount("picture-upload.bytes"));
+  }
+
+  @Test
+  public void testDoPost_pictureLargerThanDeclared() throws IOException, ServletException {
+    profileServlet.setUploadReader(new UploadReader(2, 1));
+    givenPictureUpload(new byte[] {1, 2, 3}, 1);
+
+    profileServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verifyZeroInteractions(mockPictureJobStore);
+    Mockito.verify(mockResponse).sendRedirect("/profile/test_user?pictureError=tooLarge");
+    Assert.assertEquals(1, metricsStore.getCount("picture-upload.rejected"));
+  }
+
+  @Test
+  public void testMaxUploadBytes() {
+    Assert.assertEquals(PictureJobStore.MAX_UPLOAD_BYTES, ProfileServlet.maxUploadBytes(null));
+    Assert.assertEquals(1000, ProfileServlet.maxUploadBytes("1000"));
+    Assert.assertEquals(
+        PictureJobStore.MAX_UPLOAD_BYTES, ProfileServlet.maxUploadBytes("999999999"));
+    Assert.assertEquals(PictureJobStore.MAX_UPLOAD_BYTES, ProfileServlet.maxUploadBytes("big"));
+  }
+
+  @Test
+  public void testDoPost_pictureTooLarge() throws IOException, ServletException {
+    givenPictureUpload(new byte[PictureJobStore.MAX_UPLOAD_BYTES + 1]);
+
+    profileServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verifyZeroInteractions(mockPictureJobStore);
+    Mockito.verify(mockResponse).sendRedirect("/profile/test_user?pictureError=tooLarge");
+  }
+
+  @Test
+  public void testDoPost_pictureRejectedByContainer() throws IOException, ServletException {
+    givenPictureUpload(new byte[0]);
+    Mockito.when(mockRequest.getPart("picture"))
+        .thenThrow(new IllegalStateException("Multipart Mime part picture exceeds max filesize"));
+
+    profileServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verifyZeroInteractions(mockPictureJobStore);
+    Mockito.verify(mockResponse).sendRedirect("/profile/test_user?pictureError=tooLarge");
+    Assert.assertEquals(1, metricsStore.getCount("picture-upload.rejected"));
+  }
+
+  private User givenPictureUpload(byte[] upload) throws IOException, ServletException {
+    return givenPictureUpload(upload, upload.length);
+  }
+
+  private User givenPictureUpload(byte[] upload, long declaredSize)
+      throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/profile/test_user");
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_user");
+    User fakeUser = new User(UUID.randomUUID(), "test_user", "password", Instant.now(), false);
+    Mockito.when(mockUserStore.getUser("test_user")).thenReturn(fakeUser);
+
+    Part mockPart = Mockito.mock(Part.class);
+    Mockito.when(mockPart.getSize()).thenReturn(declaredSize);
+    Mockito.when(mockPart.getInputStream()).thenReturn(new ByteArrayInputStream(upload));
+    Mockito.when(mockRequest.getContentType()).thenReturn("multipart/form-data; boundary=x");
+    Mockito.when(mockRequest.getPart("picture")).thenReturn(mockPart);
+    return fakeUser;
+  }
+}
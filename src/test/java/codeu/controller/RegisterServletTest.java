@@ -59,6 +59,7 @@ public class RegisterServletTest {
 
     UserStore mockUserStore = Mockito.mock(UserStore.class);
     Mockito.when(mockUserStore.isUserRegistered("test username")).thenReturn(false);
+    Mockito.when(mockUserStore.addUser(Mockito.any(User.class))).thenReturn(true);
     registerServlet.setUserStore(mockUserStore);
 
     HttpSession mockSession = Mockito.mock(HttpSession.class);
@@ -88,4 +89,20 @@ public class RegisterServletTest {
      Mockito.verify(mockRequest).setAttribute("error", "That username is already taken.");
      Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
    }
+
+  @Test
+  public void testDoPost_UserRegisteredConcurrently() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("username")).thenReturn("test username");
+
+    UserStore mockUserStore = Mockito.mock(UserStore.class);
+    Mockito.when(mockUserStore.isUserRegistered("test username")).thenReturn(false);
+    Mockito.when(mockUserStore.addUser(Mockito.any(User.class))).thenReturn(false);
+    registerServlet.setUserStore(mockUserStore);
+
+    registerServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("error", "That username is already taken.");
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+    Mockito.verify(mockResponse, Mockito.never()).sendRedirect("/login");
+  }
 }
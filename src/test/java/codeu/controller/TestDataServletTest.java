@@ -17,14 +17,19 @@ package codeu.controller;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.TaskOptions;
 import java.io.IOException;
+import java.util.List;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 public class TestDataServletTest {
@@ -37,6 +42,7 @@ public class TestDataServletTest {
   private ConversationStore mockConversationStore;
   private MessageStore mockMessageStore;
   private UserStore mockUserStore;
+  private Queue mockWorkloadQueue;
 
   @Before
   public void setup() {
@@ -59,6 +65,9 @@ public class TestDataServletTest {
 
     mockUserStore = Mockito.mock(UserStore.class);
     testDataServlet.setUserStore(mockUserStore);
+
+    mockWorkloadQueue = Mockito.mock(Queue.class);
+    testDataServlet.setWorkloadQueue(mockWorkloadQueue);
   }
 
   @Test
@@ -80,6 +89,70 @@ public class TestDataServletTest {
     Mockito.verify(mockResponse).sendRedirect("/");
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDoPost_Seeded() throws Exception {
+    int batchesPerTask = WorkloadTaskServlet.BATCHES_PER_TASK;
+    Mockito.when(mockRequest.getParameter("confirm")).thenReturn("confirm");
+    Mockito.when(mockRequest.getParameter("users")).thenReturn("10");
+    Mockito.when(mockRequest.getParameter("conversations")).thenReturn("3");
+    Mockito.when(mockRequest.getParameter("messages"))
+        .thenReturn(String.valueOf(WorkloadTaskServlet.BATCH_SIZE * batchesPerTask + 1));
+    Mockito.when(mockRequest.getParameter("seed")).thenReturn("42");
+
+    testDataServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockUserStore).addUsers(Mockito.argThat(users -> users.size() == 10));
+    Mockito.verify(mockConversationStore)
+        .addConversations(Mockito.argThat(conversations -> conversations.size() == 3));
+    ArgumentCaptor<List<TaskOptions>> tasks = ArgumentCaptor.forClass(List.class);
+    Mockito.verify(mockWorkloadQueue).add(tasks.capture());
+    Assert.assertEquals(2, tasks.getValue().size());
+    Assert.assertEquals(
+        String.valueOf(batchesPerTask),
+        tasks.getValue().get(1).getStringParams().get("firstBatch").get(0));
+    Assert.assertEquals(
+        String.valueOf(batchesPerTask + 1),
+        tasks.getValue().get(1).getStringParams().get("lastBatch").get(0));
+    Mockito.verify(mockMessageStore, Mockito.never()).addMessages(Mockito.anyList());
+    Mockito.verify(mockUserStore, Mockito.never()).loadTestData();
+    Mockito.verify(mockResponse).sendRedirect("/");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDoPost_SeededTasksAddedInChunks() throws Exception {
+    int messagesPerTask = WorkloadTaskServlet.BATCH_SIZE * WorkloadTaskServlet.BATCHES_PER_TASK;
+    Mockito.when(mockRequest.getParameter("confirm")).thenReturn("confirm");
+    Mockito.when(mockRequest.getParameter("users")).thenReturn("1");
+    Mockito.when(mockRequest.getParameter("conversations")).thenReturn("1");
+    Mockito.when(mockRequest.getParameter("messages"))
+        .thenReturn(String.valueOf((TestDataServlet.MAX_TASKS_PER_ADD + 1) * messagesPerTask));
+    Mockito.when(mockRequest.getParameter("seed")).thenReturn("42");
+
+    testDataServlet.doPost(mockRequest, mockResponse);
+
+    ArgumentCaptor<List<TaskOptions>> tasks = ArgumentCaptor.forClass(List.class);
+    Mockito.verify(mockWorkloadQueue, Mockito.times(2)).add(tasks.capture());
+    Assert.assertEquals(TestDataServlet.MAX_TASKS_PER_ADD, tasks.getAllValues().get(0).size());
+    Assert.assertEquals(1, tasks.getAllValues().get(1).size());
+  }
+
+  @Test
+  public void testDoPost_InvalidCounts() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("confirm")).thenReturn("confirm");
+    Mockito.when(mockRequest.getParameter("users")).thenReturn("0");
+    Mockito.when(mockRequest.getParameter("conversations")).thenReturn("10");
+    Mockito.when(mockRequest.getParameter("messages")).thenReturn("many");
+
+    testDataServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse)
+        .sendError(Mockito.eq(HttpServletResponse.SC_BAD_REQUEST), Mockito.anyString());
+    Mockito.verify(mockUserStore, Mockito.never()).loadTestData();
+    Mockito.verify(mockMessageStore, Mockito.never()).loadTestData();
+  }
+
   @Test
   public void testDoPost_Cancel() throws IOException, ServletException {
     Mockito.when(mockRequest.getParameter("confirm")).thenReturn(null);
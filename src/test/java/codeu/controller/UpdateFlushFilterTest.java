@@ -0,0 +1,58 @@
+package codeu.controller;
+
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+public class UpdateFlushFilterTest {
+
+  private UpdateFlushFilter updateFlushFilter;
+  private PersistentStorageAgent mockPersistentStorageAgent;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private FilterChain mockChain;
+
+  @Before
+  public void setup() {
+    updateFlushFilter = new UpdateFlushFilter();
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    updateFlushFilter.setPersistentStorageAgent(mockPersistentStorageAgent);
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockChain = Mockito.mock(FilterChain.class);
+  }
+
+  @Test
+  public void testDoFilter_flushesAfterRequest() throws IOException, ServletException {
+    updateFlushFilter.doFilter(mockRequest, mockResponse, mockChain);
+
+    InOrder inOrder = Mockito.inOrder(mockChain, mockPersistentStorageAgent);
+    inOrder.verify(mockChain).doFilter(mockRequest, mockResponse);
+    inOrder.verify(mockPersistentStorageAgent).flushUpdatesIfOverdue();
+  }
+
+  @Test
+  public void testDoFilter_flushesAfterFailedRequest() throws IOException, ServletException {
+    Mockito.doThrow(new ServletException("failed"))
+        .when(mockChain)
+        .doFilter(mockRequest, mockResponse);
+
+    try {
+      updateFlushFilter.doFilter(mockRequest, mockResponse, mockChain);
+      Assert.fail("Expected the request's exception");
+    } catch (ServletException e) {
+      Assert.assertEquals("failed", e.getMessage());
+    }
+
+    Mockito.verify(mockPersistentStorageAgent).flushUpdatesIfOverdue();
+  }
+}
@@ -0,0 +1,66 @@
+package codeu.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UploadReaderTest {
+
+  @Test
+  public void testRead_underLimit() throws IOException {
+    UploadReader uploadReader = new UploadReader(10, 1);
+
+    byte[] result = uploadReader.read(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+
+    Assert.assertArrayEquals(new byte[] {1, 2, 3}, result);
+  }
+
+  @Test
+  public void testRead_exactlyAtLimit() throws IOException {
+    UploadReader uploadReader = new UploadReader(3, 1);
+
+    byte[] result = uploadReader.read(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+
+    Assert.assertArrayEquals(new byte[] {1, 2, 3}, result);
+  }
+
+  @Test
+  public void testRead_overLimit() throws IOException {
+    UploadReader uploadReader = new UploadReader(2, 1);
+
+    Assert.assertNull(uploadReader.read(new ByteArrayInputStream(new byte[] {1, 2, 3})));
+  }
+
+  @Test
+  public void testRead_manyChunks() throws IOException {
+    int size = UploadReader.CHUNK_SIZE * 3 + 5;
+    byte[] upload = new byte[size];
+    for (int i = 0; i < size; i++) {
+      upload[i] = (byte) i;
+    }
+    UploadReader uploadReader = new UploadReader(size, 1);
+
+    // Return one byte per read, as a slow network stream might.
+    InputStream tricklingStream =
+        new ByteArrayInputStream(upload) {
+          @Override
+          public synchronized int read(byte[] buffer, int offset, int length) {
+            return super.read(buffer, offset, Math.min(length, 1));
+          }
+        };
+
+    Assert.assertArrayEquals(upload, uploadReader.read(tricklingStream));
+  }
+
+  @Test
+  public void testRead_reusesBufferWithoutLeakingData() throws IOException {
+    UploadReader uploadReader = new UploadReader(10, 1);
+
+    uploadReader.read(new ByteArrayInputStream(new byte[] {9, 9, 9, 9, 9}));
+    byte[] result = uploadReader.read(new ByteArrayInputStream(new byte[] {1, 2}));
+
+    Assert.assertArrayEquals(new byte[] {1, 2}, result);
+  }
+}
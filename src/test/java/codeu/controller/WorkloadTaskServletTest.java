@@ -0,0 +1,105 @@
+package codeu.controller;
+
+import codeu.model.data.Message;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.basic.WorkloadGenerator;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class WorkloadTaskServletTest {
+
+  private static final int MESSAGE_COUNT = WorkloadTaskServlet.BATCH_SIZE * 3 + 7;
+
+  private WorkloadTaskServlet workloadTaskServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ConversationStore mockConversationStore;
+  private MessageStore mockMessageStore;
+  private UserStore mockUserStore;
+
+  @Before
+  public void setup() {
+    workloadTaskServlet = new WorkloadTaskServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+
+    mockConversationStore = Mockito.mock(ConversationStore.class);
+    workloadTaskServlet.setConversationStore(mockConversationStore);
+    mockMessageStore = Mockito.mock(MessageStore.class);
+    workloadTaskServlet.setMessageStore(mockMessageStore);
+    mockUserStore = Mockito.mock(UserStore.class);
+    workloadTaskServlet.setUserStore(mockUserStore);
+
+    Mockito.when(mockRequest.getParameter("seed")).thenReturn("42");
+    Mockito.when(mockRequest.getParameter("users")).thenReturn("10");
+    Mockito.when(mockRequest.getParameter("conversations")).thenReturn("3");
+    Mockito.when(mockRequest.getParameter("messages")).thenReturn(String.valueOf(MESSAGE_COUNT));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDoPost_storesItsBatches() throws Exception {
+    Mockito.when(mockRequest.getParameter("firstBatch")).thenReturn("2");
+    Mockito.when(mockRequest.getParameter("lastBatch")).thenReturn("4");
+
+    workloadTaskServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockUserStore).addUsers(Mockito.argThat(users -> users.size() == 10));
+    Mockito.verify(mockConversationStore)
+        .addConversations(Mockito.argThat(conversations -> conversations.size() == 3));
+    ArgumentCaptor<List<Message>> batches = ArgumentCaptor.forClass(List.class);
+    Mockito.verify(mockMessageStore, Mockito.times(2)).addMessages(batches.capture());
+
+    List<Message> expected = new ArrayList<>();
+    Iterator<List<Message>> allBatches =
+        new WorkloadGenerator(42, 10, 3, MESSAGE_COUNT)
+            .messageBatches(WorkloadTaskServlet.BATCH_SIZE);
+    for (int i = 0; allBatches.hasNext(); i++) {
+      List<Message> batch = allBatches.next();
+      if (i >= 2) {
+        expected.addAll(batch);
+      }
+    }
+    List<Message> stored = new ArrayList<>();
+    batches.getAllValues().forEach(stored::addAll);
+    Assert.assertEquals(expected.size(), stored.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).getId(), stored.get(i).getId());
+    }
+  }
+
+  @Test
+  public void testDoPost_invalidParameters() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("firstBatch")).thenReturn("-1");
+    Mockito.when(mockRequest.getParameter("lastBatch")).thenReturn("x");
+
+    workloadTaskServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verifyZeroInteractions(mockUserStore, mockConversationStore, mockMessageStore);
+  }
+
+  @Test(expected = ServletException.class)
+  public void testDoPost_datastoreFailure() throws Exception {
+    Mockito.when(mockRequest.getParameter("firstBatch")).thenReturn("0");
+    Mockito.when(mockRequest.getParameter("lastBatch")).thenReturn("1");
+    Mockito.doThrow(new PersistentDataStoreException(new Exception()))
+        .when(mockMessageStore)
+        .addMessages(Mockito.anyList());
+
+    workloadTaskServlet.doPost(mockRequest, mockResponse);
+  }
+}
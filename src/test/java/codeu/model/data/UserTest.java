@@ -56,11 +56,10 @@ public class UserTest {
     boolean isAdmin = false;
     boolean allowMessageDel = false;
     int messagesSent = 10;
-    byte[] imageData = new byte[0];
     Map<UUID, Boolean> conversationVisibilities = new HashMap();
 
     User user = new User(id, name, password, about, allowMessageDel, messagesSent, creation,
-                         showAllConvs, isAdmin, imageData, conversationVisibilities);
+                         showAllConvs, isAdmin, conversationVisibilities);
 
     Assert.assertEquals(id, user.getId());
     Assert.assertEquals(name, user.getName());
@@ -0,0 +1,95 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.AuthorView;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class AuthorViewStoreTest {
+
+  private AuthorViewStore authorViewStore;
+  private UserStore mockUserStore;
+
+  private final User USER_ONE =
+      new User(UUID.randomUUID(), "test_username_one", "password", Instant.now(), false);
+  private final User USER_TWO =
+      new User(UUID.randomUUID(), "test_username_two", "password", Instant.now(), false);
+
+  @Before
+  public void setup() {
+    mockUserStore = Mockito.mock(UserStore.class);
+    Mockito.when(mockUserStore.getUser(USER_ONE.getId())).thenReturn(USER_ONE);
+    Mockito.when(mockUserStore.getUser(USER_TWO.getId())).thenReturn(USER_TWO);
+    authorViewStore = AuthorViewStore.getTestInstance(mockUserStore);
+  }
+
+  @Test
+  public void testGetAuthorView() {
+    AuthorView author = authorViewStore.getAuthorView(USER_ONE.getId());
+
+    Assert.assertEquals(USER_ONE.getId(), author.getId());
+    Assert.assertEquals("test_username_one", author.getName());
+    Assert.assertEquals("/profile/test_username_one", author.getProfileUrl());
+    Assert.assertTrue(
+        author.getAvatarUrl().startsWith("/avatar/" + USER_ONE.getId() + "?size=40&v="));
+    Assert.assertSame(author, authorViewStore.getAuthorView(USER_ONE.getId()));
+  }
+
+  @Test
+  public void testGetAuthorView_unknownUser() {
+    UUID unknownId = UUID.randomUUID();
+
+    AuthorView author = authorViewStore.getAuthorView(unknownId);
+
+    Assert.assertEquals(AuthorViewStore.UNKNOWN_AUTHOR_NAME, author.getName());
+    Assert.assertNull(author.getProfileUrl());
+  }
+
+  @Test
+  public void testGetAuthorViews_looksUpEachAuthorOnce() {
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      User author = i % 2 == 0 ? USER_ONE : USER_TWO;
+      messages.add(
+          new Message(UUID.randomUUID(), UUID.randomUUID(), author.getId(), "hi", Instant.now()));
+    }
+
+    Map<UUID, AuthorView> authors = authorViewStore.getAuthorViews(messages);
+    authorViewStore.getAuthorViews(messages);
+
+    Assert.assertEquals(2, authors.size());
+    Assert.assertEquals("test_username_two", authors.get(USER_TWO.getId()).getName());
+    Mockito.verify(mockUserStore, Mockito.times(1)).getUser(USER_ONE.getId());
+    Mockito.verify(mockUserStore, Mockito.times(1)).getUser(USER_TWO.getId());
+  }
+
+  @Test
+  public void testProfileUpdated() {
+    AuthorView before = authorViewStore.getAuthorView(USER_ONE.getId());
+
+    authorViewStore.profileUpdated(USER_ONE.getId());
+    AuthorView after = authorViewStore.getAuthorView(USER_ONE.getId());
+
+    Assert.assertTrue(after.getVersion() > before.getVersion());
+    Assert.assertNotEquals(before.getAvatarUrl(), after.getAvatarUrl());
+  }
+
+  @Test
+  public void testGetProfileVersion() {
+    long before = authorViewStore.getProfileVersion();
+
+    authorViewStore.getAuthorView(USER_ONE.getId());
+    Assert.assertEquals(before, authorViewStore.getProfileVersion());
+
+    authorViewStore.profileUpdated(USER_ONE.getId());
+    Assert.assertTrue(authorViewStore.getProfileVersion() > before);
+  }
+}
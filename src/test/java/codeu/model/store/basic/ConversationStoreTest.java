@@ -1,11 +1,18 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Conversation;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -64,7 +71,7 @@ public class ConversationStoreTest {
     Conversation inputConversation =
         new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
 
-    conversationStore.addConversation(inputConversation);
+    Assert.assertTrue(conversationStore.addConversation(inputConversation));
     Conversation resultConversation =
         conversationStore.getConversationWithTitle("test_conversation");
 
@@ -72,6 +79,88 @@ public class ConversationStoreTest {
     Mockito.verify(mockPersistentStorageAgent).writeThrough(inputConversation);
   }
 
+  @Test
+  public void testAddConversation_titleTaken() {
+    Conversation inputConversation =
+        new Conversation(
+            UUID.randomUUID(), UUID.randomUUID(), CONVERSATION_ONE.getTitle(), Instant.now());
+
+    Assert.assertFalse(conversationStore.addConversation(inputConversation));
+
+    assertEquals(
+        CONVERSATION_ONE, conversationStore.getConversationWithTitle(CONVERSATION_ONE.getTitle()));
+    Assert.assertNull(conversationStore.getConversationById(inputConversation.getId()));
+    Assert.assertEquals(1, conversationStore.getNumConversations());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never()).writeThrough(inputConversation);
+  }
+
+  @Test
+  public void testAddConversations_skipsKnownIds() throws PersistentDataStoreException {
+    Conversation inputConversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
+
+    conversationStore.addConversations(Arrays.asList(CONVERSATION_ONE, inputConversation));
+    long version = conversationStore.getVersion();
+    conversationStore.addConversations(Arrays.asList(CONVERSATION_ONE, inputConversation));
+
+    assertEquals(
+        inputConversation, conversationStore.getConversationById(inputConversation.getId()));
+    Assert.assertEquals(2, conversationStore.getNumConversations());
+    Assert.assertEquals(version, conversationStore.getVersion());
+    Mockito.verify(mockPersistentStorageAgent)
+        .writeConversations(Collections.singletonList(inputConversation));
+    Mockito.verifyNoMoreInteractions(mockPersistentStorageAgent);
+  }
+
+  @Test
+  public void testAddConversations_skipsTakenTitles() throws PersistentDataStoreException {
+    Conversation sameTitle =
+        new Conversation(
+            UUID.randomUUID(), UUID.randomUUID(), CONVERSATION_ONE.getTitle(), Instant.now());
+    Conversation inputConversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
+
+    conversationStore.addConversations(Arrays.asList(sameTitle, inputConversation));
+
+    assertEquals(
+        CONVERSATION_ONE, conversationStore.getConversationWithTitle(CONVERSATION_ONE.getTitle()));
+    Assert.assertNull(conversationStore.getConversationById(sameTitle.getId()));
+    Assert.assertEquals(2, conversationStore.getNumConversations());
+    Mockito.verify(mockPersistentStorageAgent)
+        .writeConversations(Collections.singletonList(inputConversation));
+  }
+
+  @Test
+  public void testAddConversations_allTitlesTaken() throws PersistentDataStoreException {
+    long initialVersion = conversationStore.getVersion();
+    Conversation sameTitle =
+        new Conversation(
+            UUID.randomUUID(), UUID.randomUUID(), CONVERSATION_ONE.getTitle(), Instant.now());
+
+    conversationStore.addConversations(Collections.singletonList(sameTitle));
+
+    Assert.assertEquals(initialVersion, conversationStore.getVersion());
+    Assert.assertEquals(1, conversationStore.getNumConversations());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .writeConversations(Mockito.anyList());
+  }
+
+  @Test
+  public void testGetVersion() {
+    long initialVersion = conversationStore.getVersion();
+
+    conversationStore.addConversation(
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now()));
+    long addedVersion = conversationStore.getVersion();
+    Assert.assertTrue(addedVersion > initialVersion);
+
+    conversationStore.getConversationWithTitle("test_conversation");
+    Assert.assertEquals(addedVersion, conversationStore.getVersion());
+
+    conversationStore.participantsChanged();
+    Assert.assertTrue(conversationStore.getVersion() > addedVersion);
+  }
+
   @Test
   public void testGetConversationById() {
     UUID conversationId = UUID.randomUUID();
@@ -84,6 +173,71 @@ public class ConversationStoreTest {
     assertEquals(inputConversation, resultConversation);
   }
 
+  @Test
+  public void testConcurrentAddConversation() throws Exception {
+    int threadCount = 8;
+    int conversationsPerThread = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      String prefix = "thread_" + i + "_";
+      futures.add(executor.submit(() -> {
+        for (int j = 0; j < conversationsPerThread; j++) {
+          String title = prefix + j;
+          conversationStore.addConversation(
+              new Conversation(UUID.randomUUID(), UUID.randomUUID(), title, Instant.now()));
+          Assert.assertNotNull(conversationStore.getConversationWithTitle(title));
+          conversationStore.getAllGroupConversations();
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(
+        threadCount * conversationsPerThread + 1, conversationStore.getNumConversations());
+  }
+
+  @Test
+  public void testConcurrentAddConversation_sameTitle() throws Exception {
+    int threadCount = 8;
+    int titlesPerThread = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    CountDownLatch start = new CountDownLatch(1);
+
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        int added = 0;
+        for (int j = 0; j < titlesPerThread; j++) {
+          Conversation conversation =
+              new Conversation(UUID.randomUUID(), UUID.randomUUID(), "title_" + j, Instant.now());
+          if (conversationStore.addConversation(conversation)) {
+            added++;
+            Assert.assertSame(
+                conversation, conversationStore.getConversationWithTitle("title_" + j));
+          }
+        }
+        return added;
+      }));
+    }
+    start.countDown();
+    int added = 0;
+    for (Future<Integer> future : futures) {
+      added += future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(titlesPerThread, added);
+    Assert.assertEquals(titlesPerThread + 1, conversationStore.getNumConversations());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(titlesPerThread))
+        .writeThrough(Mockito.any(Conversation.class));
+  }
+
   private void assertEquals(Conversation expectedConversation, Conversation actualConversation) {
     Assert.assertEquals(expectedConversation.getId(), actualConversation.getId());
     Assert.assertEquals(expectedConversation.getOwnerId(), actualConversation.getOwnerId());
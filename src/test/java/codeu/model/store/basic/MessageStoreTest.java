@@ -1,11 +1,18 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Message;
+import codeu.model.data.MessagePage;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -61,6 +68,175 @@ public class MessageStoreTest {
     assertEquals(MESSAGE_TWO, resultMessages.get(1));
   }
 
+  @Test
+  public void testGetMessagesInConversation_orderedByCreationTime() {
+    Message earlierMessage =
+        new Message(
+            UUID.randomUUID(),
+            CONVERSATION_ID_ONE,
+            UUID.randomUUID(),
+            "earlier message",
+            Instant.ofEpochMilli(500));
+
+    messageStore.addMessage(earlierMessage);
+    List<Message> resultMessages = messageStore.getMessagesInConversation(CONVERSATION_ID_ONE);
+
+    Assert.assertEquals(3, resultMessages.size());
+    assertEquals(earlierMessage, resultMessages.get(0));
+    assertEquals(MESSAGE_ONE, resultMessages.get(1));
+    assertEquals(MESSAGE_TWO, resultMessages.get(2));
+    Assert.assertTrue(messageStore.getMessagesInConversation(UUID.randomUUID()).isEmpty());
+  }
+
+  @Test
+  public void testGetMessagesInConversation_paginated() {
+    MessagePage newestPage =
+        messageStore.getMessagesInConversation(CONVERSATION_ID_ONE, null, 1);
+
+    Assert.assertEquals(1, newestPage.getMessages().size());
+    assertEquals(MESSAGE_TWO, newestPage.getMessages().get(0));
+    Assert.assertEquals(MESSAGE_TWO.getCreationTime(), newestPage.getOlderMessagesCursor());
+
+    MessagePage olderPage =
+        messageStore.getMessagesInConversation(
+            CONVERSATION_ID_ONE, newestPage.getOlderMessagesCursor(), 1);
+
+    Assert.assertEquals(1, olderPage.getMessages().size());
+    assertEquals(MESSAGE_ONE, olderPage.getMessages().get(0));
+    Assert.assertFalse(olderPage.hasOlderMessages());
+  }
+
+  @Test
+  public void testGetMessagesAfter() {
+    List<Message> newerMessages =
+        messageStore.getMessagesAfter(CONVERSATION_ID_ONE, MESSAGE_ONE.getId(), 10);
+
+    Assert.assertEquals(1, newerMessages.size());
+    assertEquals(MESSAGE_TWO, newerMessages.get(0));
+    Assert.assertTrue(
+        messageStore.getMessagesAfter(CONVERSATION_ID_ONE, MESSAGE_TWO.getId(), 10).isEmpty());
+    Assert.assertTrue(
+        messageStore.getMessagesAfter(CONVERSATION_ID_ONE, MESSAGE_ONE.getId(), 0).isEmpty());
+  }
+
+  @Test
+  public void testGetMessagesAfter_unknownCursor() {
+    Assert.assertNull(
+        messageStore.getMessagesAfter(CONVERSATION_ID_ONE, UUID.randomUUID(), 10));
+    Assert.assertNull(
+        messageStore.getMessagesAfter(CONVERSATION_ID_ONE, MESSAGE_THREE.getId(), 10));
+  }
+
+  @Test
+  public void testGetMessagesAfter_sameCreationTime() {
+    Message sameTimeMessage =
+        new Message(
+            UUID.randomUUID(),
+            CONVERSATION_ID_ONE,
+            UUID.randomUUID(),
+            "same time",
+            MESSAGE_ONE.getCreationTime());
+    messageStore.addMessage(sameTimeMessage);
+
+    List<Message> afterOne =
+        messageStore.getMessagesAfter(CONVERSATION_ID_ONE, MESSAGE_ONE.getId(), 10);
+    List<Message> afterSameTime =
+        messageStore.getMessagesAfter(CONVERSATION_ID_ONE, sameTimeMessage.getId(), 10);
+
+    // Whichever of the two sorts first, the other one is after it.
+    Assert.assertEquals(3, afterOne.size() + afterSameTime.size());
+  }
+
+  @Test
+  public void testGetMessagesSince() {
+    List<Message> newerMessages =
+        messageStore.getMessagesSince(CONVERSATION_ID_ONE, MESSAGE_ONE.getCreationTime(), 10);
+
+    Assert.assertEquals(1, newerMessages.size());
+    assertEquals(MESSAGE_TWO, newerMessages.get(0));
+    Assert.assertEquals(
+        2, messageStore.getMessagesSince(CONVERSATION_ID_ONE, Instant.EPOCH, 10).size());
+    Assert.assertEquals(
+        1, messageStore.getMessagesSince(CONVERSATION_ID_ONE, Instant.EPOCH, 1).size());
+    Assert.assertTrue(
+        messageStore.getMessagesSince(UUID.randomUUID(), Instant.EPOCH, 10).isEmpty());
+  }
+
+  @Test
+  public void testGetNewestMessageInConversation() {
+    assertEquals(MESSAGE_TWO, messageStore.getNewestMessageInConversation(CONVERSATION_ID_ONE));
+    Assert.assertNull(messageStore.getNewestMessageInConversation(UUID.randomUUID()));
+  }
+
+  @Test
+  public void testGetMessagesInConversation_loadsUnloadedHistory() throws Exception {
+    Message olderMessage =
+        new Message(
+            UUID.randomUUID(),
+            CONVERSATION_ID_ONE,
+            UUID.randomUUID(),
+            "older message",
+            Instant.ofEpochMilli(500));
+    // The batch starts at the oldest in-memory time, so it repeats MESSAGE_ONE.
+    List<Message> olderMessages = new ArrayList<>();
+    olderMessages.add(olderMessage);
+    olderMessages.add(MESSAGE_ONE);
+    Mockito.when(
+            mockPersistentStorageAgent.loadMessagesAtOrBefore(
+                CONVERSATION_ID_ONE, MESSAGE_ONE.getCreationTime(), 3))
+        .thenReturn(olderMessages);
+
+    List<Message> recentMessages = new ArrayList<>();
+    recentMessages.add(MESSAGE_ONE);
+    recentMessages.add(MESSAGE_TWO);
+    messageStore.setRecentMessages(recentMessages, Collections.singleton(CONVERSATION_ID_ONE));
+
+    MessagePage newestPage = messageStore.getMessagesInConversation(CONVERSATION_ID_ONE, null, 2);
+    Assert.assertEquals(2, newestPage.getMessages().size());
+    Assert.assertTrue(newestPage.hasOlderMessages());
+
+    MessagePage olderPage =
+        messageStore.getMessagesInConversation(
+            CONVERSATION_ID_ONE, newestPage.getOlderMessagesCursor(), 2);
+    Assert.assertEquals(1, olderPage.getMessages().size());
+    assertEquals(olderMessage, olderPage.getMessages().get(0));
+    Assert.assertFalse(olderPage.hasOlderMessages());
+
+    messageStore.getMessagesInConversation(CONVERSATION_ID_ONE, null, 10);
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(1))
+        .loadMessagesAtOrBefore(Mockito.any(), Mockito.any(), Mockito.anyInt());
+  }
+
+  @Test
+  public void testGetMessagesInConversation_loadsUnloadedMessageAtOldestTime() throws Exception {
+    Message sameTimeMessage =
+        new Message(
+            UUID.randomUUID(),
+            CONVERSATION_ID_ONE,
+            UUID.randomUUID(),
+            "same time message",
+            MESSAGE_ONE.getCreationTime());
+    List<Message> olderMessages = new ArrayList<>();
+    olderMessages.add(sameTimeMessage);
+    olderMessages.add(MESSAGE_ONE);
+    Mockito.when(
+            mockPersistentStorageAgent.loadMessagesAtOrBefore(
+                CONVERSATION_ID_ONE, MESSAGE_ONE.getCreationTime(), 3))
+        .thenReturn(olderMessages);
+
+    List<Message> recentMessages = new ArrayList<>();
+    recentMessages.add(MESSAGE_ONE);
+    recentMessages.add(MESSAGE_TWO);
+    messageStore.setRecentMessages(recentMessages, Collections.singleton(CONVERSATION_ID_ONE));
+
+    MessagePage page = messageStore.getMessagesInConversation(CONVERSATION_ID_ONE, null, 2);
+
+    // Messages that share a creation time are kept on one page.
+    Assert.assertEquals(3, page.getMessages().size());
+    Assert.assertFalse(page.hasOlderMessages());
+    Assert.assertEquals(3, messageStore.getMessagesInConversation(CONVERSATION_ID_ONE).size());
+  }
+
   @Test
   public void testAddMessage() {
     UUID inputConversationId = UUID.randomUUID();
@@ -79,6 +255,74 @@ public class MessageStoreTest {
     Mockito.verify(mockPersistentStorageAgent).writeThrough(inputMessage);
   }
 
+  @Test
+  public void testGetMessagesByAuthor_updatedOnAdd() {
+    UUID authorId = UUID.randomUUID();
+    Message newerMessage =
+        new Message(
+            UUID.randomUUID(), CONVERSATION_ID_ONE, authorId, "newer", Instant.ofEpochMilli(5000));
+    Message olderMessage =
+        new Message(
+            UUID.randomUUID(), CONVERSATION_ID_ONE, authorId, "older", Instant.ofEpochMilli(4000));
+
+    messageStore.addMessage(newerMessage);
+    messageStore.addMessage(olderMessage);
+
+    List<Message> resultMessages = messageStore.getMessagesByAuthor(authorId);
+    Assert.assertEquals(2, resultMessages.size());
+    assertEquals(olderMessage, resultMessages.get(0));
+    assertEquals(newerMessage, resultMessages.get(1));
+
+    List<Message> newestMessages = messageStore.getMessagesByAuthor(authorId, 1);
+    Assert.assertEquals(1, newestMessages.size());
+    assertEquals(newerMessage, newestMessages.get(0));
+
+    messageStore.deleteMessage(newerMessage);
+    Assert.assertEquals(1, messageStore.getMessagesByAuthor(authorId).size());
+  }
+
+  @Test
+  public void testUserStatsFollowMessages() {
+    UserStatsStore userStatsStore = UserStatsStore.getTestInstance();
+    messageStore = MessageStore.getTestInstance(mockPersistentStorageAgent, userStatsStore);
+    UUID authorId = UUID.randomUUID();
+    Message inputMessage =
+        new Message(UUID.randomUUID(), CONVERSATION_ID_ONE, authorId, "three word message",
+            Instant.now());
+
+    messageStore.addMessage(inputMessage);
+    messageStore.addMessage(inputMessage);
+
+    Assert.assertEquals(1, userStatsStore.getMessageCount(authorId));
+    Assert.assertEquals(3, userStatsStore.getWordCount(authorId));
+
+    messageStore.deleteMessage(inputMessage);
+
+    Assert.assertEquals(0, userStatsStore.getMessageCount(authorId));
+    Assert.assertTrue(userStatsStore.getMostActiveUserIds(1).isEmpty());
+  }
+
+  @Test
+  public void testAddMessages() throws PersistentDataStoreException {
+    UserStatsStore userStatsStore = UserStatsStore.getTestInstance();
+    messageStore = MessageStore.getTestInstance(mockPersistentStorageAgent, userStatsStore);
+    UUID authorId = UUID.randomUUID();
+    List<Message> inputMessages = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      inputMessages.add(
+          new Message(UUID.randomUUID(), CONVERSATION_ID_ONE, authorId, "message " + i,
+              Instant.ofEpochMilli(i)));
+    }
+
+    messageStore.addMessages(inputMessages);
+
+    Assert.assertEquals(inputMessages, messageStore.getMessagesByAuthor(authorId));
+    Assert.assertEquals(3, userStatsStore.getMessageCount(authorId));
+    Mockito.verify(mockPersistentStorageAgent).writeMessages(inputMessages);
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .writeThrough(Mockito.any(Message.class));
+  }
+
   @Test 
   public void testDeleteMessage() {
     UUID inputConversationId = UUID.randomUUID();
@@ -121,6 +365,79 @@ public class MessageStoreTest {
     assertEquals(MESSAGE_TWO, resultMessages.get(1));
   } 
 
+  @Test
+  public void testConcurrentAddAndRead() throws Exception {
+    int threadCount = 8;
+    int messagesPerThread = 500;
+    UUID conversationId = UUID.randomUUID();
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      UUID authorId = UUID.randomUUID();
+      futures.add(executor.submit(() -> {
+        for (int j = 0; j < messagesPerThread; j++) {
+          Message message =
+              new Message(UUID.randomUUID(), conversationId, authorId, "message", Instant.now());
+          messageStore.addMessage(message);
+          messageStore.getMessagesInConversation(conversationId, null, 10);
+          messageStore.getMessagesByAuthor(authorId);
+          if (j % 10 == 0) {
+            messageStore.deleteMessage(message);
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    int expectedCount = threadCount * (messagesPerThread - messagesPerThread / 10);
+    Assert.assertEquals(
+        expectedCount, messageStore.getMessagesInConversation(conversationId).size());
+    Assert.assertEquals(expectedCount + 3, messageStore.getNumMessages());
+  }
+
+  @Test
+  public void testGetConversationVersion() {
+    long initialVersion = messageStore.getConversationVersion(CONVERSATION_ID_ONE);
+    long otherVersion = messageStore.getConversationVersion(MESSAGE_THREE.getConversationId());
+
+    Message newMessage =
+        new Message(
+            UUID.randomUUID(),
+            CONVERSATION_ID_ONE,
+            UUID.randomUUID(),
+            "new message",
+            Instant.ofEpochMilli(4000));
+    messageStore.addMessage(newMessage);
+    long addedVersion = messageStore.getConversationVersion(CONVERSATION_ID_ONE);
+    Assert.assertTrue(addedVersion > initialVersion);
+
+    messageStore.getMessagesInConversation(CONVERSATION_ID_ONE);
+    Assert.assertEquals(addedVersion, messageStore.getConversationVersion(CONVERSATION_ID_ONE));
+
+    messageStore.deleteMessage(newMessage);
+    long deletedVersion = messageStore.getConversationVersion(CONVERSATION_ID_ONE);
+    Assert.assertTrue(deletedVersion > addedVersion);
+
+    messageStore.conversationChanged(CONVERSATION_ID_ONE);
+    Assert.assertTrue(messageStore.getConversationVersion(CONVERSATION_ID_ONE) > deletedVersion);
+    Assert.assertEquals(
+        otherVersion, messageStore.getConversationVersion(MESSAGE_THREE.getConversationId()));
+  }
+
+  @Test
+  public void testGetConversationVersion_changesWhenMessagesAreSet() {
+    messageStore.conversationChanged(CONVERSATION_ID_ONE);
+    long changedVersion = messageStore.getConversationVersion(CONVERSATION_ID_ONE);
+
+    messageStore.setMessages(new ArrayList<>());
+
+    Assert.assertTrue(messageStore.getConversationVersion(CONVERSATION_ID_ONE) > changedVersion);
+  }
+
   private void assertEquals(Message expectedMessage, Message actualMessage) {
     Assert.assertEquals(expectedMessage.getId(), actualMessage.getId());
     Assert.assertEquals(expectedMessage.getConversationId(), actualMessage.getConversationId());
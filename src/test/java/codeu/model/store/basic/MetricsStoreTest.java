@@ -0,0 +1,92 @@
+package codeu.model.store.basic;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsStoreTest {
+
+  private MetricsStore metricsStore;
+
+  @Before
+  public void setup() {
+    metricsStore = MetricsStore.getTestInstance();
+  }
+
+  @Test
+  public void testCounters() {
+    metricsStore.increment("requests");
+    metricsStore.add("requests", 4);
+
+    Assert.assertEquals(5, metricsStore.getCount("requests"));
+    Assert.assertEquals(0, metricsStore.getCount("unknown"));
+    Assert.assertEquals(Long.valueOf(5), metricsStore.getCounts().get("requests"));
+  }
+
+  @Test
+  public void testTimers() {
+    metricsStore.recordTime("load", 10);
+    metricsStore.recordTime("load", 30);
+
+    MetricsStore.Timer timer = metricsStore.getTimer("load");
+    Assert.assertEquals(2, timer.getCount());
+    Assert.assertEquals(40, timer.getTotalMillis());
+    Assert.assertEquals(30, timer.getMaxMillis());
+    Assert.assertNull(metricsStore.getTimer("unknown"));
+  }
+
+  @Test
+  public void testHistograms() {
+    for (int value = 1; value <= 1000; value++) {
+      metricsStore.recordValue("size", value);
+    }
+
+    MetricsStore.Histogram histogram = metricsStore.getHistogram("size");
+    Assert.assertEquals(1000, histogram.getCount());
+    Assert.assertEquals(500500, histogram.getTotal());
+    Assert.assertEquals(1000, histogram.getMax());
+    assertWithinBucket(500, histogram.getPercentile(50));
+    assertWithinBucket(950, histogram.getPercentile(95));
+    Assert.assertEquals(1000, histogram.getPercentile(100));
+    Assert.assertNull(metricsStore.getHistogram("unknown"));
+  }
+
+  @Test
+  public void testHistograms_smallValuesAreExact() {
+    metricsStore.recordValue("small", 3);
+    metricsStore.recordValue("small", 7);
+
+    Assert.assertEquals(3, metricsStore.getHistogram("small").getPercentile(50));
+    Assert.assertEquals(7, metricsStore.getHistogram("small").getPercentile(99));
+  }
+
+  @Test
+  public void testHistograms_largeValues() {
+    metricsStore.recordValue("large", Long.MAX_VALUE);
+
+    Assert.assertEquals(Long.MAX_VALUE, metricsStore.getHistogram("large").getPercentile(50));
+  }
+
+  @Test
+  public void testTimers_percentiles() {
+    metricsStore.recordTime("load", 10);
+    metricsStore.recordTime("load", 200);
+
+    Assert.assertEquals(10, metricsStore.getTimer("load").getPercentile(50));
+    Assert.assertEquals(200, metricsStore.getTimer("load").getPercentile(99));
+  }
+
+  @Test
+  public void testWithLabels() {
+    Assert.assertEquals(
+        "requests{route=\"/chat/*\",status=\"2xx\"}",
+        MetricsStore.withLabels("requests", "route", "/chat/*", "status", "2xx"));
+    Assert.assertEquals(
+        "requests{name=\"a\\\"b\\\\c\"}", MetricsStore.withLabels("requests", "name", "a\"b\\c"));
+  }
+
+  private static void assertWithinBucket(long expected, long actual) {
+    Assert.assertTrue(actual + " < " + expected, actual >= expected);
+    Assert.assertTrue(actual + " too far above " + expected, actual <= expected * 1.125);
+  }
+}
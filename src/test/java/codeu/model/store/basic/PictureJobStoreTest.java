@@ -0,0 +1,48 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.PictureJob;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class PictureJobStoreTest {
+
+  private PictureJobStore pictureJobStore;
+  private PersistentStorageAgent mockPersistentStorageAgent;
+  private Queue mockQueue;
+
+  private final UUID USER_ID = UUID.randomUUID();
+  private final byte[] UPLOAD = {1, 2, 3};
+
+  @Before
+  public void setup() {
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    mockQueue = Mockito.mock(Queue.class);
+    pictureJobStore = PictureJobStore.getTestInstance(mockPersistentStorageAgent, mockQueue);
+  }
+
+  @Test
+  public void testSubmit() {
+    PictureJob job = pictureJobStore.submit(USER_ID, UPLOAD);
+
+    Assert.assertEquals(USER_ID, job.getUserId());
+    Assert.assertEquals(PictureJob.Status.PENDING, job.getStatus());
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(job, UPLOAD);
+    Mockito.verify(mockQueue).add(Mockito.any(TaskOptions.class));
+  }
+
+  @Test
+  public void testFinish() {
+    PictureJob job = pictureJobStore.submit(USER_ID, UPLOAD);
+
+    pictureJobStore.finish(job, PictureJob.Status.DONE);
+
+    Assert.assertEquals(PictureJob.Status.DONE, job.getStatus());
+    Mockito.verify(mockPersistentStorageAgent).update(job);
+  }
+}
@@ -0,0 +1,100 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.PictureSize;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ProfilePictureStoreTest {
+
+  private ProfilePictureStore profilePictureStore;
+  private PersistentStorageAgent mockPersistentStorageAgent;
+
+  private final UUID USER_ID = UUID.randomUUID();
+  private final byte[] PICTURE = {1, 2, 3};
+
+  @Before
+  public void setup() {
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    profilePictureStore = ProfilePictureStore.getTestInstance(mockPersistentStorageAgent);
+  }
+
+  @Test
+  public void testGetProfilePicture_loadsOnce() throws PersistentDataStoreException {
+    Mockito.when(mockPersistentStorageAgent.loadProfilePicture(USER_ID, PictureSize.CHAT))
+        .thenReturn(PICTURE);
+
+    Assert.assertArrayEquals(
+        PICTURE, profilePictureStore.getProfilePicture(USER_ID, PictureSize.CHAT));
+    Assert.assertArrayEquals(
+        PICTURE, profilePictureStore.getProfilePicture(USER_ID, PictureSize.CHAT));
+
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(1))
+        .loadProfilePicture(USER_ID, PictureSize.CHAT);
+  }
+
+  @Test
+  public void testHasProfilePicture_none() throws PersistentDataStoreException {
+    Mockito.when(mockPersistentStorageAgent.loadProfilePicture(USER_ID, PictureSize.CHAT))
+        .thenReturn(new byte[0]);
+
+    Assert.assertFalse(profilePictureStore.hasProfilePicture(USER_ID));
+  }
+
+  @Test
+  public void testGetProfilePictureTag_changesWithPicture() throws PersistentDataStoreException {
+    Mockito.when(mockPersistentStorageAgent.loadProfilePicture(USER_ID, PictureSize.FULL))
+        .thenReturn(PICTURE);
+    String oldTag = profilePictureStore.getProfilePictureTag(USER_ID, PictureSize.FULL);
+
+    profilePictureStore.setProfilePictures(USER_ID, picturesOfEverySize(new byte[] {4, 5, 6}));
+
+    Assert.assertNotEquals(
+        oldTag, profilePictureStore.getProfilePictureTag(USER_ID, PictureSize.FULL));
+  }
+
+  @Test
+  public void testSetProfilePictures() throws PersistentDataStoreException {
+    Map<PictureSize, byte[]> pictures = picturesOfEverySize(PICTURE);
+
+    profilePictureStore.setProfilePictures(USER_ID, pictures);
+
+    for (PictureSize size : PictureSize.values()) {
+      Assert.assertArrayEquals(PICTURE, profilePictureStore.getProfilePicture(USER_ID, size));
+    }
+    Mockito.verify(mockPersistentStorageAgent).writeProfilePictures(USER_ID, pictures);
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .loadProfilePicture(Mockito.eq(USER_ID), Mockito.any(PictureSize.class));
+  }
+
+  @Test
+  public void testGetProfilePicture_evictsLeastRecentlyUsed() throws PersistentDataStoreException {
+    Mockito.when(
+            mockPersistentStorageAgent.loadProfilePicture(
+                Mockito.any(UUID.class), Mockito.any(PictureSize.class)))
+        .thenReturn(PICTURE);
+
+    profilePictureStore.getProfilePicture(USER_ID, PictureSize.CHAT);
+    for (int i = 0; i < ProfilePictureStore.MAX_CACHED_PICTURES; i++) {
+      profilePictureStore.getProfilePicture(UUID.randomUUID(), PictureSize.CHAT);
+    }
+    profilePictureStore.getProfilePicture(USER_ID, PictureSize.CHAT);
+
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(2))
+        .loadProfilePicture(USER_ID, PictureSize.CHAT);
+  }
+
+  private static Map<PictureSize, byte[]> picturesOfEverySize(byte[] picture) {
+    Map<PictureSize, byte[]> pictures = new EnumMap<>(PictureSize.class);
+    for (PictureSize size : PictureSize.values()) {
+      pictures.put(size, picture);
+    }
+    return pictures;
+  }
+}
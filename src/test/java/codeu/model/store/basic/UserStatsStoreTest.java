@@ -0,0 +1,78 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UserStatsStoreTest {
+
+  private UserStatsStore userStatsStore;
+
+  private final UUID USER_ONE = UUID.randomUUID();
+  private final UUID USER_TWO = UUID.randomUUID();
+
+  @Before
+  public void setup() {
+    userStatsStore = UserStatsStore.getTestInstance();
+
+    List<Message> messageList = new ArrayList<>();
+    messageList.add(makeMessage(USER_ONE, "one two three four five"));
+    messageList.add(makeMessage(USER_TWO, "one"));
+    messageList.add(makeMessage(USER_TWO, "two"));
+    userStatsStore.setMessages(messageList);
+  }
+
+  @Test
+  public void testCounts() {
+    Assert.assertEquals(1, userStatsStore.getMessageCount(USER_ONE));
+    Assert.assertEquals(5, userStatsStore.getWordCount(USER_ONE));
+    Assert.assertEquals(2, userStatsStore.getMessageCount(USER_TWO));
+    Assert.assertEquals(2, userStatsStore.getWordCount(USER_TWO));
+    Assert.assertEquals(0, userStatsStore.getMessageCount(UUID.randomUUID()));
+  }
+
+  @Test
+  public void testRankings() {
+    Assert.assertEquals(USER_TWO, userStatsStore.getMostActiveUserIds(1).get(0));
+    Assert.assertEquals(USER_ONE, userStatsStore.getWordiestUserIds(1).get(0));
+    Assert.assertEquals(2, userStatsStore.getWordiestUserIds(10).size());
+  }
+
+  @Test
+  public void testRankings_skipsExcludedUsers() {
+    List<UUID> mostActive =
+        userStatsStore.getMostActiveUserIds(1, userId -> !USER_TWO.equals(userId));
+    List<UUID> wordiest = userStatsStore.getWordiestUserIds(1, userId -> !USER_ONE.equals(userId));
+
+    Assert.assertEquals(1, mostActive.size());
+    Assert.assertEquals(USER_ONE, mostActive.get(0));
+    Assert.assertEquals(1, wordiest.size());
+    Assert.assertEquals(USER_TWO, wordiest.get(0));
+  }
+
+  @Test
+  public void testRecordAndRemoveMessage() {
+    Message message = makeMessage(USER_ONE, "six seven");
+
+    userStatsStore.recordMessage(message);
+    userStatsStore.recordMessage(makeMessage(USER_ONE, "eight"));
+
+    Assert.assertEquals(USER_ONE, userStatsStore.getMostActiveUserIds(1).get(0));
+    Assert.assertEquals(8, userStatsStore.getWordCount(USER_ONE));
+
+    userStatsStore.removeMessage(message);
+
+    Assert.assertEquals(2, userStatsStore.getMessageCount(USER_ONE));
+    Assert.assertEquals(6, userStatsStore.getWordCount(USER_ONE));
+    Assert.assertEquals(2, userStatsStore.getMostActiveUserIds(10).size());
+  }
+
+  private Message makeMessage(UUID authorId, String content) {
+    return new Message(UUID.randomUUID(), UUID.randomUUID(), authorId, content, Instant.now());
+  }
+}
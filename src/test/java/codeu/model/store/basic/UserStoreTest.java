@@ -1,11 +1,18 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.User;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -67,13 +74,111 @@ public class UserStoreTest {
   public void testAddUser() {
     User inputUser = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
 
-    userStore.addUser(inputUser);
+    Assert.assertTrue(userStore.addUser(inputUser));
     User resultUser = userStore.getUser("test_username");
 
     assertEquals(inputUser, resultUser);
     Mockito.verify(mockPersistentStorageAgent).writeThrough(inputUser);
   }
 
+  @Test
+  public void testAddUser_nameTaken() {
+    User inputUser =
+        new User(UUID.randomUUID(), USER_ONE.getName(), "password", Instant.now(), false);
+
+    Assert.assertFalse(userStore.addUser(inputUser));
+
+    assertEquals(USER_ONE, userStore.getUser(USER_ONE.getName()));
+    Assert.assertNull(userStore.getUser(inputUser.getId()));
+    Assert.assertEquals(3, userStore.getNumUsers());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never()).writeThrough(inputUser);
+  }
+
+  @Test
+  public void testAddUsers_skipsKnownIds() throws PersistentDataStoreException {
+    User inputUser = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+
+    userStore.addUsers(Arrays.asList(USER_ONE, inputUser));
+    userStore.addUsers(Arrays.asList(USER_ONE, inputUser));
+
+    assertEquals(inputUser, userStore.getUser(inputUser.getId()));
+    Assert.assertEquals(4, userStore.getNumUsers());
+    Mockito.verify(mockPersistentStorageAgent).writeUsers(Collections.singletonList(inputUser));
+    Mockito.verifyNoMoreInteractions(mockPersistentStorageAgent);
+  }
+
+  @Test
+  public void testAddUsers_skipsTakenNames() throws PersistentDataStoreException {
+    User sameName =
+        new User(UUID.randomUUID(), USER_ONE.getName(), "password", Instant.now(), false);
+    User inputUser = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    User inputUserAgain =
+        new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+
+    userStore.addUsers(Arrays.asList(sameName, inputUser, inputUserAgain));
+
+    assertEquals(USER_ONE, userStore.getUser(USER_ONE.getName()));
+    assertEquals(inputUser, userStore.getUser("test_username"));
+    Assert.assertNull(userStore.getUser(sameName.getId()));
+    Assert.assertNull(userStore.getUser(inputUserAgain.getId()));
+    Assert.assertEquals(4, userStore.getNumUsers());
+    Mockito.verify(mockPersistentStorageAgent).writeUsers(Collections.singletonList(inputUser));
+  }
+
+  @Test
+  public void testAddUsers_writeFails() throws PersistentDataStoreException {
+    User inputUser = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    PersistentDataStoreException failure = new PersistentDataStoreException(new Exception());
+    Mockito.doThrow(failure).when(mockPersistentStorageAgent).writeUsers(Mockito.anyList());
+
+    try {
+      userStore.addUsers(Collections.singletonList(inputUser));
+      Assert.fail("Expected the write's exception");
+    } catch (PersistentDataStoreException e) {
+      Assert.assertSame(failure, e);
+    }
+
+    Assert.assertFalse(userStore.isUserRegistered("test_username"));
+    Assert.assertEquals(3, userStore.getNumUsers());
+  }
+
+  @Test
+  public void testGetNewestUsers() {
+    User newUser = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    User oldUser =
+        new User(UUID.randomUUID(), "old_username", "password", Instant.ofEpochMilli(0), false);
+    userStore.addUser(newUser);
+    userStore.addUser(oldUser);
+
+    List<User> newestUsers = userStore.getNewestUsers(2);
+
+    Assert.assertEquals(2, newestUsers.size());
+    assertEquals(newUser, newestUsers.get(0));
+    assertEquals(USER_THREE, newestUsers.get(1));
+    Assert.assertEquals(5, userStore.getNewestUsers(10).size());
+  }
+
+  @Test
+  public void testGetNewestUsers_afterDelete() {
+    userStore.deleteUser(USER_THREE);
+
+    List<User> newestUsers = userStore.getNewestUsers(1);
+
+    Assert.assertEquals(1, newestUsers.size());
+    assertEquals(USER_TWO, newestUsers.get(0));
+  }
+
+  @Test
+  public void testDeleteUser() {
+    userStore.deleteUser(USER_TWO);
+
+    Assert.assertNull(userStore.getUser(USER_TWO.getName()));
+    Assert.assertNull(userStore.getUser(USER_TWO.getId()));
+    Assert.assertFalse(userStore.isUserRegistered(USER_TWO.getName()));
+    Assert.assertEquals(2, userStore.getNumUsers());
+    Mockito.verify(mockPersistentStorageAgent).delete(USER_TWO);
+  }
+
   @Test 
   public void testUpdateUser() {
     USER_ONE.setAbout("unique_message");
@@ -95,6 +200,67 @@ public class UserStoreTest {
     Assert.assertFalse(userStore.isUserRegistered("fake username"));
   }
 
+  @Test
+  public void testConcurrentAddUser() throws Exception {
+    int threadCount = 8;
+    int usersPerThread = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      String prefix = "thread_" + i + "_";
+      futures.add(executor.submit(() -> {
+        for (int j = 0; j < usersPerThread; j++) {
+          String name = prefix + j;
+          userStore.addUser(new User(UUID.randomUUID(), name, "password", Instant.now(), false));
+          Assert.assertTrue(userStore.isUserRegistered(name));
+          userStore.getUser(USER_ONE.getId());
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(threadCount * usersPerThread + 3, userStore.getNumUsers());
+  }
+
+  @Test
+  public void testConcurrentAddUser_sameName() throws Exception {
+    int threadCount = 8;
+    int namesPerThread = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    CountDownLatch start = new CountDownLatch(1);
+
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        int added = 0;
+        for (int j = 0; j < namesPerThread; j++) {
+          User user = new User(UUID.randomUUID(), "name_" + j, "password", Instant.now(), false);
+          if (userStore.addUser(user)) {
+            added++;
+            Assert.assertSame(user, userStore.getUser("name_" + j));
+          }
+        }
+        return added;
+      }));
+    }
+    start.countDown();
+    int added = 0;
+    for (Future<Integer> future : futures) {
+      added += future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(namesPerThread, added);
+    Assert.assertEquals(namesPerThread + 3, userStore.getNumUsers());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(namesPerThread))
+        .writeThrough(Mockito.any(User.class));
+  }
+
   private void assertEquals(User expectedUser, User actualUser) {
     Assert.assertEquals(expectedUser.getId(), actualUser.getId());
     Assert.assertEquals(expectedUser.getName(), actualUser.getName());
@@ -0,0 +1,158 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WorkloadGeneratorTest {
+
+  @Test
+  public void testSameSeedGeneratesSameData() {
+    List<Message> first = allMessages(new WorkloadGenerator(42, 50, 10, 500), 64);
+    List<Message> second = allMessages(new WorkloadGenerator(42, 50, 10, 500), 100);
+
+    Assert.assertEquals(500, first.size());
+    for (int i = 0; i < first.size(); i++) {
+      Assert.assertEquals(first.get(i).getId(), second.get(i).getId());
+      Assert.assertEquals(first.get(i).getAuthorId(), second.get(i).getAuthorId());
+      Assert.assertEquals(first.get(i).getContent(), second.get(i).getContent());
+      Assert.assertEquals(first.get(i).getCreationTime(), second.get(i).getCreationTime());
+    }
+  }
+
+  @Test
+  public void testRangeMatchesFullRun() {
+    WorkloadGenerator generator = new WorkloadGenerator(42, 50, 10, 2500);
+    List<Message> all = allMessages(generator, 300);
+    int from = WorkloadGenerator.BLOCK_SIZE + 17;
+
+    List<Message> range = new ArrayList<>();
+    Iterator<List<Message>> batches = generator.messageBatches(100, from, 2500);
+    while (batches.hasNext()) {
+      range.addAll(batches.next());
+    }
+
+    Assert.assertEquals(2500 - from, range.size());
+    for (int i = 0; i < range.size(); i++) {
+      Assert.assertEquals(all.get(from + i).getId(), range.get(i).getId());
+      Assert.assertEquals(all.get(from + i).getCreationTime(), range.get(i).getCreationTime());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRangeOutsideDataSet() {
+    new WorkloadGenerator(1, 10, 1, 10).messageBatches(5, 5, 11);
+  }
+
+  @Test
+  public void testDifferentSeedsGenerateDifferentData() {
+    WorkloadGenerator first = new WorkloadGenerator(1, 5, 1, 0);
+    WorkloadGenerator second = new WorkloadGenerator(2, 5, 1, 0);
+
+    Assert.assertNotEquals(first.getUsers().get(0).getId(), second.getUsers().get(0).getId());
+    Assert.assertNotEquals(first.getUsers().get(0).getName(), second.getUsers().get(0).getName());
+    Assert.assertNotEquals(
+        first.getConversations().get(0).getTitle(), second.getConversations().get(0).getTitle());
+  }
+
+  @Test
+  public void testCountsAndConsistency() {
+    WorkloadGenerator generator = new WorkloadGenerator(7, 200, 40, 3000);
+    Set<UUID> userIds = new HashSet<>();
+    Set<String> usernames = new HashSet<>();
+    for (User user : generator.getUsers()) {
+      userIds.add(user.getId());
+      usernames.add(user.getName());
+    }
+    Map<UUID, Conversation> conversations = new HashMap<>();
+    for (Conversation conversation : generator.getConversations()) {
+      conversations.put(conversation.getId(), conversation);
+    }
+
+    Assert.assertEquals(200, userIds.size());
+    Assert.assertEquals(200, usernames.size());
+    Assert.assertEquals(40, conversations.size());
+
+    Instant previous = Instant.MIN;
+    for (Message message : allMessages(generator, 1000)) {
+      Assert.assertTrue(userIds.contains(message.getAuthorId()));
+      Conversation conversation = conversations.get(message.getConversationId());
+      Assert.assertNotNull(conversation);
+      if (conversation.getIsGroup()) {
+        Assert.assertTrue(conversation.getParticipants().contains(message.getAuthorId()));
+      }
+      Assert.assertFalse(message.getCreationTime().isBefore(previous));
+      Assert.assertFalse(message.getCreationTime().isBefore(conversation.getCreationTime()));
+      previous = message.getCreationTime();
+    }
+  }
+
+  @Test
+  public void testGroupsHaveDistinctMembers() {
+    WorkloadGenerator generator = new WorkloadGenerator(3, 100, 100, 0);
+
+    int groups = 0;
+    for (Conversation conversation : generator.getConversations()) {
+      if (conversation.getIsGroup()) {
+        groups++;
+        Assert.assertTrue(conversation.getParticipants().size() >= 3);
+        Assert.assertTrue(conversation.getParticipants().contains(conversation.getOwnerId()));
+      }
+    }
+    Assert.assertTrue(groups > 0);
+    Assert.assertTrue(groups < 100);
+  }
+
+  @Test
+  public void testActivityIsSkewed() {
+    WorkloadGenerator generator = new WorkloadGenerator(11, 1000, 100, 20000);
+    Map<UUID, Integer> messagesByAuthor = new HashMap<>();
+    for (Message message : allMessages(generator, 5000)) {
+      messagesByAuthor.merge(message.getAuthorId(), 1, Integer::sum);
+    }
+
+    int mostActive = messagesByAuthor.get(generator.getUsers().get(0).getId());
+    int leastActive = messagesByAuthor.getOrDefault(generator.getUsers().get(999).getId(), 0);
+    Assert.assertTrue(mostActive > 50 * Math.max(1, leastActive));
+  }
+
+  @Test
+  public void testMessageLengthsVary() {
+    int shortest = Integer.MAX_VALUE;
+    int longest = 0;
+    for (Message message : allMessages(new WorkloadGenerator(5, 10, 5, 2000), 2000)) {
+      shortest = Math.min(shortest, message.getWords());
+      longest = Math.max(longest, message.getWords());
+      Assert.assertTrue(message.getWords() <= WorkloadGenerator.MAX_MESSAGE_WORDS);
+    }
+    Assert.assertTrue(shortest <= 3);
+    Assert.assertTrue(longest >= 3 * WorkloadGenerator.MEDIAN_MESSAGE_WORDS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMessagesWithoutConversations() {
+    new WorkloadGenerator(1, 10, 0, 10);
+  }
+
+  private static List<Message> allMessages(WorkloadGenerator generator, int batchSize) {
+    List<Message> messages = new ArrayList<>();
+    Iterator<List<Message>> batches = generator.messageBatches(batchSize);
+    while (batches.hasNext()) {
+      List<Message> batch = batches.next();
+      Assert.assertTrue(batch.size() <= batchSize);
+      messages.addAll(batch);
+    }
+    return messages;
+  }
+}
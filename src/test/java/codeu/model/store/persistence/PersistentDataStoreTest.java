@@ -2,11 +2,22 @@ package codeu.model.store.persistence;
 
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
+import codeu.model.data.PictureJob;
+import codeu.model.data.PictureSize;
 import codeu.model.data.User;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.After;
 import org.junit.Assert;
@@ -37,7 +48,7 @@ public class PersistentDataStoreTest {
   }
 
   @Test
-  public void testSaveAndLoadUsers() throws PersistentDataStoreException {
+  public void testSaveAndLoadUsers() throws Exception {
     UUID idOne = UUID.randomUUID();
     String nameOne = "test_username_one";
     String passwordOne = "password_one";
@@ -53,8 +64,8 @@ public class PersistentDataStoreTest {
     User inputUserTwo = new User(idTwo, nameTwo, passwordTwo, creationTwo, isAdminTwo);
 
     // save
-    persistentDataStore.writeThrough(inputUserOne);
-    persistentDataStore.writeThrough(inputUserTwo);
+    persistentDataStore.writeThrough(inputUserOne).get();
+    persistentDataStore.writeThrough(inputUserTwo).get();
 
     // load
     List<User> resultUsers = persistentDataStore.loadUsers();
@@ -79,7 +90,138 @@ public class PersistentDataStoreTest {
   }
 
   @Test
-  public void testSaveAndLoadAdmins() throws PersistentDataStoreException {
+  public void testUpdateUsersInBatch() throws Exception {
+    User inputUserOne =
+        new User(UUID.randomUUID(), "test_username_one", "password_one",
+            Instant.ofEpochMilli(1000), false);
+    User inputUserTwo =
+        new User(UUID.randomUUID(), "test_username_two", "password_two",
+            Instant.ofEpochMilli(2000), false);
+    persistentDataStore.writeThrough(inputUserOne).get();
+    persistentDataStore.writeThrough(inputUserTwo).get();
+
+    List<User> loadedUsers = persistentDataStore.loadUsers();
+    loadedUsers.get(0).incMessagesSent();
+    loadedUsers.get(1).incMessagesSent();
+    loadedUsers.get(1).incMessagesSent();
+    persistentDataStore.update(loadedUsers);
+
+    List<User> resultUsers = new PersistentDataStore().loadUsers();
+    Assert.assertEquals(1, resultUsers.get(0).getMessagesSent());
+    Assert.assertEquals(2, resultUsers.get(1).getMessagesSent());
+  }
+
+  @Test
+  public void testSaveAndLoadProfilePictures() throws PersistentDataStoreException {
+    UUID userId = UUID.randomUUID();
+    Map<PictureSize, byte[]> pictures = new EnumMap<>(PictureSize.class);
+    pictures.put(PictureSize.CHAT, new byte[] {1});
+    pictures.put(PictureSize.PROFILE, new byte[] {2});
+    pictures.put(PictureSize.FULL, new byte[] {3});
+
+    Assert.assertEquals(0, persistentDataStore.loadProfilePicture(userId, PictureSize.CHAT).length);
+
+    persistentDataStore.writeProfilePictures(userId, pictures);
+
+    for (PictureSize size : PictureSize.values()) {
+      Assert.assertArrayEquals(
+          pictures.get(size), persistentDataStore.loadProfilePicture(userId, size));
+    }
+  }
+
+  @Test
+  public void testSaveAndLoadPictureJob() throws PersistentDataStoreException {
+    PictureJob job =
+        new PictureJob(UUID.randomUUID(), UUID.randomUUID(), Instant.ofEpochMilli(1000),
+                       PictureJob.Status.PENDING);
+    byte[] upload = {1, 2, 3};
+
+    Assert.assertNull(persistentDataStore.loadPictureJob(job.getId()));
+
+    persistentDataStore.writeThrough(job, upload);
+
+    PictureJob resultJob = persistentDataStore.loadPictureJob(job.getId());
+    Assert.assertEquals(job.getUserId(), resultJob.getUserId());
+    Assert.assertEquals(job.getCreationTime(), resultJob.getCreationTime());
+    Assert.assertEquals(PictureJob.Status.PENDING, resultJob.getStatus());
+    Assert.assertArrayEquals(upload, persistentDataStore.loadPictureUpload(job.getId()));
+
+    job.setStatus(PictureJob.Status.DONE);
+    persistentDataStore.update(job);
+
+    Assert.assertEquals(
+        PictureJob.Status.DONE, persistentDataStore.loadPictureJob(job.getId()).getStatus());
+    Assert.assertEquals(0, persistentDataStore.loadPictureUpload(job.getId()).length);
+  }
+
+  @Test
+  public void testLoadUsers_movesLegacyProfilePicture() throws Exception {
+    UUID userId = UUID.randomUUID();
+    byte[] picture = {1, 2, 3};
+    User user = new User(userId, "test_username", "password", Instant.ofEpochMilli(1000), false);
+    persistentDataStore.writeThrough(user).get();
+
+    // Put the picture back on the user entity, the way older versions stored it.
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity userEntity = datastore.prepare(new Query("chat-users")).asSingleEntity();
+    userEntity.setProperty("profilePicture", new Blob(picture));
+    datastore.put(userEntity);
+
+    persistentDataStore.loadUsers();
+
+    userEntity = datastore.prepare(new Query("chat-users")).asSingleEntity();
+    Assert.assertFalse(userEntity.hasProperty("profilePicture"));
+    for (PictureSize size : PictureSize.values()) {
+      Assert.assertArrayEquals(picture, persistentDataStore.loadProfilePicture(userId, size));
+    }
+  }
+
+  @Test
+  public void testUpdateAndDeleteWithoutLoading() throws Exception {
+    User user = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    Message message =
+        new Message(UUID.randomUUID(), UUID.randomUUID(), user.getId(), "content", Instant.now());
+    persistentDataStore.writeThrough(user).get();
+    persistentDataStore.writeThrough(message).get();
+
+    user.incMessagesSent();
+    persistentDataStore.update(user);
+    persistentDataStore.delete(message);
+
+    List<User> resultUsers = persistentDataStore.loadUsers();
+    Assert.assertEquals(1, resultUsers.size());
+    Assert.assertEquals(1, resultUsers.get(0).getMessagesSent());
+    Assert.assertTrue(persistentDataStore.loadMessages().isEmpty());
+
+    persistentDataStore.delete(user);
+    Assert.assertTrue(persistentDataStore.loadUsers().isEmpty());
+  }
+
+  @Test
+  public void testLoad_movesAllocatedKeysToNamedKeys() throws PersistentDataStoreException {
+    UUID messageId = UUID.randomUUID();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity legacyEntity = new Entity("chat-messages");
+    legacyEntity.setProperty("uuid", messageId.toString());
+    legacyEntity.setProperty("conv_uuid", UUID.randomUUID().toString());
+    legacyEntity.setProperty("author_uuid", UUID.randomUUID().toString());
+    legacyEntity.setProperty("content", "legacy");
+    legacyEntity.setProperty("creation_time", Instant.ofEpochMilli(1000).toString());
+    datastore.put(legacyEntity);
+
+    List<Message> resultMessages = persistentDataStore.loadMessages();
+
+    Assert.assertEquals(1, resultMessages.size());
+    Entity migratedEntity = datastore.prepare(new Query("chat-messages")).asSingleEntity();
+    Assert.assertEquals(messageId.toString(), migratedEntity.getKey().getName());
+    Assert.assertEquals("legacy", migratedEntity.getProperty("content"));
+
+    persistentDataStore.delete(resultMessages.get(0));
+    Assert.assertTrue(persistentDataStore.loadMessages().isEmpty());
+  }
+
+  @Test
+  public void testSaveAndLoadAdmins() throws Exception {
     UUID idOne = UUID.randomUUID();
     String nameOne = "test_username_one";
     String passwordOne = "password_one";
@@ -95,8 +237,8 @@ public class PersistentDataStoreTest {
     User inputUserTwo = new User(idTwo, nameTwo, passwordTwo, creationTwo, isAdminTwo);
 
     // save
-    persistentDataStore.writeThrough(inputUserOne);
-    persistentDataStore.writeThrough(inputUserTwo);
+    persistentDataStore.writeThrough(inputUserOne).get();
+    persistentDataStore.writeThrough(inputUserTwo).get();
 
     // load
     List<User> resultAdmins = persistentDataStore.loadAdmins();
@@ -113,7 +255,7 @@ public class PersistentDataStoreTest {
   }
 
   @Test
-  public void testSaveAndLoadConversations() throws PersistentDataStoreException {
+  public void testSaveAndLoadConversations() throws Exception {
     UUID idOne = UUID.randomUUID();
     UUID ownerOne = UUID.randomUUID();
     String titleOne = "Test_Title";
@@ -127,8 +269,8 @@ public class PersistentDataStoreTest {
     Conversation inputConversationTwo = new Conversation(idTwo, ownerTwo, titleTwo, creationTwo);
 
     // save
-    persistentDataStore.writeThrough(inputConversationOne);
-    persistentDataStore.writeThrough(inputConversationTwo);
+    persistentDataStore.writeThrough(inputConversationOne).get();
+    persistentDataStore.writeThrough(inputConversationTwo).get();
 
     // load
     List<Conversation> resultConversations = persistentDataStore.loadConversations();
@@ -148,7 +290,7 @@ public class PersistentDataStoreTest {
   }
 
   @Test
-  public void testSaveAndLoadMessages() throws PersistentDataStoreException {
+  public void testSaveAndLoadMessages() throws Exception {
     UUID idOne = UUID.randomUUID();
     UUID conversationOne = UUID.randomUUID();
     UUID authorOne = UUID.randomUUID();
@@ -166,8 +308,8 @@ public class PersistentDataStoreTest {
         new Message(idTwo, conversationTwo, authorTwo, contentTwo, creationTwo);
 
     // save
-    persistentDataStore.writeThrough(inputMessageOne);
-    persistentDataStore.writeThrough(inputMessageTwo);
+    persistentDataStore.writeThrough(inputMessageOne).get();
+    persistentDataStore.writeThrough(inputMessageTwo).get();
 
     // load
     List<Message> resultMessages = persistentDataStore.loadMessages();
@@ -201,4 +343,143 @@ public class PersistentDataStoreTest {
     Assert.assertEquals(contentTwo, resultMessageTwo.getContent());
     Assert.assertEquals(creationTwo, resultMessageTwo.getCreationTime());  
   }
+
+  @Test
+  public void testLoadMessages_multipleChunks() throws Exception {
+    int messageCount = PersistentDataStore.LOAD_CHUNK_SIZE * 2 + 1;
+    UUID conversation = UUID.randomUUID();
+    UUID author = UUID.randomUUID();
+    for (int i = 0; i < messageCount; i++) {
+      persistentDataStore.writeThrough(
+          new Message(UUID.randomUUID(), conversation, author, "message " + i,
+              Instant.ofEpochMilli(i))).get();
+    }
+
+    List<Message> resultMessages = persistentDataStore.loadMessages();
+
+    Assert.assertEquals(messageCount, resultMessages.size());
+    for (int i = 0; i < messageCount; i++) {
+      Assert.assertEquals("message " + i, resultMessages.get(i).getContent());
+    }
+  }
+
+  @Test
+  public void testWriteInBatches() throws PersistentDataStoreException {
+    User owner = new User(UUID.randomUUID(), "owner", "password", Instant.now(), false);
+    Conversation conversation =
+        new Conversation(UUID.randomUUID(), owner.getId(), "conversation", Instant.now());
+    int messageCount = PersistentDataStore.WRITE_BATCH_SIZE * PersistentDataStore.LOAD_THREADS + 1;
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < messageCount; i++) {
+      messages.add(
+          new Message(UUID.randomUUID(), conversation.getId(), owner.getId(), "message " + i,
+              Instant.ofEpochMilli(i)));
+    }
+
+    persistentDataStore.writeUsers(Collections.singletonList(owner));
+    persistentDataStore.writeConversations(Collections.singletonList(conversation));
+    persistentDataStore.writeMessages(messages);
+
+    Assert.assertEquals(owner.getId(), persistentDataStore.loadUsers().get(0).getId());
+    Assert.assertEquals("conversation", persistentDataStore.loadConversations().get(0).getTitle());
+    List<Message> resultMessages = persistentDataStore.loadMessages();
+    Assert.assertEquals(messageCount, resultMessages.size());
+    Assert.assertEquals(
+        "message " + (messageCount - 1), resultMessages.get(messageCount - 1).getContent());
+  }
+
+  @Test
+  public void testLoadRecentMessagesAndMessagesAtOrBefore() throws Exception {
+    Conversation conversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "conversation", Instant.now());
+    UUID author = UUID.randomUUID();
+    for (int i = 1; i <= 5; i++) {
+      persistentDataStore.writeThrough(
+          new Message(UUID.randomUUID(), conversation.getId(), author, "message " + i,
+              Instant.ofEpochSecond(i))).get();
+    }
+    persistentDataStore.writeThrough(
+        new Message(UUID.randomUUID(), UUID.randomUUID(), author, "other conversation",
+            Instant.ofEpochSecond(6))).get();
+
+    List<Message> recentMessages =
+        persistentDataStore.loadRecentMessages(Collections.singletonList(conversation), 2);
+
+    Assert.assertEquals(2, recentMessages.size());
+    Assert.assertEquals("message 4", recentMessages.get(0).getContent());
+    Assert.assertEquals("message 5", recentMessages.get(1).getContent());
+
+    List<Message> olderMessages =
+        persistentDataStore.loadMessagesAtOrBefore(
+            conversation.getId(), recentMessages.get(0).getCreationTime(), 10);
+
+    Assert.assertEquals(4, olderMessages.size());
+    Assert.assertEquals("message 1", olderMessages.get(0).getContent());
+    Assert.assertEquals("message 4", olderMessages.get(3).getContent());
+  }
+
+  @Test
+  public void testLoadMessagesAtOrBefore_ordersByTime() throws Exception {
+    UUID conversationId = UUID.randomUUID();
+    UUID author = UUID.randomUUID();
+    // As ISO-8601 strings these sort as 05.100500Z, 05.100Z, 05.500Z, 05Z.
+    Instant[] times = {
+      Instant.parse("2018-01-01T00:00:05Z"),
+      Instant.parse("2018-01-01T00:00:05.100Z"),
+      Instant.parse("2018-01-01T00:00:05.100500Z"),
+      Instant.parse("2018-01-01T00:00:05.500Z"),
+    };
+    for (int i = 0; i < times.length; i++) {
+      persistentDataStore.writeThrough(
+          new Message(UUID.randomUUID(), conversationId, author, "message " + i, times[i])).get();
+    }
+
+    List<Message> messages =
+        persistentDataStore.loadMessagesAtOrBefore(conversationId, times[3], 3);
+
+    Assert.assertEquals(3, messages.size());
+    Assert.assertEquals("message 1", messages.get(0).getContent());
+    Assert.assertEquals("message 2", messages.get(1).getContent());
+    Assert.assertEquals("message 3", messages.get(2).getContent());
+  }
+
+  @Test
+  public void testLoadMessagesAtOrBefore_includesMessagesAtSameTime() throws Exception {
+    UUID conversationId = UUID.randomUUID();
+    UUID author = UUID.randomUUID();
+    Instant time = Instant.ofEpochSecond(5);
+    for (int i = 0; i < 3; i++) {
+      persistentDataStore.writeThrough(
+          new Message(UUID.randomUUID(), conversationId, author, "message " + i, time)).get();
+    }
+
+    List<Message> newest = persistentDataStore.loadMessagesAtOrBefore(conversationId, null, 1);
+    List<Message> rest = persistentDataStore.loadMessagesAtOrBefore(conversationId, time, 3);
+
+    Assert.assertEquals(3, rest.size());
+    Assert.assertEquals(newest.get(0).getId(), rest.get(2).getId());
+  }
+
+  @Test
+  public void testLoadRecentMessages_backfillsCreationNanos() throws Exception {
+    Conversation conversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "conversation", Instant.now());
+    UUID messageId = UUID.randomUUID();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity legacyEntity = new Entity("chat-messages", messageId.toString());
+    legacyEntity.setProperty("uuid", messageId.toString());
+    legacyEntity.setProperty("conv_uuid", conversation.getId().toString());
+    legacyEntity.setProperty("author_uuid", UUID.randomUUID().toString());
+    legacyEntity.setProperty("content", "legacy");
+    legacyEntity.setProperty("creation_time", Instant.ofEpochMilli(1500).toString());
+    datastore.put(legacyEntity);
+
+    List<Message> recentMessages =
+        persistentDataStore.loadRecentMessages(Collections.singletonList(conversation), 10);
+
+    Assert.assertEquals(1, recentMessages.size());
+    Assert.assertEquals(messageId, recentMessages.get(0).getId());
+    Assert.assertEquals(
+        1_500_000_000L, datastore.get(legacyEntity.getKey()).getProperty("creation_nanos"));
+  }
 }
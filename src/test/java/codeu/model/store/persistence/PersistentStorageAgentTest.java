@@ -3,27 +3,48 @@ package codeu.model.store.persistence;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 import codeu.model.data.User;
+import codeu.model.store.basic.MetricsStore;
+import com.google.appengine.api.datastore.Key;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 /**
- * Contains tests of the PersistentStorageAgent class. Currently that class is just a pass-through
- * to PersistentDataStore, so these tests are pretty trivial. If you modify how
+ * Contains tests of the PersistentStorageAgent class. Apart from the queued User updates and the
+ * tracking of asynchronous writes, that class is just a pass-through to PersistentDataStore, so most of these tests are pretty trivial. If you modify how
  * PersistentStorageAgent writes to PersistentDataStore, or if you swap out the backend to something
  * other than PersistentDataStore, then modify these tests.
  */
 public class PersistentStorageAgentTest {
 
   private PersistentDataStore mockPersistentDataStore;
+  private MetricsStore metricsStore;
   private PersistentStorageAgent persistentStorageAgent;
 
   @Before
   public void setup() {
     mockPersistentDataStore = Mockito.mock(PersistentDataStore.class);
-    persistentStorageAgent = PersistentStorageAgent.getTestInstance(mockPersistentDataStore);
+    Mockito.when(mockPersistentDataStore.writeThrough(Mockito.any(User.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    Mockito.when(mockPersistentDataStore.writeThrough(Mockito.any(Conversation.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    Mockito.when(mockPersistentDataStore.writeThrough(Mockito.any(Message.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    metricsStore = MetricsStore.getTestInstance();
+    persistentStorageAgent =
+        PersistentStorageAgent.getTestInstance(mockPersistentDataStore, metricsStore);
   }
 
   @Test
@@ -64,6 +85,65 @@ public class PersistentStorageAgentTest {
     Mockito.verify(mockPersistentDataStore).update(user);
   }
 
+  @Test
+  public void testUpdateLater_coalescesUntilFlush() {
+    User userOne = new User(UUID.randomUUID(), "test_username_one", "password", Instant.now(), false);
+    User userTwo = new User(UUID.randomUUID(), "test_username_two", "password", Instant.now(), false);
+
+    persistentStorageAgent.updateLater(userOne);
+    persistentStorageAgent.updateLater(userTwo);
+    persistentStorageAgent.updateLater(userOne);
+
+    Mockito.verifyZeroInteractions(mockPersistentDataStore);
+    Assert.assertEquals(2, persistentStorageAgent.getPendingUpdateCount());
+
+    persistentStorageAgent.flushUpdates();
+
+    ArgumentCaptor<Collection<User>> batch = batchCaptor();
+    Mockito.verify(mockPersistentDataStore).update(batch.capture());
+    Assert.assertEquals(2, batch.getValue().size());
+    Assert.assertTrue(batch.getValue().containsAll(Arrays.asList(userOne, userTwo)));
+    Assert.assertEquals(0, persistentStorageAgent.getPendingUpdateCount());
+  }
+
+  @Test
+  public void testUpdateLater_flushesAtBatchSize() {
+    for (int i = 0; i < PersistentStorageAgent.UPDATE_BATCH_SIZE; i++) {
+      persistentStorageAgent.updateLater(
+          new User(UUID.randomUUID(), "test_username_" + i, "password", Instant.now(), false));
+    }
+
+    ArgumentCaptor<Collection<User>> batch = batchCaptor();
+    Mockito.verify(mockPersistentDataStore).update(batch.capture());
+    Assert.assertEquals(PersistentStorageAgent.UPDATE_BATCH_SIZE, batch.getValue().size());
+    Assert.assertEquals(0, persistentStorageAgent.getPendingUpdateCount());
+  }
+
+  @Test
+  public void testFlushUpdatesIfOverdue_keepsRecentUpdates() {
+    persistentStorageAgent.updateLater(
+        new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false));
+
+    persistentStorageAgent.flushUpdatesIfOverdue();
+
+    Mockito.verify(mockPersistentDataStore, Mockito.never())
+        .update(Mockito.<Collection<User>>any());
+    Assert.assertEquals(1, persistentStorageAgent.getPendingUpdateCount());
+  }
+
+  @Test
+  public void testDeleteUser_dropsQueuedUpdate() {
+    User user = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+
+    persistentStorageAgent.updateLater(user);
+    persistentStorageAgent.delete(user);
+    persistentStorageAgent.flushUpdates();
+
+    Mockito.verify(mockPersistentDataStore).delete(user);
+    Mockito.verify(mockPersistentDataStore, Mockito.never())
+        .update(Mockito.<Collection<User>>any());
+  }
+
   @Test
   public void testWriteThroughConversation() {
     Conversation conversation =
@@ -80,4 +160,175 @@ public class PersistentStorageAgentTest {
     persistentStorageAgent.writeThrough(message);
     Mockito.verify(mockPersistentDataStore).writeThrough(message);
   }
+
+  @Test
+  public void testWriteThrough_doesNotWaitForWrite() {
+    CompletableFuture<Key> write = new CompletableFuture<>();
+    Mockito.when(mockPersistentDataStore.writeThrough(Mockito.any(Message.class)))
+        .thenReturn(write);
+
+    persistentStorageAgent.writeThrough(newMessage());
+
+    Assert.assertEquals(1, persistentStorageAgent.getInFlightWriteCount());
+    write.complete(null);
+    persistentStorageAgent.awaitWrites();
+    Assert.assertEquals(0, persistentStorageAgent.getInFlightWriteCount());
+    Assert.assertEquals(1, metricsStore.getCount("datastore-write.succeeded"));
+  }
+
+  @Test
+  public void testWriteThrough_retriesFailedWrite() {
+    Message message = newMessage();
+    Mockito.when(mockPersistentDataStore.writeThrough(message))
+        .thenReturn(failedFuture(), CompletableFuture.completedFuture(null));
+
+    persistentStorageAgent.writeThrough(message);
+    persistentStorageAgent.awaitWrites();
+
+    Mockito.verify(mockPersistentDataStore, Mockito.times(2)).writeThrough(message);
+    Assert.assertEquals(1, metricsStore.getCount("datastore-write.failed"));
+    Assert.assertEquals(1, metricsStore.getCount("datastore-write.retried"));
+    Assert.assertEquals(1, metricsStore.getCount("datastore-write.succeeded"));
+    Assert.assertEquals(0, persistentStorageAgent.getFailedWriteCount());
+  }
+
+  @Test
+  public void testWriteThrough_retriesWithNextWrite() {
+    Message failing = newMessage();
+    Mockito.when(mockPersistentDataStore.writeThrough(failing))
+        .thenReturn(failedFuture(), CompletableFuture.completedFuture(null));
+
+    persistentStorageAgent.writeThrough(failing);
+    Mockito.verify(mockPersistentDataStore).writeThrough(failing);
+
+    persistentStorageAgent.writeThrough(newMessage());
+    Mockito.verify(mockPersistentDataStore, Mockito.times(2)).writeThrough(failing);
+    Assert.assertEquals(0, persistentStorageAgent.getFailedWriteCount());
+  }
+
+  @Test
+  public void testWriteThrough_dropsWriteAfterMaxAttempts() {
+    Message message = newMessage();
+    Mockito.when(mockPersistentDataStore.writeThrough(message)).thenReturn(failedFuture());
+
+    persistentStorageAgent.writeThrough(message);
+    persistentStorageAgent.awaitWrites();
+
+    Mockito.verify(
+            mockPersistentDataStore, Mockito.times(PersistentStorageAgent.MAX_WRITE_ATTEMPTS))
+        .writeThrough(message);
+    Assert.assertEquals(1, metricsStore.getCount("datastore-write.dropped"));
+    Assert.assertEquals(0, persistentStorageAgent.getFailedWriteCount());
+  }
+
+  @Test
+  public void testWriteThrough_boundsWritesInFlight() throws Exception {
+    List<CompletableFuture<Key>> writes = new ArrayList<>();
+    for (int i = 0; i <= PersistentStorageAgent.MAX_IN_FLIGHT_WRITES; i++) {
+      writes.add(new CompletableFuture<>());
+    }
+    List<CompletableFuture<Key>> unstarted = new ArrayList<>(writes);
+    Mockito.when(mockPersistentDataStore.writeThrough(Mockito.any(Message.class)))
+        .thenAnswer(invocation -> unstarted.remove(0));
+    for (int i = 0; i < PersistentStorageAgent.MAX_IN_FLIGHT_WRITES; i++) {
+      persistentStorageAgent.writeThrough(newMessage());
+    }
+
+    CompletableFuture<Void> oneMore =
+        CompletableFuture.runAsync(() -> persistentStorageAgent.writeThrough(newMessage()));
+    Thread.sleep(100);
+    Assert.assertFalse(oneMore.isDone());
+
+    writes.get(0).complete(null);
+    oneMore.get(5, TimeUnit.SECONDS);
+    Assert.assertEquals(
+        PersistentStorageAgent.MAX_IN_FLIGHT_WRITES, persistentStorageAgent.getInFlightWriteCount());
+    Assert.assertTrue(metricsStore.getCount("datastore-write.throttled") > 0);
+  }
+
+  @Test
+  public void testWriteThrough_waitsWhenNotAsync() {
+    persistentStorageAgent.setAsyncWrites(false);
+
+    persistentStorageAgent.writeThrough(newMessage());
+
+    Assert.assertEquals(0, persistentStorageAgent.getInFlightWriteCount());
+    Assert.assertEquals(1, metricsStore.getCount("datastore-write.succeeded"));
+  }
+
+  @Test
+  public void testDeleteMessage_waitsForWriteOfSameMessage() {
+    Message message = newMessage();
+    CompletableFuture<Key> write = new CompletableFuture<>();
+    Mockito.when(mockPersistentDataStore.writeThrough(message)).thenReturn(write);
+
+    persistentStorageAgent.writeThrough(message);
+    write.complete(null);
+    persistentStorageAgent.delete(message);
+
+    Assert.assertEquals(0, persistentStorageAgent.getInFlightWriteCount());
+    Mockito.verify(mockPersistentDataStore).delete(message);
+  }
+
+  @Test
+  public void testUpdateUser_waitsOnlyForWriteOfSameUser() {
+    User user = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    CompletableFuture<Key> userWrite = new CompletableFuture<>();
+    Mockito.when(mockPersistentDataStore.writeThrough(user)).thenReturn(userWrite);
+    Mockito.when(mockPersistentDataStore.writeThrough(Mockito.any(Message.class)))
+        .thenReturn(new CompletableFuture<>());
+
+    persistentStorageAgent.writeThrough(user);
+    persistentStorageAgent.writeThrough(newMessage());
+    userWrite.complete(null);
+    persistentStorageAgent.update(user);
+
+    Mockito.verify(mockPersistentDataStore).update(user);
+    Assert.assertEquals(1, metricsStore.getCount("datastore-write.succeeded"));
+    Assert.assertEquals(1, persistentStorageAgent.getInFlightWriteCount());
+  }
+
+  @Test
+  public void testUpdateUser_retriesFailedWriteOfSameUser() {
+    User user = new User(UUID.randomUUID(), "test_username", "password", Instant.now(), false);
+    Mockito.when(mockPersistentDataStore.writeThrough(user))
+        .thenReturn(failedFuture(), CompletableFuture.completedFuture(null));
+
+    persistentStorageAgent.writeThrough(user);
+    persistentStorageAgent.update(user);
+
+    Mockito.verify(mockPersistentDataStore, Mockito.times(2)).writeThrough(user);
+    Mockito.verify(mockPersistentDataStore).update(user);
+    Assert.assertEquals(0, persistentStorageAgent.getFailedWriteCount());
+  }
+
+  @Test
+  public void testDeleteMessage_doesNotWaitForOtherWrites() {
+    Message message = newMessage();
+    persistentStorageAgent.writeThrough(message);
+    Mockito.when(mockPersistentDataStore.writeThrough(Mockito.any(Message.class)))
+        .thenReturn(new CompletableFuture<>());
+    persistentStorageAgent.writeThrough(newMessage());
+
+    persistentStorageAgent.delete(message);
+
+    Mockito.verify(mockPersistentDataStore).delete(message);
+    Assert.assertEquals(1, persistentStorageAgent.getInFlightWriteCount());
+  }
+
+  private static Message newMessage() {
+    return new Message(
+        UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "test content", Instant.now());
+  }
+
+  private static Future<Key> failedFuture() {
+    CompletableFuture<Key> write = new CompletableFuture<>();
+    write.completeExceptionally(new ConcurrentModificationException());
+    return write;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ArgumentCaptor<Collection<User>> batchCaptor() {
+    return ArgumentCaptor.forClass((Class<Collection<User>>) (Class<?>) Collection.class);
+  }
 }